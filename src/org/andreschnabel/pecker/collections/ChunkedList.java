@@ -0,0 +1,197 @@
+package org.andreschnabel.pecker.collections;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Liste aus Blöcken fester Größe (Tiered Vector).
+ *
+ * Jeder Block ist ein Ringpuffer. Alle Blöcke außer dem letzten sind voll.
+ * Dadurch ist der Zugriff per Index O(1), Einfügen und Entfernen in der Mitte kostet
+ * O(Blockgröße + Größe/Blockgröße) statt O(Größe) wie bei ArrayList:
+ * Im betroffenen Block werden Elemente verschoben, alle folgenden Blöcke rotieren nur um eine Position.
+ *
+ * @param <T> Typ der Elemente.
+ */
+public class ChunkedList<T> extends AbstractList<T> implements RandomAccess {
+
+	/**
+	 * Standardblockgröße (Zweierpotenz).
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+	private final int shift;
+	private final int mask;
+	private final int blockSize;
+
+	private Object[][] blocks = new Object[4][];
+	private int[] offsets = new int[4];
+	private int numBlocks;
+	private int size;
+
+	/**
+	 * Konstruktor
+	 */
+	public ChunkedList() {
+		this(DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Konstruktor
+	 * @param elems Anfangselemente.
+	 */
+	public ChunkedList(Collection<? extends T> elems) {
+		this();
+		addAll(elems);
+	}
+
+	/**
+	 * Konstruktor
+	 * @param blockSize Blockgröße. Wird auf Zweierpotenz aufgerundet.
+	 */
+	public ChunkedList(int blockSize) {
+		int s = 0;
+		while((1 << s) < Math.max(2, blockSize)) {
+			s++;
+		}
+		this.shift = s;
+		this.blockSize = 1 << s;
+		this.mask = this.blockSize - 1;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		checkIndex(index, size);
+		int b = index >> shift;
+		return (T)blocks[b][(offsets[b] + index) & mask];
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T set(int index, T elem) {
+		checkIndex(index, size);
+		int b = index >> shift;
+		int phys = (offsets[b] + index) & mask;
+		T old = (T)blocks[b][phys];
+		blocks[b][phys] = elem;
+		return old;
+	}
+
+	@Override
+	public void add(int index, T elem) {
+		checkIndex(index, size + 1);
+		modCount++;
+
+		if(size == numBlocks * blockSize) {
+			appendBlock();
+		}
+
+		int b = index >> shift;
+		int lastBlock = numBlocks - 1;
+		int lastCount = size - lastBlock * blockSize;
+
+		// Im Zielblock verschieben. Bei vollem Block fällt das letzte Element heraus.
+		Object carry = insertIntoBlock(b, index & mask, elem, b == lastBlock ? lastCount : blockSize);
+
+		// Folgende Blöcke rotieren: Übertrag vorne rein, letztes Element wird neuer Übertrag.
+		for(int k = b + 1; k <= lastBlock; k++) {
+			int off = (offsets[k] - 1) & mask;
+			Object[] block = blocks[k];
+			Object next = block[off];
+			block[off] = carry;
+			offsets[k] = off;
+			carry = next;
+		}
+		size++;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T remove(int index) {
+		checkIndex(index, size);
+		modCount++;
+
+		int b = index >> shift;
+		int lastBlock = numBlocks - 1;
+		int lastCount = size - lastBlock * blockSize;
+
+		T removed = (T)removeFromBlock(b, index & mask, b == lastBlock ? lastCount : blockSize);
+
+		// Erstes Element jedes folgenden Blocks wandert an das Ende des vorigen Blocks.
+		for(int k = b + 1; k <= lastBlock; k++) {
+			Object[] block = blocks[k];
+			int off = offsets[k];
+			Object front = block[off];
+			block[off] = null;
+			offsets[k] = (off + 1) & mask;
+			blocks[k-1][(offsets[k-1] + blockSize - 1) & mask] = front;
+		}
+
+		size--;
+		if(size == lastBlock * blockSize) {
+			blocks[lastBlock] = null;
+			numBlocks--;
+		}
+		return removed;
+	}
+
+	@Override
+	public void clear() {
+		modCount++;
+		Arrays.fill(blocks, null);
+		Arrays.fill(offsets, 0);
+		numBlocks = 0;
+		size = 0;
+	}
+
+	private Object insertIntoBlock(int b, int local, Object elem, int count) {
+		Object[] block = blocks[b];
+		int off = offsets[b];
+		Object carry = null;
+		int last = count - 1;
+		if(count == blockSize) {
+			carry = block[(off + last) & mask];
+			last--;
+		}
+		for(int j = last; j >= local; j--) {
+			block[(off + j + 1) & mask] = block[(off + j) & mask];
+		}
+		block[(off + local) & mask] = elem;
+		return carry;
+	}
+
+	private Object removeFromBlock(int b, int local, int count) {
+		Object[] block = blocks[b];
+		int off = offsets[b];
+		Object removed = block[(off + local) & mask];
+		for(int j = local; j < count - 1; j++) {
+			block[(off + j) & mask] = block[(off + j + 1) & mask];
+		}
+		block[(off + count - 1) & mask] = null;
+		return removed;
+	}
+
+	private void appendBlock() {
+		if(numBlocks == blocks.length) {
+			blocks = Arrays.copyOf(blocks, numBlocks * 2);
+			offsets = Arrays.copyOf(offsets, numBlocks * 2);
+		}
+		blocks[numBlocks] = new Object[blockSize];
+		offsets[numBlocks] = 0;
+		numBlocks++;
+	}
+
+	private static void checkIndex(int index, int bound) {
+		if(index < 0 || index >= bound) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", bound: " + bound);
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package org.andreschnabel.pecker.functional;
+
+/**
+ * Aktion auf einem Objekt.
+ * @param <T> Typ des Objekts.
+ */
+public interface IAction<T> {
+
+	public void invoke(T obj) throws Exception;
+
+}
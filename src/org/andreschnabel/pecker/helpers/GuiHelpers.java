@@ -47,17 +47,17 @@ public class GuiHelpers {
 	}
 
 	public static void saveCsvDialog(File path, CsvData csvData) throws Exception {
-		saveStringWithFileDialog(csvData.toString(), path, "csv");
+		File selectedFile = saveFileDialog(path, "csv");
+		if(selectedFile != null) {
+			csvData.save(selectedFile);
+		}
 	}
 
 	public static CsvData loadCsvDialog(File path) throws Exception {
 		File selectedFile = loadFileDialog(path, "csv");
 		if(selectedFile != null) {
-			String s = FileHelpers.readEntireFile(selectedFile);
-			CsvData data = (s != null) ? CsvHelpers.parseCsv(s) : null;
-			if(data != null) {
-				data.title = selectedFile.getName();
-			}
+			CsvData data = CsvHelpers.parseCsv(selectedFile);
+			data.title = selectedFile.getName();
 			return data;
 		}
 		return null;
@@ -95,12 +95,12 @@ public class GuiHelpers {
 	}
 
 	public static CsvData loadCsvDialog(File path, String[] expectedHeaders) throws Exception {
-		String str = loadStringWithFileDialog(path, "csv");
-		if(str == null) {
+		File selectedFile = loadFileDialog(path, "csv");
+		if(selectedFile == null) {
 			return null;
 		}
-		validateHeaders(expectedHeaders, CsvHelpers.parseCsv(StringHelpers.firstLine(str)).getHeaders());
-		return CsvHelpers.parseCsv(str);
+		validateHeaders(expectedHeaders, CsvHelpers.readHeaders(selectedFile));
+		return CsvHelpers.parseCsv(selectedFile);
 	}
 
 	private static void validateHeaders(String[] expectedHeaders, String[] headers) throws Exception {
@@ -110,7 +110,7 @@ public class GuiHelpers {
 			failMsg = "Wrong number of columns.";
 		}
 
-		for(int i=0; i<expectedHeaders.length; i++) {
+		for(int i=0; i<Math.min(expectedHeaders.length, headers.length); i++) {
 			if(!headers[i].equals(expectedHeaders[i])) {
 				failMsg = "Headers don't match at column " + (i+1) + ": " + headers[i] + " should be " + expectedHeaders[i];
 				break;
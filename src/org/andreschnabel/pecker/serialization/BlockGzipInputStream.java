@@ -0,0 +1,229 @@
+package org.andreschnabel.pecker.serialization;
+
+import org.andreschnabel.pecker.threading.FutureHelpers;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Liest gzip-Daten, die als Folge unabhängiger Blöcke geschrieben wurden (siehe BlockGzipOutputStream).
+ *
+ * Blöcke werden anhand der Blockgröße im Extrafeld gefunden und parallel entpackt, die Ausgabe bleibt in Reihenfolge.
+ * Beginnt ein Member ohne Blockgröße (gewöhnliches gzip), wird der Rest der Datei sequentiell mit GZIPInputStream gelesen.
+ * Die Threads werden erst mit dem ersten Block gestartet und halten die JVM nicht am Leben,
+ * falls der Strom nicht geschlossen wird.
+ */
+public class BlockGzipInputStream extends InputStream {
+
+	private static final int FEXTRA = 4;
+	private static final int MAX_HEADER_SIZE = 12 + 0xffff;
+
+	private final PushbackInputStream in;
+	private final int numThreads;
+	private final int maxPending;
+	private ExecutorService pool;
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+	private byte[] current = new byte[0];
+	private int pos;
+	private boolean inputDone;
+	private InputStream fallback;
+
+	/**
+	 * Konstruktor mit einem Thread je Prozessorkern.
+	 * @param in Quelle für komprimierte Bytes.
+	 */
+	public BlockGzipInputStream(InputStream in) {
+		this(in, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Konstruktor
+	 * @param in Quelle für komprimierte Bytes.
+	 * @param numThreads Anzahl der Threads. Bei 1 wird im aufrufenden Thread entpackt.
+	 */
+	public BlockGzipInputStream(InputStream in, int numThreads) {
+		this.in = new PushbackInputStream(in, MAX_HEADER_SIZE);
+		this.numThreads = numThreads;
+		this.maxPending = numThreads > 1 ? 2 * numThreads : 1;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0) {
+			return 0;
+		}
+		while(pos == current.length) {
+			byte[] block = nextBlock();
+			if(block == null) {
+				return fallback != null ? fallback.read(b, off, len) : -1;
+			}
+			current = block;
+			pos = 0;
+		}
+		int n = Math.min(len, current.length - pos);
+		System.arraycopy(current, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(pool != null) {
+			pool.shutdownNow();
+		}
+		if(fallback != null) {
+			fallback.close();
+		} else {
+			in.close();
+		}
+	}
+
+	private byte[] nextBlock() throws IOException {
+		while(!inputDone && pending.size() < maxPending) {
+			readMember();
+		}
+		return pending.isEmpty() ? null : FutureHelpers.getUnwrappedIO(pending.poll());
+	}
+
+	/**
+	 * Lies Kopf und komprimierte Daten des nächsten Members und gib Entpacken in Auftrag.
+	 * Ohne Blockgröße im Kopf wird auf sequentielles Lesen umgeschaltet.
+	 */
+	private void readMember() throws IOException {
+		int first = in.read();
+		if(first < 0) {
+			inputDone = true;
+			return;
+		}
+		byte[] header = new byte[12];
+		header[0] = (byte)first;
+		readFully(header, 1, 9);
+		if((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || header[2] != 8) {
+			throw new IOException("Not in gzip format");
+		}
+		int headerLength = 10;
+		int blockSize = -1;
+		if(header[3] == FEXTRA) {
+			readFully(header, 10, 2);
+			int xlen = (header[10] & 0xff) | (header[11] & 0xff) << 8;
+			header = Arrays.copyOf(header, 12 + xlen);
+			readFully(header, 12, xlen);
+			headerLength = 12 + xlen;
+			blockSize = blockSizeFromExtra(header, 12, headerLength);
+		}
+		if(blockSize < 0) {
+			in.unread(header, 0, headerLength);
+			fallback = new GZIPInputStream(in, 1 << 16);
+			inputDone = true;
+			return;
+		}
+
+		final byte[] member = new byte[blockSize - headerLength];
+		readFully(member, 0, member.length);
+		FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return inflateMember(member);
+			}
+		});
+		if(numThreads > 1) {
+			if(pool == null) {
+				pool = BlockGzipOutputStream.newDaemonPool(numThreads);
+			}
+			pool.execute(task);
+		} else {
+			task.run();
+		}
+		pending.add(task);
+	}
+
+	private static int blockSizeFromExtra(byte[] header, int from, int to) {
+		int p = from;
+		while(p + 4 <= to) {
+			int slen = (header[p+2] & 0xff) | (header[p+3] & 0xff) << 8;
+			if(header[p] == 'B' && header[p+1] == 'C' && slen == 2 && p + 6 <= to) {
+				return ((header[p+4] & 0xff) | (header[p+5] & 0xff) << 8) + 1;
+			}
+			p += 4 + slen;
+		}
+		return -1;
+	}
+
+	/**
+	 * Entpacke komprimierte Daten eines Members und prüfe Prüfsumme und Größe.
+	 * @param member Komprimierte Daten gefolgt von CRC32 und Größe.
+	 * @return Unkomprimierte Daten.
+	 * @throws IOException bei fehlerhaften Daten.
+	 */
+	private static byte[] inflateMember(byte[] member) throws IOException {
+		int dataLength = member.length - BlockGzipOutputStream.TRAILER_SIZE;
+		if(dataLength < 0) {
+			throw new IOException("Corrupt gzip block");
+		}
+		int crc = readIntLE(member, dataLength);
+		int size = readIntLE(member, dataLength + 4);
+		if(size < 0 || size > 0x10000) {
+			throw new IOException("Corrupt gzip block size: " + size);
+		}
+		byte[] data = new byte[size];
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(member, 0, dataLength);
+			int n = 0;
+			while(n < size && !inflater.finished()) {
+				int k = inflater.inflate(data, n, size - n);
+				if(k == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				n += k;
+			}
+			if(n != size) {
+				throw new IOException("Corrupt gzip block: expected " + size + " bytes, got " + n);
+			}
+		} catch(DataFormatException e) {
+			throw new IOException(e);
+		} finally {
+			inflater.end();
+		}
+		CRC32 actual = new CRC32();
+		actual.update(data, 0, size);
+		if((int)actual.getValue() != crc) {
+			throw new IOException("Corrupt gzip block: CRC mismatch");
+		}
+		return data;
+	}
+
+	private void readFully(byte[] b, int off, int len) throws IOException {
+		while(len > 0) {
+			int n = in.read(b, off, len);
+			if(n < 0) {
+				throw new EOFException("Unexpected end of gzip stream");
+			}
+			off += n;
+			len -= n;
+		}
+	}
+
+	private static int readIntLE(byte[] buf, int pos) {
+		return (buf[pos] & 0xff) | (buf[pos+1] & 0xff) << 8 | (buf[pos+2] & 0xff) << 16 | (buf[pos+3] & 0xff) << 24;
+	}
+}
@@ -0,0 +1,206 @@
+package org.andreschnabel.pecker.serialization;
+
+import org.andreschnabel.pecker.threading.FutureHelpers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Schreibt gzip-Daten als Folge unabhängiger Blöcke (wie BGZF).
+ *
+ * Jeder Block ist ein vollständiges gzip-Member mit höchstens BLOCK_SIZE Bytes unkomprimierten Daten.
+ * Das Extrafeld "BC" im Kopf enthält die komprimierte Blockgröße, sodass BlockGzipInputStream
+ * Blöcke ohne Entpacken findet. Standard-gzip-Werkzeuge lesen die Datei als mehrteiliges gzip.
+ *
+ * Blöcke werden parallel komprimiert und in Reihenfolge geschrieben. Am Ende folgt ein leerer Block als Dateiende-Marke.
+ * Die Threads werden erst mit dem ersten vollen Block gestartet und halten die JVM nicht am Leben,
+ * falls der Strom nicht geschlossen wird.
+ */
+public class BlockGzipOutputStream extends OutputStream {
+
+	/**
+	 * Unkomprimierte Bytes je Block. Komprimierter Block bleibt damit unter 64 KB.
+	 */
+	public static final int BLOCK_SIZE = 0xff00;
+
+	static final int HEADER_SIZE = 18;
+	static final int TRAILER_SIZE = 8;
+
+	private final OutputStream out;
+	private final int level;
+	private final int numThreads;
+	private final int maxPending;
+	private ExecutorService pool;
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+	private byte[] block = new byte[BLOCK_SIZE];
+	private int blockLength;
+	private boolean closed;
+
+	/**
+	 * Konstruktor mit einem Thread je Prozessorkern.
+	 * @param out Ziel für komprimierte Bytes.
+	 */
+	public BlockGzipOutputStream(OutputStream out) {
+		this(out, Deflater.DEFAULT_COMPRESSION, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Konstruktor
+	 * @param out Ziel für komprimierte Bytes.
+	 * @param level Kompressionsstufe von Deflater.
+	 * @param numThreads Anzahl der Threads. Bei 1 wird im aufrufenden Thread komprimiert.
+	 */
+	public BlockGzipOutputStream(OutputStream out, int level, int numThreads) {
+		this.out = out;
+		this.level = level;
+		this.numThreads = numThreads;
+		this.maxPending = 2 * Math.max(1, numThreads);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if(blockLength == BLOCK_SIZE) {
+			submitBlock();
+		}
+		block[blockLength++] = (byte)b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while(len > 0) {
+			if(blockLength == BLOCK_SIZE) {
+				submitBlock();
+			}
+			int n = Math.min(len, BLOCK_SIZE - blockLength);
+			System.arraycopy(b, off, block, blockLength, n);
+			blockLength += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Schließt angefangenen Block ab und schreibt alle fertigen Blöcke.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if(blockLength > 0) {
+			submitBlock();
+		}
+		while(!pending.isEmpty()) {
+			out.write(FutureHelpers.getUnwrappedIO(pending.poll()));
+		}
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		closed = true;
+		try {
+			flush();
+			out.write(compressBlock(new byte[0], 0, level));
+		} finally {
+			if(pool != null) {
+				pool.shutdownNow();
+			}
+			out.close();
+		}
+	}
+
+	private void submitBlock() throws IOException {
+		final byte[] data = block;
+		final int length = blockLength;
+		if(pool == null && (numThreads <= 1 || length < BLOCK_SIZE)) {
+			out.write(compressBlock(data, length, level));
+			blockLength = 0;
+			return;
+		}
+		if(pool == null) {
+			pool = newDaemonPool(numThreads);
+		}
+		while(pending.size() >= maxPending) {
+			out.write(FutureHelpers.getUnwrappedIO(pending.poll()));
+		}
+		pending.add(pool.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return compressBlock(data, length, level);
+			}
+		}));
+		block = new byte[BLOCK_SIZE];
+		blockLength = 0;
+	}
+
+	/**
+	 * Komprimiere Daten zu einem vollständigen gzip-Member mit Blockgröße im Extrafeld.
+	 * @param data Unkomprimierte Daten.
+	 * @param length Anzahl gültiger Bytes, höchstens BLOCK_SIZE.
+	 * @param level Kompressionsstufe.
+	 * @return Block.
+	 */
+	static byte[] compressBlock(byte[] data, int length, int level) {
+		Deflater deflater = new Deflater(level, true);
+		byte[] buf = new byte[HEADER_SIZE + length + (length >> 5) + 64 + TRAILER_SIZE];
+		int pos = HEADER_SIZE;
+		try {
+			deflater.setInput(data, 0, length);
+			deflater.finish();
+			while(!deflater.finished()) {
+				if(pos == buf.length - TRAILER_SIZE) {
+					buf = Arrays.copyOf(buf, buf.length * 2);
+				}
+				pos += deflater.deflate(buf, pos, buf.length - TRAILER_SIZE - pos);
+			}
+		} finally {
+			deflater.end();
+		}
+
+		int blockSize = pos + TRAILER_SIZE;
+		byte[] header = {
+				0x1f, (byte)0x8b, 8, 4, 0, 0, 0, 0, 0, (byte)0xff,
+				6, 0, 'B', 'C', 2, 0, (byte)(blockSize - 1), (byte)((blockSize - 1) >>> 8)
+		};
+		System.arraycopy(header, 0, buf, 0, HEADER_SIZE);
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+		writeIntLE(buf, pos, (int)crc.getValue());
+		writeIntLE(buf, pos + 4, length);
+		return blockSize == buf.length ? buf : Arrays.copyOf(buf, blockSize);
+	}
+
+	private static void writeIntLE(byte[] buf, int pos, int value) {
+		buf[pos] = (byte)value;
+		buf[pos+1] = (byte)(value >>> 8);
+		buf[pos+2] = (byte)(value >>> 16);
+		buf[pos+3] = (byte)(value >>> 24);
+	}
+
+	/**
+	 * Thread-Pool aus Daemon-Threads, sodass nicht geschlossene Ströme die JVM nicht am Beenden hindern.
+	 * @param numThreads Anzahl der Threads.
+	 * @return Thread-Pool.
+	 */
+	static ExecutorService newDaemonPool(int numThreads) {
+		return Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "BlockGzip");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+}
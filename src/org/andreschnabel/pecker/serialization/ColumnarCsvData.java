@@ -0,0 +1,259 @@
+package org.andreschnabel.pecker.serialization;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Spaltenweise gespeicherte CSV-Daten mit typisierten Spalten.
+ *
+ * Jede Spalte ist eine CsvColumn (int, long, double, boolean oder wörterbuchkodierte Zeichenketten).
+ * Typen werden entweder je Spalte vorgegeben oder aus den Werten abgeleitet.
+ * Abgeleitete Typen stellen Werte immer verlustfrei dar und werden bei Bedarf verallgemeinert
+ * (z.B. int zu long oder zu Zeichenkette). Vorgegebene Typen werden nie geändert,
+ * nicht darstellbare Werte führen dann zu einem Fehler.
+ */
+public class ColumnarCsvData extends CsvData {
+
+	private String[] headers;
+	private CsvColumn[] columns;
+	private boolean[] declared;
+	private int numRows;
+
+	/**
+	 * Konstruktor
+	 *
+	 * Leere Daten mit abgeleiteten Spaltentypen.
+	 *
+	 * @param headers Spaltenbezeichnungen.
+	 */
+	public ColumnarCsvData(String[] headers) {
+		this(headers, new CsvColumn.Type[headers.length]);
+	}
+
+	/**
+	 * Konstruktor
+	 *
+	 * Leere Daten mit vorgegebenen Spaltentypen.
+	 *
+	 * @param headers Spaltenbezeichnungen.
+	 * @param types Typ je Spalte. null-Einträge werden abgeleitet.
+	 */
+	public ColumnarCsvData(String[] headers, CsvColumn.Type[] types) {
+		super((List<String[]>)null);
+		if(types.length != headers.length) {
+			throw new IllegalArgumentException("Type count is " + types.length + " but header count is " + headers.length);
+		}
+		this.headers = headers.clone();
+		this.columns = new CsvColumn[headers.length];
+		this.declared = new boolean[headers.length];
+		for(int col = 0; col < headers.length; col++) {
+			declared[col] = types[col] != null;
+			columns[col] = declared[col] ? CsvColumn.create(types[col], false) : CsvColumn.create(CsvColumn.Type.INT, true);
+		}
+	}
+
+	/**
+	 * Konstruktor
+	 *
+	 * Spaltenweise Kopie zeilenweiser CSV-Daten mit abgeleiteten Spaltentypen.
+	 *
+	 * @param data CSV-Daten.
+	 */
+	public ColumnarCsvData(CsvData data) {
+		this(data.getHeaders());
+		this.title = data.title;
+		for(int row = 0; row < data.rowCount(); row++) {
+			appendRow(data.getRow(row));
+		}
+	}
+
+	/**
+	 * Lade CSV-Datei zeilenweise direkt in spaltenweise Darstellung, ohne die Zeilen vorher zu sammeln.
+	 * Zahlen werden direkt aus dem Lesepuffer geparst, ohne Zeichenkette je Zelle.
+	 * @param file CSV-Datei.
+	 * @param types Typ je Spalte oder null, falls alle Typen abgeleitet werden sollen.
+	 * @return spaltenweise CSV-Daten.
+	 * @throws Exception Lese-, Format- oder Typfehler.
+	 */
+	public static ColumnarCsvData load(File file, CsvColumn.Type[] types) throws Exception {
+		CsvReader reader = new CsvReader(file);
+		try {
+			String[] headers = reader.getHeaders();
+			final ColumnarCsvData data = new ColumnarCsvData(headers, types != null ? types : new CsvColumn.Type[headers.length]);
+			ICsvCellHandler appendCell = new ICsvCellHandler() {
+				@Override
+				public void cell(int column, char[] buf, int off, int len) {
+					data.appendCell(column, buf, off, len);
+				}
+			};
+			while(reader.readRow(appendCell)) {
+				data.numRows++;
+				data.fireRowInserted(data.numRows - 1);
+			}
+			return data;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Füge Zeile am Ende hinzu.
+	 * @param row Zeile mit einem Zelleninhalt je Spalte.
+	 */
+	public void appendRow(String[] row) {
+		if(row.length != columns.length) {
+			throw new IllegalArgumentException("Row length is " + row.length + " but header count is " + columns.length);
+		}
+		for(int col = 0; col < columns.length; col++) {
+			if(!columns[col].insert(numRows, row[col])) {
+				widenOrFail(col, row[col]);
+				columns[col].insert(numRows, row[col]);
+			}
+		}
+		numRows++;
+		fireRowInserted(numRows - 1);
+	}
+
+	private void appendCell(int col, char[] buf, int off, int len) {
+		if(!columns[col].insert(numRows, buf, off, len)) {
+			String value = new String(buf, off, len);
+			widenOrFail(col, value);
+			columns[col].insert(numRows, value);
+		}
+	}
+
+	private void widenOrFail(int col, String value) {
+		if(declared[col]) {
+			throw new IllegalArgumentException("Value \"" + value + "\" not representable as " + columns[col].getType() + " in column " + headers[col]);
+		}
+		columns[col] = CsvColumn.widen(columns[col], value);
+	}
+
+	/**
+	 * Typ einer Spalte.
+	 * @param col Spaltenindex.
+	 * @return Spaltentyp.
+	 */
+	public CsvColumn.Type getColumnType(int col) {
+		return columns[col].getType();
+	}
+
+	/**
+	 * Typisierte Spalte für schnelle Durchläufe ohne Umweg über Zeichenketten.
+	 * @param col Spaltenindex.
+	 * @return Spalte. Wird ungültig, wenn sich ihr Typ durch setCellAt ändert.
+	 */
+	public CsvColumn getTypedColumn(int col) {
+		return columns[col];
+	}
+
+	@Override
+	public int getIntAt(int row, int col) {
+		return columns[col].getInt(row);
+	}
+
+	@Override
+	public long getLongAt(int row, int col) {
+		return columns[col].getLong(row);
+	}
+
+	@Override
+	public double getDoubleAt(int row, int col) {
+		return columns[col].getDouble(row);
+	}
+
+	@Override
+	public boolean getBooleanAt(int row, int col) {
+		return columns[col].getBoolean(row);
+	}
+
+	@Override
+	public String[] getHeaders() {
+		return headers;
+	}
+
+	@Override
+	public int rowCount() {
+		return numRows;
+	}
+
+	@Override
+	public String getCellAt(int row, int col) {
+		return columns[col].get(row);
+	}
+
+	@Override
+	public void setCellAt(int row, int col, String content) {
+		String oldContent = hasListeners() ? columns[col].get(row) : null;
+		if(!columns[col].set(row, content)) {
+			widenOrFail(col, content);
+			columns[col].set(row, content);
+		}
+		if(hasListeners()) {
+			// Beobachter erhalten den gespeicherten Wert, typisierte Spalten normalisieren bspw. "007" zu "7".
+			fireCellChanged(row, col, oldContent, columns[col].get(row));
+		}
+	}
+
+	@Override
+	public String[] getRow(int row) {
+		String[] cells = new String[columns.length];
+		for(int col = 0; col < columns.length; col++) {
+			cells[col] = columns[col].get(row);
+		}
+		return cells;
+	}
+
+	@Override
+	public List<String> getColumn(String header) {
+		CsvColumn column = columns[columnWithHeader(header)];
+		List<String> cells = new ArrayList<String>(numRows + 1);
+		cells.add(header);
+		for(int row = 0; row < numRows; row++) {
+			cells.add(column.get(row));
+		}
+		return cells;
+	}
+
+	@Override
+	public void addColumn(String header) {
+		CsvColumn column = CsvColumn.create(CsvColumn.Type.STRING, true);
+		for(int row = 0; row < numRows; row++) {
+			column.insert(row, null);
+		}
+		headers = Arrays.copyOf(headers, headers.length + 1);
+		headers[headers.length - 1] = header;
+		columns = Arrays.copyOf(columns, columns.length + 1);
+		columns[columns.length - 1] = column;
+		declared = Arrays.copyOf(declared, declared.length + 1);
+		invalidateSchema();
+		fireColumnAdded(columns.length - 1);
+	}
+
+	@Override
+	public void removeRow(int row) {
+		if(row < 0 || row >= numRows) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", row count: " + numRows);
+		}
+		String[] oldRow = hasListeners() ? getRow(row) : null;
+		for(CsvColumn column : columns) {
+			column.remove(row);
+		}
+		numRows--;
+		fireRowRemoved(row, oldRow);
+	}
+
+	@Override
+	public void addRow(int row) {
+		if(row < 0 || row > numRows) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", row count: " + numRows);
+		}
+		for(CsvColumn column : columns) {
+			column.insert(row, null);
+		}
+		numRows++;
+		fireRowInserted(row);
+	}
+}
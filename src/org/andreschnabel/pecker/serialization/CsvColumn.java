@@ -0,0 +1,746 @@
+package org.andreschnabel.pecker.serialization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typisierte Spalte für spaltenweise gespeicherte CSV-Daten (ColumnarCsvData).
+ *
+ * Zahlen und Wahrheitswerte liegen in primitiven Arrays, Zeichenketten wörterbuchkodiert.
+ * Leere Zellen in Zahlen- und Wahrheitswertspalten gelten als fehlend und werden als "" gelesen.
+ */
+public abstract class CsvColumn {
+
+	/**
+	 * Typ einer Spalte.
+	 */
+	public static enum Type {
+		INT,
+		LONG,
+		DOUBLE,
+		BOOLEAN,
+		STRING
+	}
+
+	protected int size;
+
+	/**
+	 * @return Typ der Spalte.
+	 */
+	public abstract Type getType();
+
+	/**
+	 * @return Anzahl der Zellen.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Zelleninhalt als Zeichenkette.
+	 * @param row Zeilenindex.
+	 * @return Zelleninhalt.
+	 */
+	public abstract String get(int row);
+
+	/**
+	 * @param row Zeilenindex.
+	 * @return true, gdw. Zelle leer ist.
+	 */
+	public abstract boolean isMissing(int row);
+
+	public int getInt(int row) {
+		return Integer.parseInt(get(row));
+	}
+
+	public long getLong(int row) {
+		return Long.parseLong(get(row));
+	}
+
+	public double getDouble(int row) {
+		return Double.parseDouble(get(row));
+	}
+
+	public boolean getBoolean(int row) {
+		return Boolean.parseBoolean(get(row));
+	}
+
+	/**
+	 * @return Anzahl verschiedener Werte im Wörterbuch oder -1, falls die Spalte nicht wörterbuchkodiert ist.
+	 */
+	public int dictionarySize() {
+		return -1;
+	}
+
+	/**
+	 * Setze Zelleninhalt.
+	 * @param row Zeilenindex.
+	 * @param value neuer Inhalt.
+	 * @return false, gdw. Wert in diesem Typ nicht darstellbar ist. Spalte bleibt dann unverändert.
+	 */
+	abstract boolean set(int row, String value);
+
+	/**
+	 * Füge Zelle ein. Nachfolgende Zellen rücken nach hinten.
+	 * @param row Zeilenindex.
+	 * @param value Inhalt.
+	 * @return false, gdw. Wert in diesem Typ nicht darstellbar ist. Spalte bleibt dann unverändert.
+	 */
+	abstract boolean insert(int row, String value);
+
+	/**
+	 * Füge Zelle direkt aus Zeichenpuffer ein. Zahlenspalten parsen ohne Zeichenkette.
+	 * @param row Zeilenindex.
+	 * @param buf Zeichenpuffer.
+	 * @param off Startindex.
+	 * @param len Länge.
+	 * @return false, gdw. Wert in diesem Typ nicht darstellbar ist. Spalte bleibt dann unverändert.
+	 */
+	boolean insert(int row, char[] buf, int off, int len) {
+		return insert(row, new String(buf, off, len));
+	}
+
+	/**
+	 * Entferne Zelle. Nachfolgende Zellen rücken nach vorne.
+	 * @param row Zeilenindex.
+	 */
+	abstract void remove(int row);
+
+	/**
+	 * Erzeuge leere Spalte.
+	 * @param type Typ.
+	 * @param strict true, gdw. nur verlustfrei darstellbare Werte akzeptiert werden
+	 * (z.B. wird "007" dann nicht als Zahl 7 gespeichert).
+	 * @return leere Spalte.
+	 */
+	static CsvColumn create(Type type, boolean strict) {
+		switch(type) {
+			case INT:
+				return new IntColumn(strict);
+			case LONG:
+				return new LongColumn(strict);
+			case DOUBLE:
+				return new DoubleColumn(strict);
+			case BOOLEAN:
+				return new BooleanColumn(strict);
+			case STRING:
+			default:
+				return new StringColumn();
+		}
+	}
+
+	/**
+	 * Speziellster Typ, der Wert verlustfrei darstellt.
+	 * @param value Zelleninhalt.
+	 * @return Typ.
+	 */
+	static Type inferType(String value) {
+		if(value == null || value.isEmpty()) {
+			return Type.INT;
+		}
+		for(Type type : new Type[] {Type.INT, Type.LONG, Type.DOUBLE, Type.BOOLEAN}) {
+			CsvColumn probe = create(type, true);
+			if(probe.insert(0, value)) {
+				return type;
+			}
+		}
+		return Type.STRING;
+	}
+
+	/**
+	 * Wandle Spalte in allgemeineren Typ um, sodass auch value darstellbar ist.
+	 * @param column bisherige Spalte (strikt).
+	 * @param value neuer Wert, welcher nicht darstellbar war.
+	 * @return neue Spalte mit gleichem Inhalt.
+	 */
+	static CsvColumn widen(CsvColumn column, String value) {
+		Type target = inferType(value);
+		if(!column.hasPresentValues()) {
+			// Typ stand noch nicht fest.
+		} else if((column.getType() == Type.INT && target == Type.LONG) || (column.getType() == Type.LONG && target == Type.INT)) {
+			target = Type.LONG;
+		} else {
+			target = Type.STRING;
+		}
+
+		CsvColumn widened = create(target, true);
+		for(int row = 0; row < column.size(); row++) {
+			if(!widened.insert(row, column.get(row))) {
+				return widen(widened, column.get(row));
+			}
+		}
+		return widened;
+	}
+
+	private boolean hasPresentValues() {
+		for(int row = 0; row < size; row++) {
+			if(!isMissing(row)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Spalte primitiver Werte mit optionaler Markierung fehlender Werte.
+	 */
+	private abstract static class PrimitiveColumn extends CsvColumn {
+		protected final boolean strict;
+		private boolean[] missing;
+
+		protected PrimitiveColumn(boolean strict) {
+			this.strict = strict;
+		}
+
+		/**
+		 * Stelle Platz für capacity Werte sicher.
+		 */
+		protected abstract void ensureCapacity(int capacity);
+
+		/**
+		 * Verschiebe len Werte von from nach to.
+		 */
+		protected abstract void moveValues(int from, int to, int len);
+
+		/**
+		 * Parse und speichere nicht-leeren Wert.
+		 * @return false, gdw. nicht darstellbar.
+		 */
+		protected abstract boolean store(int row, String value);
+
+		/**
+		 * Parse und speichere nicht-leeren Wert aus Zeichenpuffer.
+		 * @return false, gdw. nicht darstellbar.
+		 */
+		protected boolean store(int row, char[] buf, int off, int len) {
+			return store(row, new String(buf, off, len));
+		}
+
+		/**
+		 * Formatiere vorhandenen Wert.
+		 */
+		protected abstract String format(int row);
+
+		@Override
+		public String get(int row) {
+			checkRow(row);
+			return isMissing(row) ? "" : format(row);
+		}
+
+		@Override
+		public boolean isMissing(int row) {
+			return missing != null && missing[row];
+		}
+
+		@Override
+		boolean set(int row, String value) {
+			checkRow(row);
+			if(value == null || value.isEmpty()) {
+				setMissing(row, true);
+				return true;
+			}
+			if(!store(row, value)) {
+				return false;
+			}
+			setMissing(row, false);
+			return true;
+		}
+
+		@Override
+		boolean insert(int row, String value) {
+			openSlot(row);
+			if(!set(row, value)) {
+				remove(row);
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		boolean insert(int row, char[] buf, int off, int len) {
+			openSlot(row);
+			if(len == 0) {
+				setMissing(row, true);
+			} else if(!store(row, buf, off, len)) {
+				remove(row);
+				return false;
+			}
+			return true;
+		}
+
+		private void openSlot(int row) {
+			ensureCapacity(size + 1);
+			moveValues(row, row + 1, size - row);
+			if(missing != null) {
+				missing = Arrays.copyOf(missing, Math.max(missing.length, size + 1));
+				System.arraycopy(missing, row, missing, row + 1, size - row);
+				missing[row] = false;
+			}
+			size++;
+		}
+
+		@Override
+		void remove(int row) {
+			checkRow(row);
+			moveValues(row + 1, row, size - row - 1);
+			if(missing != null) {
+				System.arraycopy(missing, row + 1, missing, row, size - row - 1);
+				missing[size - 1] = false;
+			}
+			size--;
+		}
+
+		private void setMissing(int row, boolean isMissing) {
+			if(missing == null) {
+				if(!isMissing) {
+					return;
+				}
+				missing = new boolean[Math.max(size, 16)];
+			} else if(missing.length < size) {
+				missing = Arrays.copyOf(missing, Math.max(size, missing.length * 2));
+			}
+			missing[row] = isMissing;
+		}
+
+		private void checkRow(int row) {
+			if(row < 0 || row >= size) {
+				throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+			}
+		}
+
+		/**
+		 * Typisierte Getter liefern für fehlende Werte wie parseInt("") eine NumberFormatException.
+		 */
+		protected void checkPresent(int row) {
+			checkRow(row);
+			if(isMissing(row)) {
+				throw new NumberFormatException("Missing value in row " + row);
+			}
+		}
+
+		protected static int grownCapacity(int length, int capacity) {
+			return Math.max(capacity, Math.max(16, length + (length >> 1)));
+		}
+	}
+
+	private static class IntColumn extends PrimitiveColumn {
+		private int[] values = new int[0];
+
+		private IntColumn(boolean strict) {
+			super(strict);
+		}
+
+		@Override
+		public Type getType() {
+			return Type.INT;
+		}
+
+		@Override
+		public int getInt(int row) {
+			checkPresent(row);
+			return values[row];
+		}
+
+		@Override
+		public long getLong(int row) {
+			checkPresent(row);
+			return values[row];
+		}
+
+		@Override
+		public double getDouble(int row) {
+			checkPresent(row);
+			return values[row];
+		}
+
+		@Override
+		protected void ensureCapacity(int capacity) {
+			if(values.length < capacity) {
+				values = Arrays.copyOf(values, grownCapacity(values.length, capacity));
+			}
+		}
+
+		@Override
+		protected void moveValues(int from, int to, int len) {
+			System.arraycopy(values, from, values, to, len);
+		}
+
+		@Override
+		protected boolean store(int row, String value) {
+			int v;
+			try {
+				v = Integer.parseInt(value);
+			} catch(NumberFormatException e) {
+				return false;
+			}
+			if(strict && !Integer.toString(v).equals(value)) {
+				return false;
+			}
+			values[row] = v;
+			return true;
+		}
+
+		@Override
+		protected boolean store(int row, char[] buf, int off, int len) {
+			if(strict && !CsvNumbers.isCanonicalInteger(buf, off, off + len)) {
+				return false;
+			}
+			try {
+				values[row] = CsvNumbers.parseInt(buf, off, off + len);
+			} catch(NumberFormatException e) {
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		protected String format(int row) {
+			return Integer.toString(values[row]);
+		}
+	}
+
+	private static class LongColumn extends PrimitiveColumn {
+		private long[] values = new long[0];
+
+		private LongColumn(boolean strict) {
+			super(strict);
+		}
+
+		@Override
+		public Type getType() {
+			return Type.LONG;
+		}
+
+		@Override
+		public long getLong(int row) {
+			checkPresent(row);
+			return values[row];
+		}
+
+		@Override
+		public double getDouble(int row) {
+			checkPresent(row);
+			return values[row];
+		}
+
+		@Override
+		protected void ensureCapacity(int capacity) {
+			if(values.length < capacity) {
+				values = Arrays.copyOf(values, grownCapacity(values.length, capacity));
+			}
+		}
+
+		@Override
+		protected void moveValues(int from, int to, int len) {
+			System.arraycopy(values, from, values, to, len);
+		}
+
+		@Override
+		protected boolean store(int row, String value) {
+			long v;
+			try {
+				v = Long.parseLong(value);
+			} catch(NumberFormatException e) {
+				return false;
+			}
+			if(strict && !Long.toString(v).equals(value)) {
+				return false;
+			}
+			values[row] = v;
+			return true;
+		}
+
+		@Override
+		protected boolean store(int row, char[] buf, int off, int len) {
+			if(strict && !CsvNumbers.isCanonicalInteger(buf, off, off + len)) {
+				return false;
+			}
+			try {
+				values[row] = CsvNumbers.parseLong(buf, off, off + len);
+			} catch(NumberFormatException e) {
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		protected String format(int row) {
+			return Long.toString(values[row]);
+		}
+	}
+
+	private static class DoubleColumn extends PrimitiveColumn {
+		private double[] values = new double[0];
+
+		private DoubleColumn(boolean strict) {
+			super(strict);
+		}
+
+		@Override
+		public Type getType() {
+			return Type.DOUBLE;
+		}
+
+		@Override
+		public double getDouble(int row) {
+			checkPresent(row);
+			return values[row];
+		}
+
+		@Override
+		protected void ensureCapacity(int capacity) {
+			if(values.length < capacity) {
+				values = Arrays.copyOf(values, grownCapacity(values.length, capacity));
+			}
+		}
+
+		@Override
+		protected void moveValues(int from, int to, int len) {
+			System.arraycopy(values, from, values, to, len);
+		}
+
+		@Override
+		protected boolean store(int row, String value) {
+			double v;
+			try {
+				v = Double.parseDouble(value);
+			} catch(NumberFormatException e) {
+				return false;
+			}
+			if(strict && !Double.toString(v).equals(value)) {
+				return false;
+			}
+			values[row] = v;
+			return true;
+		}
+
+		@Override
+		protected boolean store(int row, char[] buf, int off, int len) {
+			if(strict) {
+				// Verlustfreiheit lässt sich nur über die Zeichenkette von Double.toString prüfen.
+				return super.store(row, buf, off, len);
+			}
+			try {
+				values[row] = CsvNumbers.parseDouble(buf, off, off + len);
+			} catch(NumberFormatException e) {
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		protected String format(int row) {
+			return Double.toString(values[row]);
+		}
+	}
+
+	private static class BooleanColumn extends PrimitiveColumn {
+		private boolean[] values = new boolean[0];
+
+		private BooleanColumn(boolean strict) {
+			super(strict);
+		}
+
+		@Override
+		public Type getType() {
+			return Type.BOOLEAN;
+		}
+
+		@Override
+		public boolean getBoolean(int row) {
+			checkPresent(row);
+			return values[row];
+		}
+
+		@Override
+		protected void ensureCapacity(int capacity) {
+			if(values.length < capacity) {
+				values = Arrays.copyOf(values, grownCapacity(values.length, capacity));
+			}
+		}
+
+		@Override
+		protected void moveValues(int from, int to, int len) {
+			System.arraycopy(values, from, values, to, len);
+		}
+
+		@Override
+		protected boolean store(int row, String value) {
+			if(value.equals("true") || value.equals("false")) {
+				values[row] = value.equals("true");
+				return true;
+			} else if(!strict && (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false"))) {
+				values[row] = value.equalsIgnoreCase("true");
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		protected boolean store(int row, char[] buf, int off, int len) {
+			boolean ignoreCase = !strict;
+			if(CsvNumbers.matches(buf, off, off + len, "true", ignoreCase)) {
+				values[row] = true;
+				return true;
+			} else if(CsvNumbers.matches(buf, off, off + len, "false", ignoreCase)) {
+				values[row] = false;
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		protected String format(int row) {
+			return values[row] ? "true" : "false";
+		}
+	}
+
+	/**
+	 * Wörterbuchkodierte Zeichenketten. Jede Zelle speichert nur den Code ihres Werts.
+	 * Codes nicht mehr verwendeter Werte werden freigegeben und wiederverwendet.
+	 * Wiederholen sich zu wenige Werte, speichert die Spalte die Zeichenketten stattdessen direkt.
+	 */
+	private static class StringColumn extends CsvColumn {
+		/** Ab dieser Zellenanzahl wird geprüft, ob sich das Wörterbuch lohnt. */
+		private static final int MIN_ROWS_FOR_PLAIN = 1024;
+
+		private int[] codes = new int[0];
+		private final List<String> dictionary = new ArrayList<String>();
+		private final Map<String, Integer> codeOfValue = new HashMap<String, Integer>();
+		private int[] useCounts = new int[0];
+		private final List<Integer> freeCodes = new ArrayList<Integer>();
+
+		/** Direkt gespeicherte Zeichenketten, gdw. Wörterbuch aufgegeben wurde. */
+		private String[] values;
+
+		@Override
+		public Type getType() {
+			return Type.STRING;
+		}
+
+		@Override
+		public String get(int row) {
+			checkRow(row);
+			if(values != null) {
+				return values[row];
+			}
+			int code = codes[row];
+			return code < 0 ? null : dictionary.get(code);
+		}
+
+		@Override
+		public boolean isMissing(int row) {
+			String value = get(row);
+			return value == null || value.isEmpty();
+		}
+
+		@Override
+		boolean set(int row, String value) {
+			checkRow(row);
+			if(values != null) {
+				values[row] = value;
+				return true;
+			}
+			int code = encode(value);
+			release(codes[row]);
+			codes[row] = code;
+			return true;
+		}
+
+		@Override
+		boolean insert(int row, String value) {
+			if(values != null) {
+				if(values.length < size + 1) {
+					values = Arrays.copyOf(values, PrimitiveColumn.grownCapacity(values.length, size + 1));
+				}
+				System.arraycopy(values, row, values, row + 1, size - row);
+				values[row] = value;
+				size++;
+				return true;
+			}
+			if(codes.length < size + 1) {
+				codes = Arrays.copyOf(codes, PrimitiveColumn.grownCapacity(codes.length, size + 1));
+			}
+			System.arraycopy(codes, row, codes, row + 1, size - row);
+			codes[row] = encode(value);
+			size++;
+			if(size >= MIN_ROWS_FOR_PLAIN && codeOfValue.size() > size / 2) {
+				decodeAll();
+			}
+			return true;
+		}
+
+		@Override
+		void remove(int row) {
+			checkRow(row);
+			if(values != null) {
+				System.arraycopy(values, row + 1, values, row, size - row - 1);
+				values[size - 1] = null;
+			} else {
+				release(codes[row]);
+				System.arraycopy(codes, row + 1, codes, row, size - row - 1);
+			}
+			size--;
+		}
+
+		private int encode(String value) {
+			if(value == null) {
+				return -1;
+			}
+			Integer code = codeOfValue.get(value);
+			if(code == null) {
+				if(!freeCodes.isEmpty()) {
+					code = freeCodes.remove(freeCodes.size() - 1);
+					dictionary.set(code, value);
+				} else {
+					code = dictionary.size();
+					dictionary.add(value);
+					if(useCounts.length < code + 1) {
+						useCounts = Arrays.copyOf(useCounts, PrimitiveColumn.grownCapacity(useCounts.length, code + 1));
+					}
+				}
+				codeOfValue.put(value, code);
+			}
+			useCounts[code]++;
+			return code;
+		}
+
+		private void release(int code) {
+			if(code >= 0 && --useCounts[code] == 0) {
+				codeOfValue.remove(dictionary.get(code));
+				dictionary.set(code, null);
+				freeCodes.add(code);
+			}
+		}
+
+		/**
+		 * Gebe Wörterbuch auf und speichere Zeichenketten direkt.
+		 */
+		private void decodeAll() {
+			String[] decoded = new String[codes.length];
+			for(int row = 0; row < size; row++) {
+				decoded[row] = codes[row] < 0 ? null : dictionary.get(codes[row]);
+			}
+			values = decoded;
+			codes = null;
+			dictionary.clear();
+			codeOfValue.clear();
+			useCounts = null;
+			freeCodes.clear();
+		}
+
+		@Override
+		public int dictionarySize() {
+			return values != null ? -1 : codeOfValue.size();
+		}
+
+		private void checkRow(int row) {
+			if(row < 0 || row >= size) {
+				throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+			}
+		}
+	}
+}
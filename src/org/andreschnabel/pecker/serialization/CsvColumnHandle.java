@@ -0,0 +1,45 @@
+package org.andreschnabel.pecker.serialization;
+
+/**
+ * Vorab aufgelöste Spalte eines CsvSchema.
+ *
+ * Zugriffe über ein Handle kommen ohne Zeichenkettenvergleiche aus.
+ * Ein Handle ist nur gültig, solange die CSV-Daten das Schema verwenden, aus dem es stammt.
+ * Sonst schlägt der Zugriff mit IllegalStateException fehl.
+ */
+public final class CsvColumnHandle {
+
+	private final CsvSchema schema;
+	private final int index;
+
+	CsvColumnHandle(CsvSchema schema, int index) {
+		this.schema = schema;
+		this.index = index;
+	}
+
+	/**
+	 * @return Schema, zu dem das Handle gehört.
+	 */
+	public CsvSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * @return Spaltenindex.
+	 */
+	public int index() {
+		return index;
+	}
+
+	/**
+	 * @return Spaltenbezeichner.
+	 */
+	public String header() {
+		return schema.header(index);
+	}
+
+	@Override
+	public String toString() {
+		return header() + "@" + index;
+	}
+}
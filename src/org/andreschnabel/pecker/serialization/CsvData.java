@@ -1,14 +1,18 @@
 package org.andreschnabel.pecker.serialization;
 
+import org.andreschnabel.pecker.collections.ChunkedList;
 import org.andreschnabel.pecker.functional.Func;
 import org.andreschnabel.pecker.functional.ITransform;
-import org.andreschnabel.pecker.helpers.FileHelpers;
-import org.andreschnabel.pecker.helpers.StringHelpers;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
 
 /**
  * Kapselt CSV-Daten.
@@ -29,6 +33,25 @@ public class CsvData {
 	 */
 	public String title;
 
+	/**
+	 * Schema für aktuelles Spaltenlayout. Wird bei Bedarf gebaut.
+	 */
+	private CsvSchema schema;
+
+	private static final ICsvDataListener[] NO_LISTENERS = new ICsvDataListener[0];
+
+	/**
+	 * Beobachter. Wird bei Änderung kopiert, damit sich Beobachter während einer Benachrichtigung abmelden können.
+	 */
+	private ICsvDataListener[] listeners = NO_LISTENERS;
+
+	/**
+	 * Bei Bedarf gebaute Indizes je Spaltenindex.
+	 */
+	private Map<Integer, CsvHashIndex> hashIndexes;
+	private Map<Integer, CsvSortedIndex> sortedIndexes;
+	private Map<Integer, CsvZoneMap> zoneMaps;
+
 	/**
 	 * Konstruktor
 	 *
@@ -57,35 +80,45 @@ public class CsvData {
 	 * Die erste CSV-Zeile enthält die Spaltenbezeichnungen.
 	 * Der Index im String-Array ist die Spaltennummer.
 	 * Der Index in der Liste ist die Zeilennummer+1 (für Header-Zeile).
+	 * Listen ohne wahlfreien Zugriff (z.B. LinkedList) werden in eine ChunkedList kopiert.
 	 */
 	public CsvData(String title, List<String[]> rowList) {
 		this.title = title;
-		this.rowList = rowList;
+		this.rowList = (rowList == null || rowList instanceof RandomAccess) ? rowList : new ChunkedList<String[]>(rowList);
 	}
 
 	/**
 	 * Kopierkonstruktor.
+	 * Teilt die Zeilenliste mit data. Abgeleitete Darstellungen ohne Zeilenliste
+	 * (z.B. MappedCsvData, SnapshotCsvData, ColumnarCsvData) werden zeilenweise kopiert.
 	 * @param data CSV-Daten.
 	 */
 	public CsvData(CsvData data) {
-		this.rowList = data.rowList;
 		this.title = data.title;
+		if(data.rowList != null) {
+			this.rowList = data.rowList;
+		} else {
+			int numRows = data.rowCount();
+			this.rowList = new ChunkedList<String[]>();
+			rowList.add(data.getHeaders().clone());
+			for(int row = 0; row < numRows; row++) {
+				rowList.add(data.getRow(row).clone());
+			}
+		}
 	}
 
 	@Override
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
-		for(int i = 0; i < rowList.size(); i++) {
-			String[] row = rowList.get(i);
-			for(int j = 0; j < row.length; j++) {
-				String cell = row[j];
-				sb.append(CsvHelpers.escapeIfComma(StringHelpers.removeQuotes(cell)));
-				if(j+1<row.length)
-					sb.append(',');
-			}
-			sb.append('\n');
+		StringWriter sw = new StringWriter();
+		CsvWriter writer = new CsvWriter(sw);
+		try {
+			writer.writeData(this);
+			writer.flush();
+		} catch(IOException e) {
+			// StringWriter wirft nicht.
+			throw new RuntimeException(e);
 		}
-		return sb.toString();
+		return sw.toString();
 	}
 
 	/**
@@ -102,7 +135,243 @@ public class CsvData {
 	 * @return Spaltenindex.
 	 */
 	public int columnWithHeader(String header) {
-		return Func.fromArray(getHeaders()).indexOf(header);
+		return getSchema().indexOf(header);
+	}
+
+	/**
+	 * Schema des aktuellen Spaltenlayouts.
+	 * @return Schema. Dieselbe Instanz, bis sich das Spaltenlayout ändert.
+	 */
+	public CsvSchema getSchema() {
+		if(schema == null) {
+			schema = new CsvSchema(getHeaders());
+		}
+		return schema;
+	}
+
+	/**
+	 * Verwerfe Schema nach Änderung des Spaltenlayouts. Bisherige Spalten-Handles werden ungültig.
+	 */
+	protected void invalidateSchema() {
+		schema = null;
+	}
+
+	/**
+	 * Handle für Spalte mit Bezeichner.
+	 * @param header Spaltenbezeichner.
+	 * @return Spalten-Handle für schnelle Zugriffe mit getCellAt/setCellAt.
+	 */
+	public CsvColumnHandle column(String header) {
+		return getSchema().column(header);
+	}
+
+	/**
+	 * Spaltenindex für Handle.
+	 * @param column Spalten-Handle.
+	 * @return Spaltenindex.
+	 * @throws IllegalStateException falls Handle nicht zum aktuellen Schema gehört.
+	 */
+	protected int resolve(CsvColumnHandle column) {
+		if(column.getSchema() != getSchema()) {
+			throw new IllegalStateException("Column handle " + column + " is stale, column layout has changed");
+		}
+		return column.index();
+	}
+
+	/**
+	 * Melde Beobachter für Änderungen an.
+	 * @param listener Beobachter.
+	 */
+	public void addListener(ICsvDataListener listener) {
+		ICsvDataListener[] nlisteners = Arrays.copyOf(listeners, listeners.length + 1);
+		nlisteners[listeners.length] = listener;
+		listeners = nlisteners;
+	}
+
+	/**
+	 * Melde Beobachter ab.
+	 * @param listener Beobachter.
+	 */
+	public void removeListener(ICsvDataListener listener) {
+		for(int i = 0; i < listeners.length; i++) {
+			if(listeners[i] == listener) {
+				ICsvDataListener[] nlisteners = new ICsvDataListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, nlisteners, 0, i);
+				System.arraycopy(listeners, i + 1, nlisteners, i, listeners.length - i - 1);
+				listeners = nlisteners;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return true, gdw. mindestens ein Beobachter angemeldet ist.
+	 */
+	protected boolean hasListeners() {
+		return listeners.length > 0;
+	}
+
+	/**
+	 * Benachrichtige alle Beobachter über geänderte Zelle.
+	 * Wirft ein Beobachter eine Ausnahme, werden die übrigen trotzdem benachrichtigt,
+	 * damit deren Zustand (bspw. Indizes) konsistent bleibt. Die erste Ausnahme wird danach weitergereicht.
+	 */
+	protected void fireCellChanged(int row, int col, String oldContent, String newContent) {
+		RuntimeException error = null;
+		for(ICsvDataListener listener : listeners) {
+			try {
+				listener.cellChanged(this, row, col, oldContent, newContent);
+			} catch(RuntimeException e) {
+				error = error != null ? error : e;
+			}
+		}
+		rethrow(error);
+	}
+
+	protected void fireRowInserted(int row) {
+		RuntimeException error = null;
+		for(ICsvDataListener listener : listeners) {
+			try {
+				listener.rowInserted(this, row);
+			} catch(RuntimeException e) {
+				error = error != null ? error : e;
+			}
+		}
+		rethrow(error);
+	}
+
+	protected void fireRowRemoved(int row, String[] oldRow) {
+		RuntimeException error = null;
+		for(ICsvDataListener listener : listeners) {
+			try {
+				listener.rowRemoved(this, row, oldRow);
+			} catch(RuntimeException e) {
+				error = error != null ? error : e;
+			}
+		}
+		rethrow(error);
+	}
+
+	protected void fireColumnAdded(int col) {
+		RuntimeException error = null;
+		for(ICsvDataListener listener : listeners) {
+			try {
+				listener.columnAdded(this, col);
+			} catch(RuntimeException e) {
+				error = error != null ? error : e;
+			}
+		}
+		rethrow(error);
+	}
+
+	private static void rethrow(RuntimeException error) {
+		if(error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Hashindex für Spalte. Wird beim ersten Aufruf gebaut und danach bei Änderungen aktuell gehalten.
+	 * @param header Spaltenbezeichner.
+	 * @return Hashindex für Gleichheitssuche.
+	 */
+	public CsvHashIndex hashIndex(String header) {
+		int col = column(header).index();
+		if(hashIndexes == null) {
+			hashIndexes = new HashMap<Integer, CsvHashIndex>();
+		}
+		CsvHashIndex index = hashIndexes.get(col);
+		if(index == null) {
+			index = new CsvHashIndex(this, col);
+			hashIndexes.put(col, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Sortierter Index für Spalte mit lexikographischer Ordnung.
+	 * Wird beim ersten Aufruf gebaut und danach bei Änderungen aktuell gehalten.
+	 * @param header Spaltenbezeichner.
+	 * @return sortierter Index für Bereichs- und Präfixsuche.
+	 */
+	public CsvSortedIndex sortedIndex(String header) {
+		int col = column(header).index();
+		if(sortedIndexes == null) {
+			sortedIndexes = new HashMap<Integer, CsvSortedIndex>();
+		}
+		CsvSortedIndex index = sortedIndexes.get(col);
+		if(index == null) {
+			index = new CsvSortedIndex(this, col);
+			sortedIndexes.put(col, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Zone Map für Spalte mit Statistiken je Block von CsvZoneMap.DEFAULT_BLOCK_SIZE Zeilen.
+	 * Wird beim ersten Aufruf gebaut und danach bei Änderungen aktuell gehalten.
+	 * @param header Spaltenbezeichner.
+	 * @return Zone Map für Bereichssuchen, die ganze Blöcke überspringen.
+	 */
+	public CsvZoneMap zoneMap(String header) {
+		int col = column(header).index();
+		if(zoneMaps == null) {
+			zoneMaps = new HashMap<Integer, CsvZoneMap>();
+		}
+		CsvZoneMap zoneMap = zoneMaps.get(col);
+		if(zoneMap == null) {
+			zoneMap = new CsvZoneMap(this, col);
+			zoneMaps.put(col, zoneMap);
+		}
+		return zoneMap;
+	}
+
+	/**
+	 * Gruppiere Zeilen nach Schlüsselspalten. Aggregate werden an der Rückgabe angegeben,
+	 * z.B. groupBy("Stadt").count().sum("Umsatz").execute().
+	 * @param headers Bezeichner der Schlüsselspalten.
+	 * @return Gruppierung.
+	 */
+	public CsvGroupBy groupBy(String... headers) {
+		return new CsvGroupBy(this, headers);
+	}
+
+	/**
+	 * Verbinde mit anderen CSV-Daten über gleiche Schlüssel per Hash-Join.
+	 * Weitere Optionen (parallel, Speicherbudget) bietet CsvJoin direkt.
+	 * @param other rechte CSV-Daten.
+	 * @param header Bezeichner der Schlüsselspalte in diesen Daten.
+	 * @param otherHeader Bezeichner der Schlüsselspalte in other.
+	 * @param type Art des Joins.
+	 * @return verbundene CSV-Daten.
+	 * @throws Exception
+	 */
+	public CsvData join(CsvData other, String header, String otherHeader, CsvJoin.Type type) throws Exception {
+		return new CsvJoin(this, header, other, otherHeader).type(type).execute();
+	}
+
+	/**
+	 * Verwerfe alle mit hashIndex, sortedIndex und zoneMap gebauten Indizes.
+	 */
+	public void dropIndexes() {
+		if(hashIndexes != null) {
+			for(CsvIndex index : hashIndexes.values()) {
+				index.close();
+			}
+			hashIndexes = null;
+		}
+		if(sortedIndexes != null) {
+			for(CsvIndex index : sortedIndexes.values()) {
+				index.close();
+			}
+			sortedIndexes = null;
+		}
+		if(zoneMaps != null) {
+			for(CsvZoneMap zoneMap : zoneMaps.values()) {
+				zoneMap.close();
+			}
+			zoneMaps = null;
+		}
 	}
 
 	/**
@@ -111,7 +380,7 @@ public class CsvData {
 	 * @return true, gdw. Spalte mit Bezeichner existiert.
 	 */
 	public boolean hasColumnWithHeader(String header) {
-		return Func.fromArray(getHeaders()).contains(header);
+		return columnWithHeader(header) >= 0;
 	}
 
 	/**
@@ -147,7 +416,94 @@ public class CsvData {
 	 * @return Zelleninhalt.
 	 */
 	public String getCellAt(int row, String header) {
-		return rowList.get(row+1)[columnWithHeader(header)];
+		return getCellAt(row, columnWithHeader(header));
+	}
+
+	/**
+	 * Zelleninhalt von Zelle mit Zeilenindex row in Spalte mit Handle column.
+	 * @param row Zeilenindex.
+	 * @param column Spalten-Handle.
+	 * @return Zelleninhalt.
+	 */
+	public String getCellAt(int row, CsvColumnHandle column) {
+		return getCellAt(row, resolve(column));
+	}
+
+	/**
+	 * Zelleninhalt als int, ohne Zwischen-Zeichenkette geparst. Typisierte und abgebildete Daten lesen direkt aus ihrem Speicher.
+	 * @param row Zeilenindex.
+	 * @param col Spaltenindex.
+	 * @return Zahl.
+	 * @throws NumberFormatException wie Integer.parseInt, auch für leere Zellen.
+	 */
+	public int getIntAt(int row, int col) {
+		String cell = getCellAt(row, col);
+		return CsvNumbers.parseInt(cell, 0, cell != null ? cell.length() : 0);
+	}
+
+	public int getIntAt(int row, String header) {
+		return getIntAt(row, columnWithHeader(header));
+	}
+
+	/**
+	 * Zelleninhalt als long.
+	 * @param row Zeilenindex.
+	 * @param col Spaltenindex.
+	 * @return Zahl.
+	 * @throws NumberFormatException wie Long.parseLong, auch für leere Zellen.
+	 */
+	public long getLongAt(int row, int col) {
+		String cell = getCellAt(row, col);
+		return CsvNumbers.parseLong(cell, 0, cell != null ? cell.length() : 0);
+	}
+
+	public long getLongAt(int row, String header) {
+		return getLongAt(row, columnWithHeader(header));
+	}
+
+	/**
+	 * Zelleninhalt als double.
+	 * @param row Zeilenindex.
+	 * @param col Spaltenindex.
+	 * @return Zahl.
+	 * @throws NumberFormatException wie Double.parseDouble, auch für leere Zellen.
+	 */
+	public double getDoubleAt(int row, int col) {
+		String cell = getCellAt(row, col);
+		if(cell == null) {
+			throw new NumberFormatException("Missing value in row " + row);
+		}
+		return CsvNumbers.parseDouble(cell, 0, cell.length());
+	}
+
+	public double getDoubleAt(int row, String header) {
+		return getDoubleAt(row, columnWithHeader(header));
+	}
+
+	/**
+	 * Zelleninhalt als Wahrheitswert wie Boolean.parseBoolean.
+	 * @param row Zeilenindex.
+	 * @param col Spaltenindex.
+	 * @return true, gdw. Zelle ohne Beachtung der Groß-/Kleinschreibung "true" ist.
+	 */
+	public boolean getBooleanAt(int row, int col) {
+		String cell = getCellAt(row, col);
+		return CsvNumbers.parseBoolean(cell, 0, cell != null ? cell.length() : 0);
+	}
+
+	public boolean getBooleanAt(int row, String header) {
+		return getBooleanAt(row, columnWithHeader(header));
+	}
+
+	/**
+	 * Setze Zelleninhalt für Zelle mit Zeilenindex row in Spalte mit Handle column zu content.
+	 * In-place Modifikation der Daten!
+	 * @param row Zeilenindex.
+	 * @param column Spalten-Handle.
+	 * @param content Neuer Zelleninhalt.
+	 */
+	public void setCellAt(int row, CsvColumnHandle column, String content) {
+		setCellAt(row, resolve(column), content);
 	}
 
 	/**
@@ -158,7 +514,7 @@ public class CsvData {
 	 * @param content Neuer Zelleninhalt.
 	 */
 	public void setCellAt(int row, String header, String content) {
-		rowList.get(row+1)[columnWithHeader(header)] = content;
+		setCellAt(row, columnWithHeader(header), content);
 	}
 
 	/**
@@ -169,7 +525,10 @@ public class CsvData {
 	 * @param content Neuer Zelleninhalt.
 	 */
 	public void setCellAt(int row, int col, String content) {
-		rowList.get(row+1)[col] = content;
+		String[] cells = rowList.get(row+1);
+		String oldContent = cells[col];
+		cells[col] = content;
+		fireCellChanged(row, col, oldContent, content);
 	}
 
 	/**
@@ -178,14 +537,14 @@ public class CsvData {
  	 * @param header Spaltenbezeichner der neuen Spalte.
 	 */
 	public void addColumn(String header) {
-		ITransform<String[], String[]> addColumnToRow = new ITransform<String[], String[]>() {
-			@Override
-			public String[] invoke(String[] row) {
-				return Arrays.copyOf(row, row.length+1);
-			}
-		};
-		rowList = Func.map(addColumnToRow, rowList);
+		List<String[]> widenedRows = new ChunkedList<String[]>();
+		for(String[] row : rowList) {
+			widenedRows.add(Arrays.copyOf(row, row.length+1));
+		}
+		rowList = widenedRows;
 		rowList.get(0)[columnCount()-1] = header;
+		invalidateSchema();
+		fireColumnAdded(columnCount()-1);
 	}
 
 	/**
@@ -214,11 +573,18 @@ public class CsvData {
 
 	/**
 	 * Speicher CSV-Daten in Textdatei.
+	 * Zeilen werden direkt in die Datei geschrieben, ohne vorher den gesamten Text aufzubauen.
+	 * Endet der Dateiname auf ".gz", wird gzip-komprimiert geschrieben.
 	 * @param file Datei in die gespeichert wird.
 	 * @throws Exception
 	 */
 	public void save(File file) throws Exception {
-		FileHelpers.writeStrToFile(toString(), file);
+		CsvWriter writer = new CsvWriter(file);
+		try {
+			writer.writeData(this);
+		} finally {
+			writer.close();
+		}
 	}
 
 	/**
@@ -246,8 +612,17 @@ public class CsvData {
 	 * @throws Exception
 	 */
 	public static <T> List<T> toList(ITransform<String[], T> rowToElem, File f) throws Exception {
-		CsvData data = CsvHelpers.parseCsv(f);
-		return toList(rowToElem, data);
+		List<T> lst = new ArrayList<T>();
+		CsvReader reader = new CsvReader(f);
+		try {
+			String[] row;
+			while((row = reader.readRow()) != null) {
+				lst.add(rowToElem.invoke(row));
+			}
+		} finally {
+			reader.close();
+		}
+		return lst;
 	}
 
 	/**
@@ -259,7 +634,7 @@ public class CsvData {
 	 * @throws Exception
 	 */
 	public static <T> List<T> toList(ITransform<String[], T> rowToElem, CsvData data) throws Exception {
-		List<T> lst = new ArrayList<T>(data.rowCount()-1);
+		List<T> lst = new ArrayList<T>(data.rowCount());
 		for(int row = 0; row<data.rowCount(); row++) {
 			lst.add(rowToElem.invoke(data.getRow(row)));
 		}
@@ -289,15 +664,18 @@ public class CsvData {
 	 * @param row Zeilenindex.
 	 */
 	public void removeRow(int row) {
-		rowList.remove(row + 1);
+		String[] oldRow = rowList.remove(row + 1);
+		fireRowRemoved(row, oldRow);
 	}
 
 	/**
-	 * Füge neue Spalte über gegebenem Index hinzu.
+	 * Füge neue leere Zeile mit gegebenem Zeilenindex ein. Ohne Kopfzeile.
+	 * Bisherige Zeile mit diesem Index und alle folgenden rücken nach hinten.
 	 * @param row Zeilenindex.
 	 */
 	public void addRow(int row) {
 		String[] nrow = new String[columnCount()];
-		rowList.add(row, nrow);
+		rowList.add(row + 1, nrow);
+		fireRowInserted(row);
 	}
 }
@@ -0,0 +1,444 @@
+package org.andreschnabel.pecker.serialization;
+
+import org.andreschnabel.pecker.threading.FutureHelpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Gruppierung von CSV-Daten nach Schlüsselspalten mit beliebig vielen Aggregaten.
+ *
+ * Alle Aggregate werden in einem einzigen Durchlauf über eine Hashtabelle berechnet.
+ * Zeilen werden in Blöcken verarbeitet: je Block werden erst Schlüssel- und Wertspalten gelesen,
+ * dann Gruppen bestimmt und schließlich jedes Aggregat in einer engen Schleife über den Block aktualisiert.
+ * Im parallelen Modus berechnet jeder Thread Teilergebnisse für einen Zeilenbereich, die anschließend
+ * zusammengeführt werden. Die Reihenfolge der Gruppen entspricht stets ihrem ersten Auftreten.
+ *
+ * Leere Zellen werden von sum, avg, min und max ignoriert, count zählt alle Zeilen einer Gruppe.
+ * Nicht leere Zellen in Wertspalten müssen Zahlen sein.
+ *
+ * Beispiel: data.groupBy("Stadt").count().avg("Alter").execute()
+ */
+public class CsvGroupBy {
+
+	/**
+	 * Anzahl gemeinsam verarbeiteter Zeilen.
+	 */
+	public static final int BATCH_SIZE = 1024;
+
+	/**
+	 * Mindestanzahl Zeilen je Thread im parallelen Modus.
+	 */
+	public static final int MIN_ROWS_PER_THREAD = 1 << 14;
+
+	private static enum Kind {
+		COUNT, SUM, AVG, MIN, MAX
+	}
+
+	private static class Aggregate {
+		private final Kind kind;
+		private final String name;
+		private final int valueSlot;
+
+		private Aggregate(Kind kind, String name, int valueSlot) {
+			this.kind = kind;
+			this.name = name;
+			this.valueSlot = valueSlot;
+		}
+	}
+
+	private final CsvData data;
+	private final String[] keyHeaders;
+	private final int[] keyCols;
+	private final List<Aggregate> aggregates = new ArrayList<Aggregate>();
+
+	/**
+	 * Spaltenindizes der Wertspalten. Jede Spalte wird je Block nur einmal gelesen, auch wenn mehrere Aggregate sie nutzen.
+	 */
+	private int[] valueCols = new int[0];
+
+	/**
+	 * Konstruktor
+	 * @param data CSV-Daten.
+	 * @param keyHeaders Bezeichner der Schlüsselspalten.
+	 */
+	public CsvGroupBy(CsvData data, String... keyHeaders) {
+		this.data = data;
+		this.keyHeaders = keyHeaders.clone();
+		this.keyCols = new int[keyHeaders.length];
+		for(int k = 0; k < keyHeaders.length; k++) {
+			keyCols[k] = data.column(keyHeaders[k]).index();
+		}
+	}
+
+	/**
+	 * Anzahl der Zeilen je Gruppe. Ergebnisspalte "count".
+	 * @return diese Gruppierung.
+	 */
+	public CsvGroupBy count() {
+		aggregates.add(new Aggregate(Kind.COUNT, "count", -1));
+		return this;
+	}
+
+	/**
+	 * Summe einer Spalte je Gruppe. Ergebnisspalte "sum(header)".
+	 * @param header Spaltenbezeichner.
+	 * @return diese Gruppierung.
+	 */
+	public CsvGroupBy sum(String header) {
+		return add(Kind.SUM, "sum", header);
+	}
+
+	/**
+	 * Mittelwert einer Spalte je Gruppe. Ergebnisspalte "avg(header)".
+	 * @param header Spaltenbezeichner.
+	 * @return diese Gruppierung.
+	 */
+	public CsvGroupBy avg(String header) {
+		return add(Kind.AVG, "avg", header);
+	}
+
+	/**
+	 * Minimum einer Spalte je Gruppe. Ergebnisspalte "min(header)".
+	 * @param header Spaltenbezeichner.
+	 * @return diese Gruppierung.
+	 */
+	public CsvGroupBy min(String header) {
+		return add(Kind.MIN, "min", header);
+	}
+
+	/**
+	 * Maximum einer Spalte je Gruppe. Ergebnisspalte "max(header)".
+	 * @param header Spaltenbezeichner.
+	 * @return diese Gruppierung.
+	 */
+	public CsvGroupBy max(String header) {
+		return add(Kind.MAX, "max", header);
+	}
+
+	private CsvGroupBy add(Kind kind, String fn, String header) {
+		int col = data.column(header).index();
+		int slot = 0;
+		while(slot < valueCols.length && valueCols[slot] != col) {
+			slot++;
+		}
+		if(slot == valueCols.length) {
+			valueCols = Arrays.copyOf(valueCols, slot + 1);
+			valueCols[slot] = col;
+		}
+		aggregates.add(new Aggregate(kind, fn + "(" + header + ")", slot));
+		return this;
+	}
+
+	/**
+	 * Berechne Gruppen und Aggregate in einem Thread.
+	 * @return CSV-Daten mit Schlüsselspalten gefolgt von einer Spalte je Aggregat. Eine Zeile je Gruppe.
+	 */
+	public CsvData execute() {
+		return toCsvData(aggregate(0, data.rowCount()));
+	}
+
+	/**
+	 * Berechne Gruppen und Aggregate parallel. Die Daten dürfen währenddessen nicht verändert werden.
+	 * @param numThreads Anzahl der Threads.
+	 * @return CSV-Daten wie bei execute.
+	 * @throws Exception Fehler in einem Thread, z.B. nicht numerischer Wert.
+	 */
+	public CsvData executeParallel(int numThreads) throws Exception {
+		final int numRows = data.rowCount();
+		int numParts = Math.max(1, Math.min(numThreads, numRows / MIN_ROWS_PER_THREAD));
+		if(numParts == 1) {
+			return execute();
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(numParts);
+		try {
+			List<Future<GroupTable>> futures = new ArrayList<Future<GroupTable>>(numParts);
+			for(int p = 0; p < numParts; p++) {
+				final int from = (int)((long)numRows * p / numParts);
+				final int to = (int)((long)numRows * (p + 1) / numParts);
+				futures.add(pool.submit(new Callable<GroupTable>() {
+					@Override
+					public GroupTable call() {
+						return aggregate(from, to);
+					}
+				}));
+			}
+			GroupTable result = FutureHelpers.getUnwrapped(futures.get(0));
+			for(int p = 1; p < numParts; p++) {
+				result.merge(FutureHelpers.getUnwrapped(futures.get(p)));
+			}
+			return toCsvData(result);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private GroupTable aggregate(int from, int to) {
+		GroupTable table = new GroupTable();
+		int batch = Math.min(BATCH_SIZE, Math.max(1, to - from));
+		String[][] keyBatch = new String[keyCols.length][batch];
+		double[][] valueBatch = new double[valueCols.length][batch];
+		boolean[][] presentBatch = new boolean[valueCols.length][batch];
+		int[] groupIds = new int[batch];
+
+		for(int start = from; start < to; start += batch) {
+			int len = Math.min(batch, to - start);
+
+			for(int k = 0; k < keyCols.length; k++) {
+				String[] cells = keyBatch[k];
+				for(int i = 0; i < len; i++) {
+					cells[i] = data.getCellAt(start + i, keyCols[k]);
+				}
+			}
+			for(int v = 0; v < valueCols.length; v++) {
+				readValues(valueCols[v], start, len, valueBatch[v], presentBatch[v]);
+			}
+
+			for(int i = 0; i < len; i++) {
+				groupIds[i] = table.findOrAdd(keyBatch, i);
+			}
+
+			for(int i = 0; i < len; i++) {
+				table.counts[groupIds[i]]++;
+			}
+			for(int v = 0; v < valueCols.length; v++) {
+				table.accumulate(v, groupIds, valueBatch[v], presentBatch[v], len);
+			}
+		}
+		return table;
+	}
+
+	private void readValues(int col, int start, int len, double[] values, boolean[] present) {
+		CsvColumn typed = null;
+		if(data instanceof ColumnarCsvData) {
+			CsvColumn column = ((ColumnarCsvData)data).getTypedColumn(col);
+			CsvColumn.Type type = column.getType();
+			if(type == CsvColumn.Type.INT || type == CsvColumn.Type.LONG || type == CsvColumn.Type.DOUBLE) {
+				typed = column;
+			}
+		}
+
+		SnapshotCsvData snapshot = null;
+		if(data instanceof SnapshotCsvData) {
+			CsvColumn.Type type = ((SnapshotCsvData)data).getColumnType(col);
+			if(type == CsvColumn.Type.INT || type == CsvColumn.Type.LONG || type == CsvColumn.Type.DOUBLE) {
+				snapshot = (SnapshotCsvData)data;
+			}
+		}
+
+		for(int i = 0; i < len; i++) {
+			int row = start + i;
+			if(typed != null) {
+				present[i] = !typed.isMissing(row);
+				values[i] = present[i] ? typed.getDouble(row) : 0;
+			} else if(snapshot != null) {
+				present[i] = !snapshot.isMissing(row, col);
+				values[i] = present[i] ? snapshot.getDoubleAt(row, col) : 0;
+			} else {
+				String cell = data.getCellAt(row, col);
+				present[i] = cell != null && cell.length() > 0;
+				values[i] = present[i] ? CsvNumbers.parseDouble(cell, 0, cell.length()) : 0;
+			}
+		}
+	}
+
+	private CsvData toCsvData(GroupTable table) {
+		String[] headers = Arrays.copyOf(keyHeaders, keyHeaders.length + aggregates.size());
+		for(int a = 0; a < aggregates.size(); a++) {
+			headers[keyHeaders.length + a] = aggregates.get(a).name;
+		}
+
+		List<String[]> rows = new ArrayList<String[]>(table.size + 1);
+		rows.add(headers);
+		for(int g = 0; g < table.size; g++) {
+			String[] row = Arrays.copyOf(table.keys[g], headers.length);
+			for(int a = 0; a < aggregates.size(); a++) {
+				Aggregate agg = aggregates.get(a);
+				row[keyHeaders.length + a] = (agg.kind == Kind.COUNT) ? Long.toString(table.counts[g]) : table.result(agg, g);
+			}
+			rows.add(row);
+		}
+		CsvData result = new CsvData(rows);
+		result.title = data.title;
+		return result;
+	}
+
+	private static String formatNumber(double value) {
+		if(value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long)value);
+		}
+		return Double.toString(value);
+	}
+
+	/**
+	 * Hashtabelle mit offener Adressierung von Schlüssel zu Gruppennummer und spaltenweise gespeicherten Akkumulatoren.
+	 * Gruppennummern werden in Reihenfolge des ersten Auftretens vergeben.
+	 */
+	private class GroupTable {
+		private int[] slots = new int[64];
+		private int size;
+		private String[][] keys = new String[16][];
+		private int[] hashes = new int[16];
+		private long[] counts = new long[16];
+
+		/**
+		 * Je Wertspalte: Summe, Minimum, Maximum und Anzahl nicht leerer Werte je Gruppe.
+		 */
+		private final double[][] sums = new double[valueCols.length][16];
+		private final double[][] mins = new double[valueCols.length][16];
+		private final double[][] maxs = new double[valueCols.length][16];
+		private final long[][] valueCounts = new long[valueCols.length][16];
+
+		private int findOrAdd(String[][] keyBatch, int i) {
+			int h = 0;
+			for(String[] cells : keyBatch) {
+				String cell = cells[i];
+				h = 31 * h + (cell != null ? cell.hashCode() : 0);
+			}
+			h ^= h >>> 16;
+
+			int mask = slots.length - 1;
+			int idx = h & mask;
+			int slot;
+			while((slot = slots[idx]) != 0) {
+				int g = slot - 1;
+				if(hashes[g] == h && matches(keys[g], keyBatch, i)) {
+					return g;
+				}
+				idx = (idx + 1) & mask;
+			}
+
+			String[] key = new String[keyBatch.length];
+			for(int k = 0; k < key.length; k++) {
+				key[k] = keyBatch[k][i];
+			}
+			return add(idx, key, h);
+		}
+
+		private int findOrAdd(String[] key, int h) {
+			int mask = slots.length - 1;
+			int idx = h & mask;
+			int slot;
+			while((slot = slots[idx]) != 0) {
+				int g = slot - 1;
+				if(hashes[g] == h && Arrays.equals(keys[g], key)) {
+					return g;
+				}
+				idx = (idx + 1) & mask;
+			}
+			return add(idx, key, h);
+		}
+
+		private boolean matches(String[] key, String[][] keyBatch, int i) {
+			for(int k = 0; k < key.length; k++) {
+				String a = key[k];
+				String b = keyBatch[k][i];
+				if(a == null ? b != null : !a.equals(b)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private int add(int idx, String[] key, int h) {
+			int g = size++;
+			if(g == keys.length) {
+				grow();
+			}
+			keys[g] = key;
+			hashes[g] = h;
+			for(int v = 0; v < valueCols.length; v++) {
+				mins[v][g] = Double.POSITIVE_INFINITY;
+				maxs[v][g] = Double.NEGATIVE_INFINITY;
+			}
+			slots[idx] = g + 1;
+			if(size * 2 > slots.length) {
+				rehash();
+			}
+			return g;
+		}
+
+		private void accumulate(int v, int[] groupIds, double[] values, boolean[] present, int len) {
+			double[] sum = sums[v], min = mins[v], max = maxs[v];
+			long[] n = valueCounts[v];
+			for(int i = 0; i < len; i++) {
+				if(present[i]) {
+					int g = groupIds[i];
+					double x = values[i];
+					sum[g] += x;
+					n[g]++;
+					if(x < min[g]) {
+						min[g] = x;
+					}
+					if(x > max[g]) {
+						max[g] = x;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Führe Teilergebnis eines späteren Zeilenbereichs in diese Tabelle zusammen.
+		 */
+		private void merge(GroupTable other) {
+			for(int og = 0; og < other.size; og++) {
+				int g = findOrAdd(other.keys[og], other.hashes[og]);
+				counts[g] += other.counts[og];
+				for(int v = 0; v < valueCols.length; v++) {
+					sums[v][g] += other.sums[v][og];
+					valueCounts[v][g] += other.valueCounts[v][og];
+					mins[v][g] = Math.min(mins[v][g], other.mins[v][og]);
+					maxs[v][g] = Math.max(maxs[v][g], other.maxs[v][og]);
+				}
+			}
+		}
+
+		private String result(Aggregate agg, int g) {
+			int v = agg.valueSlot;
+			long n = valueCounts[v][g];
+			switch(agg.kind) {
+				case SUM:
+					return formatNumber(sums[v][g]);
+				case AVG:
+					return n > 0 ? Double.toString(sums[v][g] / n) : null;
+				case MIN:
+					return n > 0 ? formatNumber(mins[v][g]) : null;
+				case MAX:
+					return n > 0 ? formatNumber(maxs[v][g]) : null;
+				default:
+					throw new IllegalStateException("Unknown aggregate " + agg.kind);
+			}
+		}
+
+		private void grow() {
+			int ncap = keys.length * 2;
+			keys = Arrays.copyOf(keys, ncap);
+			hashes = Arrays.copyOf(hashes, ncap);
+			counts = Arrays.copyOf(counts, ncap);
+			for(int v = 0; v < valueCols.length; v++) {
+				sums[v] = Arrays.copyOf(sums[v], ncap);
+				mins[v] = Arrays.copyOf(mins[v], ncap);
+				maxs[v] = Arrays.copyOf(maxs[v], ncap);
+				valueCounts[v] = Arrays.copyOf(valueCounts[v], ncap);
+			}
+		}
+
+		private void rehash() {
+			slots = new int[slots.length * 2];
+			int mask = slots.length - 1;
+			for(int g = 0; g < size; g++) {
+				int idx = hashes[g] & mask;
+				while(slots[idx] != 0) {
+					idx = (idx + 1) & mask;
+				}
+				slots[idx] = g + 1;
+			}
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package org.andreschnabel.pecker.serialization;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hashindex für Gleichheitssuche auf einer Spalte. Suche in O(1) statt Durchlauf aller Zeilen.
+ */
+public class CsvHashIndex extends CsvIndex {
+
+	private static final int[] NO_ROWS = new int[0];
+
+	private final Map<String, RowList> rowsByKey = new HashMap<String, RowList>();
+
+	/**
+	 * Konstruktor
+	 *
+	 * Baut Index sofort auf und hält ihn aktuell bis close.
+	 *
+	 * @param data indizierte CSV-Daten.
+	 * @param col Spaltenindex.
+	 */
+	public CsvHashIndex(CsvData data, int col) {
+		super(data, col);
+		attach();
+	}
+
+	/**
+	 * Zeilen mit Zelleninhalt key.
+	 * @param key Zelleninhalt.
+	 * @return aufsteigende Zeilenindizes.
+	 */
+	public int[] rows(String key) {
+		RowList lst = rowsByKey.get(key);
+		return lst != null ? Arrays.copyOf(lst.rows, lst.size) : NO_ROWS;
+	}
+
+	/**
+	 * Erste Zeile mit Zelleninhalt key.
+	 * @param key Zelleninhalt.
+	 * @return Zeilenindex oder -1, falls keine Zeile key enthält.
+	 */
+	public int firstRow(String key) {
+		RowList lst = rowsByKey.get(key);
+		return lst != null ? lst.rows[0] : -1;
+	}
+
+	/**
+	 * @param key Zelleninhalt.
+	 * @return Anzahl der Zeilen mit Zelleninhalt key.
+	 */
+	public int count(String key) {
+		RowList lst = rowsByKey.get(key);
+		return lst != null ? lst.size : 0;
+	}
+
+	/**
+	 * @return verschiedene Zelleninhalte der Spalte.
+	 */
+	public Set<String> keys() {
+		return rowsByKey.keySet();
+	}
+
+	@Override
+	protected void build() {
+		for(int row = 0; row < data.rowCount(); row++) {
+			add(data.getCellAt(row, col), row);
+		}
+	}
+
+	@Override
+	protected void add(String key, int row) {
+		RowList lst = rowsByKey.get(key);
+		if(lst == null) {
+			lst = new RowList();
+			rowsByKey.put(key, lst);
+		}
+		lst.add(row);
+	}
+
+	@Override
+	protected void remove(String key, int row) {
+		RowList lst = rowsByKey.get(key);
+		if(lst != null && lst.remove(row) && lst.size == 0) {
+			rowsByKey.remove(key);
+		}
+	}
+
+	@Override
+	protected void shift(int fromRow, int delta) {
+		for(RowList lst : rowsByKey.values()) {
+			lst.shift(fromRow, delta);
+		}
+	}
+
+	/**
+	 * Aufsteigend sortierte Zeilenindizes für einen Schlüssel.
+	 */
+	private static class RowList {
+		private int[] rows = new int[1];
+		private int size;
+
+		private void add(int row) {
+			if(size == rows.length) {
+				rows = Arrays.copyOf(rows, size * 2);
+			}
+			if(size == 0 || rows[size - 1] < row) {
+				rows[size++] = row;
+				return;
+			}
+			int pos = Arrays.binarySearch(rows, 0, size, row);
+			if(pos >= 0) {
+				return;
+			}
+			pos = -pos - 1;
+			System.arraycopy(rows, pos, rows, pos + 1, size - pos);
+			rows[pos] = row;
+			size++;
+		}
+
+		private boolean remove(int row) {
+			int pos = Arrays.binarySearch(rows, 0, size, row);
+			if(pos < 0) {
+				return false;
+			}
+			System.arraycopy(rows, pos + 1, rows, pos, size - pos - 1);
+			size--;
+			return true;
+		}
+
+		private void shift(int fromRow, int delta) {
+			for(int i = size - 1; i >= 0 && rows[i] >= fromRow; i--) {
+				rows[i] += delta;
+			}
+		}
+	}
+}
@@ -1,10 +1,23 @@
 package org.andreschnabel.pecker.serialization;
 
-import org.andreschnabel.pecker.helpers.FileHelpers;
+import org.andreschnabel.pecker.collections.ChunkedList;
+import org.andreschnabel.pecker.functional.IPredicate;
 
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.util.LinkedList;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Parse GoogleDocs CSV results.
@@ -13,16 +26,38 @@ import java.util.List;
  */
 public class CsvHelpers {
 
+	/**
+	 * Anfangsgröße des Lesepuffers für Kopfzeile und Vorschau. Wächst bei längeren Zeilen.
+	 */
+	private static final int HEADER_BUFFER_SIZE = 1 << 12;
+
+	/**
+	 * Größte sicher allozierbare Arraylänge.
+	 */
+	private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
 	/**
 	 * Zähle Anzahl der Spalten in CSV-Textzeile.
 	 * @param line CSV-Textzeile.
 	 * @return Spaltenzahl.
 	 */
 	public static int countColumns(String line) {
+		return countColumns(line, 0, line.length());
+	}
+
+	/**
+	 * Zähle Anzahl der Spalten in Abschnitt einer CSV-Textzeile.
+	 * @param line Zeichenfolge, welche die CSV-Textzeile enthält.
+	 * @param from Startindex der Zeile. Inklusive.
+	 * @param to Endindex der Zeile. Exklusive.
+	 * @return Spaltenzahl.
+	 */
+	public static int countColumns(CharSequence line, int from, int to) {
 		int numColums = 1;
 		boolean escaped = false;
-		for(int i=0; i<line.length(); i++) {
+		for(int i=from; i<to; i++) {
 			char c = line.charAt(i);
+			if(c > ',') continue;
 			switch(c) {
 			case ',':
 				if(!escaped) numColums++;
@@ -44,6 +79,46 @@ public class CsvHelpers {
 		return content.contains("\n") ? content.substring(0, content.indexOf("\n")) : content;
 	}
 
+	/**
+	 * Öffne CSV-Datei zum Lesen. gzip-komprimierte Dateien werden am Dateianfang erkannt
+	 * und beim Lesen entpackt, Blöcke von BlockGzipOutputStream parallel.
+	 * @param file CSV-Datei, unkomprimiert oder gzip.
+	 * @return Reader für den CSV-Text.
+	 * @throws Exception Lesefehler.
+	 */
+	public static Reader openReader(File file) throws Exception {
+		return openReader(file, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Öffne CSV-Datei zum Lesen. gzip-komprimierte Dateien werden am Dateianfang erkannt und beim Lesen entpackt.
+	 * @param file CSV-Datei, unkomprimiert oder gzip.
+	 * @param numThreads Anzahl der Threads zum Entpacken. Bei 1 wird im aufrufenden Thread entpackt.
+	 * @return Reader für den CSV-Text.
+	 * @throws Exception Lesefehler.
+	 */
+	public static Reader openReader(File file, int numThreads) throws Exception {
+		InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+		in.mark(2);
+		boolean gzip = in.read() == 0x1f && in.read() == 0x8b;
+		in.reset();
+		return new InputStreamReader(gzip ? new BlockGzipInputStream(in, numThreads) : in);
+	}
+
+	/**
+	 * Öffne CSV-Datei zum Schreiben. Endet der Dateiname auf ".gz", wird blockweise parallel komprimiert
+	 * (siehe BlockGzipOutputStream), ohne dass der unkomprimierte Text auf die Platte gelangt.
+	 * @param file Zieldatei. Wird überschrieben.
+	 * @return Writer für den CSV-Text.
+	 * @throws Exception Schreibfehler.
+	 */
+	public static Writer openWriter(File file) throws Exception {
+		if(file.getName().endsWith(".gz")) {
+			return new OutputStreamWriter(new BlockGzipOutputStream(new FileOutputStream(file)));
+		}
+		return new FileWriter(file);
+	}
+
 	/**
 	 * Parse CSV-Daten aus CSV-Text.
 	 * @param content CSV-Text.
@@ -51,67 +126,243 @@ public class CsvHelpers {
 	 * @throws Exception
 	 */
 	public static CsvData parseCsv(String content) throws Exception {
-		if(!content.endsWith("\n"))
-			content += "\n";
-		
-		List<String[]> rows = new LinkedList<String[]>();	
-		int numColumns = countColumns(headerLine(content));
-		
-		String[] curRow = new String[numColumns];
-		int curColumn = 0;
-		
-		StringBuffer buf = new StringBuffer();
-		
-		boolean escaped = false;
+		return parseCsv(new StringReader(content));
+	}
 
-		int curLineNum = 0;
-		
-		for(int i=0; i<content.length(); i++) {			
-			char c = content.charAt(i);
-			
-			if(c == '"') {
-				escaped = !escaped;
-			}
-			
-			switch(c) {
-			case '\n':
-				curLineNum++;
-				if(curColumn == numColumns-1) {					
-					curRow[curColumn++] = buf.toString();
-					buf = new StringBuffer();
-					rows.add(curRow);
-					curRow = new String[numColumns];
-					curColumn = 0;
-				}
-				break;
-				
-			case ',':
-				if(!escaped) {
-					if(curColumn == numColumns) {
-						throw new Exception("Line malformed with too many columns: " + content.split("\n")[curLineNum]);
-					}
-					curRow[curColumn++] = buf.toString();
-					buf = new StringBuffer();
-				}
-				break;
-				
-			default:
-				buf.append(c);
-				break;
+	/**
+	 * Parse CSV-Daten aus Reader. Reader wird danach geschlossen.
+	 * @param reader Quelle für CSV-Text.
+	 * @return CSV-Daten.
+	 * @throws Exception
+	 */
+	public static CsvData parseCsv(Reader reader) throws Exception {
+		return parseCsv(reader, null);
+	}
+
+	/**
+	 * Parse CSV-Daten aus Reader. Reader wird danach geschlossen.
+	 * Gleiche Zelleninhalte einer Spalte teilen sich eine Instanz aus dem Pool.
+	 * @param reader Quelle für CSV-Text.
+	 * @param stringPool Pool für Zelleninhalte oder null.
+	 * @return CSV-Daten.
+	 * @throws Exception
+	 */
+	public static CsvData parseCsv(Reader reader, CsvStringPool stringPool) throws Exception {
+		List<String[]> rows = new ChunkedList<String[]>();
+		CsvReader csvReader = new CsvReader(reader);
+		csvReader.setStringPool(stringPool);
+		try {
+			rows.add(csvReader.getHeaders());
+			String[] row;
+			while((row = csvReader.readRow()) != null) {
+				rows.add(row);
 			}
+		} finally {
+			csvReader.close();
 		}
-		
 		return new CsvData(rows);
 	}
 
 	/**
 	 * Parse CSV-Daten aus CSV-Datei.
+	 * Datei wird gestreamt und nicht vorab vollständig in eine Zeichenkette gelesen.
+	 * gzip-komprimierte Dateien werden beim Lesen entpackt.
 	 * @param file CSV-Datei.
 	 * @return CSV-Daten.
 	 * @throws Exception
 	 */
 	public static CsvData parseCsv(File file) throws Exception {
-		return parseCsv(FileHelpers.readEntireFile(file));
+		return parseCsv(openReader(file));
+	}
+
+	/**
+	 * Parse CSV-Daten aus CSV-Datei mit CsvPipeline: ein Thread liest die nächsten Blöcke der Datei,
+	 * während ein anderer den aktuellen Block parst. Lohnt bei langsamen Datenträgern oder gzip-Dateien.
+	 * Ergebnis ist identisch mit parseCsv.
+	 * @param file CSV-Datei, unkomprimiert oder gzip.
+	 * @return CSV-Daten.
+	 * @throws Exception
+	 */
+	public static CsvData parseCsvPipelined(File file) throws Exception {
+		return new CsvPipeline(file).toCsvData();
+	}
+
+	/**
+	 * Parse CSV-Daten aus CSV-Datei mit Pool für Zelleninhalte.
+	 * Spart viel Speicher bei Spalten mit wenigen verschiedenen Werten.
+	 * @param file CSV-Datei.
+	 * @param stringPool Pool für Zelleninhalte. Enthält danach Statistiken über Wörterbuchgrößen und Einsparung.
+	 * @return CSV-Daten.
+	 * @throws Exception
+	 */
+	public static CsvData parseCsv(File file, CsvStringPool stringPool) throws Exception {
+		return parseCsv(openReader(file), stringPool);
+	}
+
+	/**
+	 * Parse nur ausgewählte Spalten aus Reader. Reader wird danach geschlossen.
+	 * Zellen anderer Spalten werden übersprungen, ohne Zeichenketten zu erzeugen.
+	 * @param reader Quelle für CSV-Text.
+	 * @param columns Bezeichner der gewünschten Spalten. Bestimmen Reihenfolge der Spalten im Ergebnis.
+	 * @return CSV-Daten mit den gewünschten Spalten.
+	 * @throws Exception Lese- oder Formatfehler oder unbekannte Spalte.
+	 */
+	public static CsvData parseCsvColumns(Reader reader, String... columns) throws Exception {
+		List<String[]> rows = new ChunkedList<String[]>();
+		CsvReader csvReader = new CsvReader(reader);
+		try {
+			csvReader.selectColumns(columns);
+			rows.add(csvReader.getHeaders());
+			String[] row;
+			while((row = csvReader.readRow()) != null) {
+				rows.add(row);
+			}
+		} finally {
+			csvReader.close();
+		}
+		return new CsvData(rows);
+	}
+
+	/**
+	 * Parse nur ausgewählte Spalten aus CSV-Datei.
+	 * @param file CSV-Datei, unkomprimiert oder gzip.
+	 * @param columns Bezeichner der gewünschten Spalten. Bestimmen Reihenfolge der Spalten im Ergebnis.
+	 * @return CSV-Daten mit den gewünschten Spalten.
+	 * @throws Exception Lese- oder Formatfehler oder unbekannte Spalte.
+	 */
+	public static CsvData parseCsvColumns(File file, String... columns) throws Exception {
+		return parseCsvColumns(openReader(file), columns);
+	}
+
+	/**
+	 * Parse nur Zeilen, deren Zellen die Prädikate ihrer Spalte erfüllen. Reader wird danach geschlossen.
+	 * Verworfene Zeilen werden nicht vollständig materialisiert. Ergebnis entspricht dem Filtern von parseCsv.
+	 * @param reader Quelle für CSV-Text.
+	 * @param columnPredicates Prädikat je Spaltenbezeichner.
+	 * @return CSV-Daten mit den passenden Zeilen.
+	 * @throws Exception Lese- oder Formatfehler oder unbekannte Spalte.
+	 */
+	public static CsvData parseCsvWhere(Reader reader, Map<String, IPredicate<String>> columnPredicates) throws Exception {
+		List<String[]> rows = new ChunkedList<String[]>();
+		CsvReader csvReader = new CsvReader(reader);
+		try {
+			for(Map.Entry<String, IPredicate<String>> entry : columnPredicates.entrySet()) {
+				csvReader.filterColumn(entry.getKey(), entry.getValue());
+			}
+			rows.add(csvReader.getHeaders());
+			String[] row;
+			while((row = csvReader.readRow()) != null) {
+				rows.add(row);
+			}
+		} finally {
+			csvReader.close();
+		}
+		return new CsvData(rows);
+	}
+
+	/**
+	 * Parse nur Zeilen einer CSV-Datei, deren Zellen die Prädikate ihrer Spalte erfüllen.
+	 * @param file CSV-Datei, unkomprimiert oder gzip.
+	 * @param columnPredicates Prädikat je Spaltenbezeichner.
+	 * @return CSV-Daten mit den passenden Zeilen.
+	 * @throws Exception Lese- oder Formatfehler oder unbekannte Spalte.
+	 */
+	public static CsvData parseCsvWhere(File file, Map<String, IPredicate<String>> columnPredicates) throws Exception {
+		return parseCsvWhere(openReader(file), columnPredicates);
+	}
+
+	/**
+	 * Lies nur die Kopfzeile einer CSV-Datei, z.B. zur Prüfung der Spalten vor dem vollständigen Laden.
+	 * Liest unabhängig von der Dateigröße nur den Anfang der Datei.
+	 * @param file CSV-Datei, unkomprimiert oder gzip.
+	 * @return Spaltenbezeichner.
+	 * @throws Exception Lese- oder Formatfehler.
+	 */
+	public static String[] readHeaders(File file) throws Exception {
+		CsvReader reader = new CsvReader(openReader(file, 1), HEADER_BUFFER_SIZE);
+		try {
+			return reader.getHeaders();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Parse Kopfzeile und höchstens maxRows erste Inhaltszeilen einer CSV-Datei als Vorschau.
+	 * Der Rest der Datei wird nicht gelesen, vollständig lädt dann parseCsv.
+	 * @param file CSV-Datei, unkomprimiert oder gzip.
+	 * @param maxRows Höchstzahl der Inhaltszeilen.
+	 * @return CSV-Daten mit den ersten Zeilen.
+	 * @throws Exception Lese- oder Formatfehler.
+	 */
+	public static CsvData parseCsvSample(File file, int maxRows) throws Exception {
+		List<String[]> rows = new ArrayList<String[]>();
+		CsvReader reader = new CsvReader(openReader(file, 1), HEADER_BUFFER_SIZE);
+		try {
+			rows.add(reader.getHeaders());
+			String[] row;
+			while(rows.size() <= maxRows && (row = reader.readRow()) != null) {
+				rows.add(row);
+			}
+		} finally {
+			reader.close();
+		}
+		return new CsvData(rows);
+	}
+
+	/**
+	 * Parse CSV-Daten aus CSV-Text parallel mit einem Thread je Prozessorkern.
+	 * Ergebnis ist identisch mit parseCsv.
+	 * @param content CSV-Text.
+	 * @return CSV-Daten.
+	 * @throws Exception
+	 */
+	public static CsvData parseCsvParallel(String content) throws Exception {
+		return parseCsvParallel(content, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Parse CSV-Daten aus CSV-Text parallel.
+	 * Ergebnis ist identisch mit parseCsv.
+	 * @param content CSV-Text.
+	 * @param numThreads Anzahl der Threads.
+	 * @return CSV-Daten.
+	 * @throws Exception
+	 */
+	public static CsvData parseCsvParallel(String content, int numThreads) throws Exception {
+		char[] text = content.toCharArray();
+		return new CsvData(new ParallelCsvParser(text, text.length, numThreads).parse());
+	}
+
+	/**
+	 * Parse CSV-Daten aus CSV-Datei parallel mit einem Thread je Prozessorkern.
+	 * Datei wird vollständig in den Speicher gelesen.
+	 * @param file CSV-Datei.
+	 * @return CSV-Daten.
+	 * @throws Exception Lese- oder Formatfehler oder falls der Text nicht in ein Array passt.
+	 */
+	public static CsvData parseCsvParallel(File file) throws Exception {
+		char[] text = new char[(int)Math.min(MAX_ARRAY_LENGTH, file.length() + 1)];
+		int length = 0;
+		Reader reader = openReader(file);
+		try {
+			int n;
+			while((n = reader.read(text, length, text.length - length)) >= 0) {
+				length += n;
+				if(length == text.length) {
+					if(length == MAX_ARRAY_LENGTH) {
+						if(reader.read() < 0) {
+							break;
+						}
+						throw new Exception("File too large for in-memory parallel parse: " + file.getPath());
+					}
+					text = Arrays.copyOf(text, (int)Math.min(MAX_ARRAY_LENGTH, 2L * text.length));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return new CsvData(new ParallelCsvParser(text, length, Runtime.getRuntime().availableProcessors()).parse());
 	}
 
 	/**
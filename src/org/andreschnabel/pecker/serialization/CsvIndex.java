@@ -0,0 +1,87 @@
+package org.andreschnabel.pecker.serialization;
+
+/**
+ * Sekundärindex über eine Spalte von CSV-Daten.
+ *
+ * Beobachtet die Daten und bleibt bei setCellAt, addRow und removeRow konsistent.
+ * Einfügen und Entfernen von Zeilen verschiebt die Zeilenindizes aller folgenden Einträge
+ * und kostet daher Zeit linear in der Indexgröße, ohne jedoch Zellen neu zu lesen.
+ */
+public abstract class CsvIndex implements ICsvDataListener {
+	protected final CsvData data;
+	protected final int col;
+
+	/**
+	 * Konstruktor
+	 * @param data indizierte CSV-Daten.
+	 * @param col Spaltenindex.
+	 */
+	protected CsvIndex(CsvData data, int col) {
+		if(col < 0 || col >= data.columnCount()) {
+			throw new IllegalArgumentException("No column with index " + col);
+		}
+		this.data = data;
+		this.col = col;
+	}
+
+	/**
+	 * Baue Index aus aktuellen Daten auf und melde ihn als Beobachter an.
+	 */
+	protected void attach() {
+		build();
+		data.addListener(this);
+	}
+
+	/**
+	 * Melde Index ab. Danach wird er nicht mehr aktualisiert.
+	 */
+	public void close() {
+		data.removeListener(this);
+	}
+
+	/**
+	 * @return indizierter Spaltenindex.
+	 */
+	public int getColumn() {
+		return col;
+	}
+
+	/**
+	 * Fülle Index mit allen Zeilen der Daten.
+	 */
+	protected abstract void build();
+
+	protected abstract void add(String key, int row);
+
+	protected abstract void remove(String key, int row);
+
+	/**
+	 * Verschiebe alle Zeilenindizes ab fromRow um delta.
+	 */
+	protected abstract void shift(int fromRow, int delta);
+
+	@Override
+	public void cellChanged(CsvData data, int row, int col, String oldContent, String newContent) {
+		if(col == this.col) {
+			remove(oldContent, row);
+			add(newContent, row);
+		}
+	}
+
+	@Override
+	public void rowInserted(CsvData data, int row) {
+		shift(row, 1);
+		add(data.getCellAt(row, col), row);
+	}
+
+	@Override
+	public void rowRemoved(CsvData data, int row, String[] oldRow) {
+		remove(oldRow[col], row);
+		shift(row + 1, -1);
+	}
+
+	@Override
+	public void columnAdded(CsvData data, int col) {
+		// Neue Spalten werden rechts angehängt, Spaltenindex bleibt gültig.
+	}
+}
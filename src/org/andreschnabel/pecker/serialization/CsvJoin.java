@@ -0,0 +1,477 @@
+package org.andreschnabel.pecker.serialization;
+
+import org.andreschnabel.pecker.threading.FutureHelpers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Hash-Join zweier CSV-Daten über je eine Schlüsselspalte.
+ *
+ * Die Hashtabelle wird über die kleinere Seite gebaut, die größere wird durchlaufen.
+ * Optional werden beide Seiten nach Schlüssel partitioniert und die Partitionen parallel verarbeitet.
+ * Überschreitet die geschätzte Größe der Hashtabelle das Speicherbudget, werden Schlüssel und
+ * Zeilenindizes partitionsweise in temporäre Dateien ausgelagert und die Partitionen nacheinander verbunden.
+ *
+ * Das Ergebnis enthält die Spalten der linken Seite gefolgt von denen der rechten ohne deren Schlüsselspalte.
+ * Rechte Spaltenbezeichner, die links bereits vorkommen, erhalten die Endung "_right", wiederholt bis der Bezeichner eindeutig ist.
+ * Zeilen sind nach linkem und dann rechtem Zeilenindex geordnet. Leere Schlüssel (null) passen zu nichts.
+ *
+ * Beispiel: new CsvJoin(personen, "id", adressen, "personId").type(CsvJoin.Type.LEFT).execute()
+ */
+public class CsvJoin {
+
+	/**
+	 * Art des Joins.
+	 */
+	public static enum Type {
+		/**
+		 * Nur Zeilenpaare mit gleichem Schlüssel.
+		 */
+		INNER,
+
+		/**
+		 * Zusätzlich jede linke Zeile ohne Partner, rechte Zellen bleiben leer (null).
+		 */
+		LEFT
+	}
+
+	/**
+	 * Geschätzter Speicherbedarf eines Eintrags der Hashtabelle ohne Zeichen des Schlüssels in Bytes.
+	 */
+	private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+	/**
+	 * Mindestanzahl Zeilen der größeren Seite je Thread im parallelen Modus.
+	 */
+	public static final int MIN_ROWS_PER_THREAD = 1 << 14;
+
+	private static final int MAX_SPILL_PARTITIONS = 256;
+
+	private final CsvData left;
+	private final CsvData right;
+	private final int leftKey;
+	private final int rightKey;
+
+	private Type type = Type.INNER;
+	private int numThreads = 1;
+	private long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+	private File tempDir;
+
+	/**
+	 * Konstruktor
+	 * @param left linke CSV-Daten.
+	 * @param leftKey Bezeichner der Schlüsselspalte links.
+	 * @param right rechte CSV-Daten.
+	 * @param rightKey Bezeichner der Schlüsselspalte rechts.
+	 */
+	public CsvJoin(CsvData left, String leftKey, CsvData right, String rightKey) {
+		this.left = left;
+		this.right = right;
+		this.leftKey = left.column(leftKey).index();
+		this.rightKey = right.column(rightKey).index();
+	}
+
+	/**
+	 * @param type Art des Joins. Standard ist INNER.
+	 * @return dieser Join.
+	 */
+	public CsvJoin type(Type type) {
+		this.type = type;
+		return this;
+	}
+
+	/**
+	 * @param numThreads Anzahl der Threads für partitionierten parallelen Join. Standard ist 1.
+	 * @return dieser Join.
+	 */
+	public CsvJoin parallel(int numThreads) {
+		this.numThreads = numThreads;
+		return this;
+	}
+
+	/**
+	 * @param bytes Obergrenze für die geschätzte Größe der Hashtabelle, ab der ausgelagert wird.
+	 *              Standard ist ein Viertel des maximalen Heaps.
+	 * @return dieser Join.
+	 */
+	public CsvJoin memoryBudget(long bytes) {
+		this.memoryBudget = bytes;
+		return this;
+	}
+
+	/**
+	 * @param tempDir Verzeichnis für ausgelagerte Partitionen oder null für das temporäre Verzeichnis des Systems.
+	 * @return dieser Join.
+	 */
+	public CsvJoin tempDir(File tempDir) {
+		this.tempDir = tempDir;
+		return this;
+	}
+
+	/**
+	 * Führe Join aus. Die Eingaben dürfen währenddessen nicht verändert werden.
+	 * @return verbundene CSV-Daten.
+	 * @throws Exception Fehler beim Auslagern oder in einem Thread.
+	 */
+	public CsvData execute() throws Exception {
+		boolean buildLeft = left.rowCount() < right.rowCount();
+		Side build = buildLeft ? new Side(left, leftKey) : new Side(right, rightKey);
+		Side probe = buildLeft ? new Side(right, rightKey) : new Side(left, leftKey);
+
+		LongList pairs;
+		long estimate = estimateTableBytes(build);
+		if(estimate > memoryBudget) {
+			pairs = spillJoin(build, probe, buildLeft, estimate);
+		} else if(numThreads > 1 && probe.data.rowCount() >= 2 * MIN_ROWS_PER_THREAD) {
+			pairs = parallelJoin(build, probe, buildLeft);
+		} else {
+			pairs = new LongList();
+			join(build, null, build.data.rowCount(), probe, null, probe.data.rowCount(), buildLeft, pairs);
+		}
+		pairs.sort();
+		return toCsvData(pairs);
+	}
+
+	private long estimateTableBytes(Side build) {
+		long bytes = 0;
+		for(int row = 0; row < build.data.rowCount(); row++) {
+			String key = build.key(row);
+			if(key != null) {
+				bytes += ENTRY_OVERHEAD_BYTES + 2L * key.length();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Verbinde Zeilenteilmengen beider Seiten im Speicher.
+	 * @param buildRows Zeilenindizes der Bauseite oder null für 0..buildCount-1.
+	 * @param probeRows Zeilenindizes der Prüfseite oder null für 0..probeCount-1.
+	 */
+	private static void join(Side build, int[] buildRows, int buildCount, Side probe, int[] probeRows, int probeCount, boolean buildLeft, LongList out) {
+		BuildTable table = new BuildTable(buildCount);
+		for(int i = 0; i < buildCount; i++) {
+			int row = buildRows != null ? buildRows[i] : i;
+			String key = build.key(row);
+			if(key != null) {
+				table.add(key, row);
+			}
+		}
+		for(int i = 0; i < probeCount; i++) {
+			int row = probeRows != null ? probeRows[i] : i;
+			String key = probe.key(row);
+			if(key != null) {
+				table.probe(key, row, buildLeft, out);
+			}
+		}
+	}
+
+	private LongList parallelJoin(final Side build, final Side probe, final boolean buildLeft) throws Exception {
+		final int numParts = Math.min(numThreads, probe.data.rowCount() / MIN_ROWS_PER_THREAD);
+		final int[][] buildParts = build.partition(numParts);
+		final int[][] probeParts = probe.partition(numParts);
+
+		ExecutorService pool = Executors.newFixedThreadPool(numParts);
+		try {
+			List<Future<LongList>> futures = new ArrayList<Future<LongList>>(numParts);
+			for(int p = 0; p < numParts; p++) {
+				final int part = p;
+				futures.add(pool.submit(new Callable<LongList>() {
+					@Override
+					public LongList call() {
+						LongList out = new LongList();
+						join(build, buildParts[part], buildParts[part].length, probe, probeParts[part], probeParts[part].length, buildLeft, out);
+						return out;
+					}
+				}));
+			}
+			LongList pairs = new LongList();
+			for(Future<LongList> future : futures) {
+				pairs.addAll(FutureHelpers.getUnwrapped(future));
+			}
+			return pairs;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private LongList spillJoin(Side build, Side probe, boolean buildLeft, long estimate) throws IOException {
+		int numParts = (int)Math.min(MAX_SPILL_PARTITIONS, Math.max(2, 2 * (estimate / Math.max(1, memoryBudget) + 1)));
+		File[] buildFiles = new File[numParts];
+		File[] probeFiles = new File[numParts];
+		try {
+			int[] buildCounts = build.spill(buildFiles, tempDir);
+			int[] probeCounts = probe.spill(probeFiles, tempDir);
+
+			LongList pairs = new LongList();
+			for(int p = 0; p < numParts; p++) {
+				BuildTable table = new BuildTable(buildCounts[p]);
+				DataInputStream in = openSpill(buildFiles[p]);
+				try {
+					for(int i = 0; i < buildCounts[p]; i++) {
+						int row = in.readInt();
+						table.add(readKey(in), row);
+					}
+				} finally {
+					in.close();
+				}
+
+				in = openSpill(probeFiles[p]);
+				try {
+					for(int i = 0; i < probeCounts[p]; i++) {
+						int row = in.readInt();
+						table.probe(readKey(in), row, buildLeft, pairs);
+					}
+				} finally {
+					in.close();
+				}
+			}
+			return pairs;
+		} finally {
+			for(File f : buildFiles) {
+				if(f != null) {
+					f.delete();
+				}
+			}
+			for(File f : probeFiles) {
+				if(f != null) {
+					f.delete();
+				}
+			}
+		}
+	}
+
+	private static DataInputStream openSpill(File f) throws IOException {
+		return new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+	}
+
+	private static String readKey(DataInputStream in) throws IOException {
+		char[] chars = new char[in.readInt()];
+		for(int i = 0; i < chars.length; i++) {
+			chars[i] = in.readChar();
+		}
+		return new String(chars);
+	}
+
+	private CsvData toCsvData(LongList pairs) {
+		String[] leftHeaders = left.getHeaders();
+		String[] rightHeaders = right.getHeaders();
+		String[] headers = Arrays.copyOf(leftHeaders, leftHeaders.length + rightHeaders.length - 1);
+		Set<String> usedHeaders = new HashSet<String>(Arrays.asList(leftHeaders));
+		int h = leftHeaders.length;
+		for(int col = 0; col < rightHeaders.length; col++) {
+			if(col != rightKey) {
+				String header = rightHeaders[col];
+				while(usedHeaders.contains(header)) {
+					header += "_right";
+				}
+				usedHeaders.add(header);
+				headers[h++] = header;
+			}
+		}
+
+		List<String[]> rows = new ArrayList<String[]>(pairs.size + 1);
+		rows.add(headers);
+		int p = 0;
+		for(int l = 0; l < left.rowCount(); l++) {
+			boolean matched = false;
+			while(p < pairs.size && (int)(pairs.values[p] >>> 32) == l) {
+				rows.add(joinRow(headers.length, l, (int)pairs.values[p]));
+				matched = true;
+				p++;
+			}
+			if(!matched && type == Type.LEFT) {
+				rows.add(joinRow(headers.length, l, -1));
+			}
+		}
+		CsvData result = new CsvData(rows);
+		result.title = left.title;
+		return result;
+	}
+
+	private String[] joinRow(int numColumns, int leftRow, int rightRow) {
+		String[] row = new String[numColumns];
+		int leftColumns = left.columnCount();
+		for(int col = 0; col < leftColumns; col++) {
+			row[col] = left.getCellAt(leftRow, col);
+		}
+		if(rightRow >= 0) {
+			int c = leftColumns;
+			for(int col = 0; col < right.columnCount(); col++) {
+				if(col != rightKey) {
+					row[c++] = right.getCellAt(rightRow, col);
+				}
+			}
+		}
+		return row;
+	}
+
+	private static int spread(int h) {
+		return (h ^ (h >>> 16)) & 0x7fffffff;
+	}
+
+	/**
+	 * Eine Seite des Joins.
+	 */
+	private static class Side {
+		private final CsvData data;
+		private final int keyCol;
+
+		private Side(CsvData data, int keyCol) {
+			this.data = data;
+			this.keyCol = keyCol;
+		}
+
+		private String key(int row) {
+			return data.getCellAt(row, keyCol);
+		}
+
+		/**
+		 * Verteile Zeilen mit Schlüssel nach Hash auf Partitionen.
+		 * @return Zeilenindizes je Partition.
+		 */
+		private int[][] partition(int numParts) {
+			int n = data.rowCount();
+			int[] partOf = new int[n];
+			int[] counts = new int[numParts];
+			for(int row = 0; row < n; row++) {
+				String key = key(row);
+				partOf[row] = key != null ? spread(key.hashCode()) % numParts : -1;
+				if(partOf[row] >= 0) {
+					counts[partOf[row]]++;
+				}
+			}
+			int[][] parts = new int[numParts][];
+			for(int p = 0; p < numParts; p++) {
+				parts[p] = new int[counts[p]];
+				counts[p] = 0;
+			}
+			for(int row = 0; row < n; row++) {
+				int p = partOf[row];
+				if(p >= 0) {
+					parts[p][counts[p]++] = row;
+				}
+			}
+			return parts;
+		}
+
+		/**
+		 * Schreibe Zeilenindex und Schlüssel jeder Zeile mit Schlüssel in die Datei ihrer Partition.
+		 * @return Anzahl Einträge je Partition.
+		 */
+		private int[] spill(File[] files, File tempDir) throws IOException {
+			DataOutputStream[] outs = new DataOutputStream[files.length];
+			int[] counts = new int[files.length];
+			try {
+				for(int p = 0; p < files.length; p++) {
+					files[p] = File.createTempFile("csvjoin", ".part", tempDir);
+					files[p].deleteOnExit();
+					outs[p] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(files[p])));
+				}
+				for(int row = 0; row < data.rowCount(); row++) {
+					String key = key(row);
+					if(key != null) {
+						int p = spread(key.hashCode()) % files.length;
+						outs[p].writeInt(row);
+						outs[p].writeInt(key.length());
+						outs[p].writeChars(key);
+						counts[p]++;
+					}
+				}
+			} finally {
+				for(DataOutputStream out : outs) {
+					if(out != null) {
+						out.close();
+					}
+				}
+			}
+			return counts;
+		}
+	}
+
+	/**
+	 * Hashtabelle von Schlüssel zu Zeilen der Bauseite als verkettete Liste über Arrays.
+	 */
+	private static class BuildTable {
+		private final Map<String, Integer> heads;
+		private int[] rows;
+		private int[] next;
+		private int size;
+
+		private BuildTable(int capacity) {
+			heads = new HashMap<String, Integer>(Math.max(16, capacity * 4 / 3 + 1));
+			rows = new int[Math.max(1, capacity)];
+			next = new int[rows.length];
+		}
+
+		private void add(String key, int row) {
+			if(size == rows.length) {
+				rows = Arrays.copyOf(rows, size * 2);
+				next = Arrays.copyOf(next, size * 2);
+			}
+			rows[size] = row;
+			Integer head = heads.put(key, size);
+			next[size] = head != null ? head : -1;
+			size++;
+		}
+
+		private void probe(String key, int probeRow, boolean buildLeft, LongList out) {
+			Integer head = heads.get(key);
+			if(head == null) {
+				return;
+			}
+			for(int i = head; i >= 0; i = next[i]) {
+				out.add(buildLeft ? pair(rows[i], probeRow) : pair(probeRow, rows[i]));
+			}
+		}
+
+		private static long pair(int leftRow, int rightRow) {
+			return ((long)leftRow << 32) | (rightRow & 0xffffffffL);
+		}
+	}
+
+	/**
+	 * Wachsende Liste von Zeilenpaaren, kodiert als linker Index in den oberen und rechter Index in den unteren 32 Bit.
+	 */
+	private static class LongList {
+		private long[] values = new long[16];
+		private int size;
+
+		private void add(long value) {
+			if(size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		private void addAll(LongList other) {
+			if(size + other.size > values.length) {
+				values = Arrays.copyOf(values, Math.max(values.length * 2, size + other.size));
+			}
+			System.arraycopy(other.values, 0, values, size, other.size);
+			size += other.size;
+		}
+
+		private void sort() {
+			Arrays.sort(values, 0, size);
+		}
+	}
+}
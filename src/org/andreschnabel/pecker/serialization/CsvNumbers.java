@@ -0,0 +1,420 @@
+package org.andreschnabel.pecker.serialization;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parsen von Zahlen und Wahrheitswerten direkt aus Zeichen- oder Bytebereichen, ohne Zwischen-Zeichenketten.
+ *
+ * Ergebnisse und Fehler entsprechen Integer.parseInt, Long.parseLong, Double.parseDouble und Boolean.parseBoolean.
+ * Der schnelle Pfad deckt Ganzzahlen und Dezimalzahlen mit höchstens 15 signifikanten Stellen
+ * und kleinem Exponenten ab (exakt gerundet). Alle anderen Eingaben (sehr lange Zahlen, Hexadezimal, "NaN", Leerzeichen, Fehler)
+ * werden an die Methoden der JDK übergeben und erzeugen dabei eine Zeichenkette.
+ *
+ * Bytebereiche müssen ASCII-kompatibel kodiert sein.
+ */
+public final class CsvNumbers {
+
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	/**
+	 * Ganzzahlen mit höchstens so vielen Ziffern passen sicher in long.
+	 */
+	private static final int MAX_LONG_DIGITS = 18;
+
+	/**
+	 * Mantissen bis 10^15 sind exakt als double darstellbar.
+	 */
+	private static final int MAX_DOUBLE_DIGITS = 15;
+
+	private CsvNumbers() {
+	}
+
+	/**
+	 * Parse int aus Zeichenbereich.
+	 * @param buf Zeichenpuffer.
+	 * @param from Startindex. Inklusive.
+	 * @param to Endindex. Exklusive.
+	 * @return Zahl.
+	 * @throws NumberFormatException wie Integer.parseInt.
+	 */
+	public static int parseInt(char[] buf, int from, int to) {
+		long v = fastLong(buf, from, to);
+		if(v == NO_FAST_PATH || v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+			return Integer.parseInt(new String(buf, from, to - from));
+		}
+		return (int)v;
+	}
+
+	/**
+	 * Parse long aus Zeichenbereich.
+	 * @param buf Zeichenpuffer.
+	 * @param from Startindex. Inklusive.
+	 * @param to Endindex. Exklusive.
+	 * @return Zahl.
+	 * @throws NumberFormatException wie Long.parseLong.
+	 */
+	public static long parseLong(char[] buf, int from, int to) {
+		long v = fastLong(buf, from, to);
+		return v != NO_FAST_PATH ? v : Long.parseLong(new String(buf, from, to - from));
+	}
+
+	/**
+	 * Parse double aus Zeichenbereich.
+	 * @param buf Zeichenpuffer.
+	 * @param from Startindex. Inklusive.
+	 * @param to Endindex. Exklusive.
+	 * @return Zahl.
+	 * @throws NumberFormatException wie Double.parseDouble.
+	 */
+	public static double parseDouble(char[] buf, int from, int to) {
+		double v = fastDouble(buf, from, to);
+		return v == v ? v : Double.parseDouble(new String(buf, from, to - from));
+	}
+
+	/**
+	 * @param buf Zeichenpuffer.
+	 * @param from Startindex. Inklusive.
+	 * @param to Endindex. Exklusive.
+	 * @return true, gdw. Bereich ohne Beachtung der Groß-/Kleinschreibung "true" ist.
+	 */
+	public static boolean parseBoolean(char[] buf, int from, int to) {
+		return matches(buf, from, to, "true", true);
+	}
+
+	/**
+	 * Parse int aus Zeichenfolge.
+	 * @param str Zeichenfolge oder null.
+	 * @param from Startindex. Inklusive.
+	 * @param to Endindex. Exklusive.
+	 * @return Zahl.
+	 * @throws NumberFormatException wie Integer.parseInt.
+	 */
+	public static int parseInt(CharSequence str, int from, int to) {
+		long v = str != null ? fastLong(str, from, to) : NO_FAST_PATH;
+		if(v == NO_FAST_PATH || v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+			return Integer.parseInt(str != null ? str.subSequence(from, to).toString() : null);
+		}
+		return (int)v;
+	}
+
+	/**
+	 * Parse long aus Zeichenfolge.
+	 * @param str Zeichenfolge oder null.
+	 * @param from Startindex. Inklusive.
+	 * @param to Endindex. Exklusive.
+	 * @return Zahl.
+	 * @throws NumberFormatException wie Long.parseLong.
+	 */
+	public static long parseLong(CharSequence str, int from, int to) {
+		long v = str != null ? fastLong(str, from, to) : NO_FAST_PATH;
+		return v != NO_FAST_PATH ? v : Long.parseLong(str != null ? str.subSequence(from, to).toString() : null);
+	}
+
+	/**
+	 * Parse double aus Zeichenfolge.
+	 * @param str Zeichenfolge.
+	 * @param from Startindex. Inklusive.
+	 * @param to Endindex. Exklusive.
+	 * @return Zahl.
+	 * @throws NumberFormatException wie Double.parseDouble.
+	 * @throws NullPointerException für null wie Double.parseDouble.
+	 */
+	public static double parseDouble(CharSequence str, int from, int to) {
+		double v = fastDouble(str, from, to);
+		return v == v ? v : Double.parseDouble(str.subSequence(from, to).toString());
+	}
+
+	/**
+	 * @param str Zeichenfolge oder null.
+	 * @param from Startindex. Inklusive.
+	 * @param to Endindex. Exklusive.
+	 * @return true, gdw. Bereich ohne Beachtung der Groß-/Kleinschreibung "true" ist.
+	 */
+	public static boolean parseBoolean(CharSequence str, int from, int to) {
+		if(str == null || to - from != 4) {
+			return false;
+		}
+		for(int i = 0; i < 4; i++) {
+			if(Character.toLowerCase(str.charAt(from + i)) != "true".charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parse int aus Bytebereich mit absoluten Zugriffen. Position des Puffers bleibt unverändert.
+	 * @param buf Bytepuffer.
+	 * @param from Startindex. Inklusive.
+	 * @param to Endindex. Exklusive.
+	 * @return Zahl.
+	 * @throws NumberFormatException wie Integer.parseInt.
+	 */
+	public static int parseInt(ByteBuffer buf, int from, int to) {
+		long v = fastLong(buf, from, to);
+		if(v == NO_FAST_PATH || v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+			return Integer.parseInt(ascii(buf, from, to));
+		}
+		return (int)v;
+	}
+
+	/**
+	 * Parse long aus Bytebereich mit absoluten Zugriffen.
+	 * @param buf Bytepuffer.
+	 * @param from Startindex. Inklusive.
+	 * @param to Endindex. Exklusive.
+	 * @return Zahl.
+	 * @throws NumberFormatException wie Long.parseLong.
+	 */
+	public static long parseLong(ByteBuffer buf, int from, int to) {
+		long v = fastLong(buf, from, to);
+		return v != NO_FAST_PATH ? v : Long.parseLong(ascii(buf, from, to));
+	}
+
+	/**
+	 * Parse double aus Bytebereich mit absoluten Zugriffen.
+	 * @param buf Bytepuffer.
+	 * @param from Startindex. Inklusive.
+	 * @param to Endindex. Exklusive.
+	 * @return Zahl.
+	 * @throws NumberFormatException wie Double.parseDouble.
+	 */
+	public static double parseDouble(ByteBuffer buf, int from, int to) {
+		double v = fastDouble(buf, from, to);
+		return v == v ? v : Double.parseDouble(ascii(buf, from, to));
+	}
+
+	/**
+	 * @param buf Bytepuffer.
+	 * @param from Startindex. Inklusive.
+	 * @param to Endindex. Exklusive.
+	 * @return true, gdw. Bereich ohne Beachtung der Groß-/Kleinschreibung "true" ist.
+	 */
+	public static boolean parseBoolean(ByteBuffer buf, int from, int to) {
+		if(to - from != 4) {
+			return false;
+		}
+		for(int i = 0; i < 4; i++) {
+			if(Character.toLowerCase((char)(buf.get(from + i) & 0xff)) != "true".charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param buf Zeichenpuffer.
+	 * @param from Startindex. Inklusive.
+	 * @param to Endindex. Exklusive.
+	 * @return true, gdw. Bereich eine Ganzzahl in der Form von Long.toString ist (kein "+", keine führenden Nullen, kein "-0").
+	 */
+	public static boolean isCanonicalInteger(char[] buf, int from, int to) {
+		int i = from;
+		if(i < to && buf[i] == '-') {
+			i++;
+		}
+		if(i == to || (buf[i] == '0' && (to - i > 1 || i > from))) {
+			return false;
+		}
+		for(; i < to; i++) {
+			if(buf[i] < '0' || buf[i] > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param buf Zeichenpuffer.
+	 * @param from Startindex. Inklusive.
+	 * @param to Endindex. Exklusive.
+	 * @param str Vergleichswert.
+	 * @param ignoreCase true, gdw. Groß-/Kleinschreibung nicht beachtet wird.
+	 * @return true, gdw. Bereich gleich str ist.
+	 */
+	public static boolean matches(char[] buf, int from, int to, String str, boolean ignoreCase) {
+		if(to - from != str.length()) {
+			return false;
+		}
+		for(int i = 0; i < str.length(); i++) {
+			char c = buf[from + i];
+			char d = str.charAt(i);
+			if(c != d && (!ignoreCase || Character.toLowerCase(c) != Character.toLowerCase(d))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Markiert Eingaben außerhalb des schnellen Pfads. Long.MIN_VALUE hat 19 Ziffern und liegt ohnehin außerhalb.
+	 */
+	private static final long NO_FAST_PATH = Long.MIN_VALUE;
+
+	private static long fastLong(char[] buf, int from, int to) {
+		int i = from;
+		boolean negative = false;
+		if(i < to && (buf[i] == '-' || buf[i] == '+')) {
+			negative = buf[i] == '-';
+			i++;
+		}
+		if(i == to || to - i > MAX_LONG_DIGITS) {
+			return NO_FAST_PATH;
+		}
+		long v = 0;
+		for(; i < to; i++) {
+			int d = buf[i] - '0';
+			if(d < 0 || d > 9) {
+				return NO_FAST_PATH;
+			}
+			v = v * 10 + d;
+		}
+		return negative ? -v : v;
+	}
+
+	private static String ascii(ByteBuffer buf, int from, int to) {
+		char[] chars = new char[to - from];
+		for(int i = from; i < to; i++) {
+			chars[i - from] = (char)(buf.get(i) & 0xff);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Dezimalzahl [+-]Ziffern[.Ziffern][(e|E)[+-]Ziffern] mit exakt darstellbarer Mantisse und kleinem Exponenten.
+	 * @return Zahl oder NaN, falls außerhalb des schnellen Pfads.
+	 */
+	private static double fastDouble(char[] buf, int from, int to) {
+		int i = from;
+		boolean negative = false;
+		if(i < to && (buf[i] == '-' || buf[i] == '+')) {
+			negative = buf[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int significant = 0;
+		int scale = 0;
+		boolean fraction = false;
+		for(; i < to; i++) {
+			char c = buf[i];
+			if(c >= '0' && c <= '9') {
+				digits++;
+				if(mantissa != 0 || c != '0') {
+					if(++significant > MAX_DOUBLE_DIGITS) {
+						return Double.NaN;
+					}
+					mantissa = mantissa * 10 + (c - '0');
+				}
+				if(fraction) {
+					scale--;
+				}
+			} else if(c == '.' && !fraction) {
+				fraction = true;
+			} else {
+				break;
+			}
+		}
+		if(digits == 0) {
+			return Double.NaN;
+		}
+		int exp = 0;
+		if(i < to) {
+			if(buf[i] != 'e' && buf[i] != 'E') {
+				return Double.NaN;
+			}
+			i++;
+			boolean expNegative = false;
+			if(i < to && (buf[i] == '-' || buf[i] == '+')) {
+				expNegative = buf[i] == '-';
+				i++;
+			}
+			if(i == to || to - i > 3) {
+				return Double.NaN;
+			}
+			for(; i < to; i++) {
+				char c = buf[i];
+				if(c < '0' || c > '9') {
+					return Double.NaN;
+				}
+				exp = exp * 10 + (c - '0');
+			}
+			if(expNegative) {
+				exp = -exp;
+			}
+		}
+		return scaled(negative, mantissa, scale + exp);
+	}
+
+	/**
+	 * Längster Bereich, der für den schnellen Pfad kopiert wird. Längere Eingaben gehen direkt an die JDK.
+	 */
+	private static final int MAX_SPAN_LENGTH = 32;
+
+	private static final ThreadLocal<char[]> SPAN = new ThreadLocal<char[]>() {
+		@Override
+		protected char[] initialValue() {
+			return new char[MAX_SPAN_LENGTH];
+		}
+	};
+
+	/**
+	 * Kopiere kurzen Bereich in wiederverwendeten Zeichenpuffer, sodass nur die Implementierung für char[] nötig ist.
+	 * @return Puffer mit dem Bereich ab Index 0 oder null, falls Bereich ungültig oder zu lang ist.
+	 */
+	private static char[] span(CharSequence str, int from, int to) {
+		if(to < from || to - from > MAX_SPAN_LENGTH) {
+			return null;
+		}
+		char[] chars = SPAN.get();
+		for(int i = from; i < to; i++) {
+			chars[i - from] = str.charAt(i);
+		}
+		return chars;
+	}
+
+	private static char[] span(ByteBuffer buf, int from, int to) {
+		if(to < from || to - from > MAX_SPAN_LENGTH) {
+			return null;
+		}
+		char[] chars = SPAN.get();
+		for(int i = from; i < to; i++) {
+			chars[i - from] = (char)(buf.get(i) & 0xff);
+		}
+		return chars;
+	}
+
+	private static long fastLong(CharSequence str, int from, int to) {
+		char[] chars = span(str, from, to);
+		return chars != null ? fastLong(chars, 0, to - from) : NO_FAST_PATH;
+	}
+
+	private static long fastLong(ByteBuffer buf, int from, int to) {
+		char[] chars = span(buf, from, to);
+		return chars != null ? fastLong(chars, 0, to - from) : NO_FAST_PATH;
+	}
+
+	private static double fastDouble(CharSequence str, int from, int to) {
+		char[] chars = span(str, from, to);
+		return chars != null ? fastDouble(chars, 0, to - from) : Double.NaN;
+	}
+
+	private static double fastDouble(ByteBuffer buf, int from, int to) {
+		char[] chars = span(buf, from, to);
+		return chars != null ? fastDouble(chars, 0, to - from) : Double.NaN;
+	}
+
+	private static double scaled(boolean negative, long mantissa, int e) {
+		double v = mantissa;
+		if(mantissa != 0) {
+			if(e < -22 || e > 22) {
+				return Double.NaN;
+			}
+			v = e < 0 ? v / POWERS_OF_TEN[-e] : v * POWERS_OF_TEN[e];
+		}
+		return negative ? -v : v;
+	}
+}
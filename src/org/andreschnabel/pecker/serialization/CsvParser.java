@@ -0,0 +1,257 @@
+package org.andreschnabel.pecker.serialization;
+
+import org.andreschnabel.pecker.functional.IPredicate;
+
+/**
+ * Zustandsautomat zum Zerlegen von CSV-Text in Zeilen.
+ *
+ * Verarbeitet den Text abschnittsweise, sodass er nie vollständig im Speicher liegen muss.
+ * Der Zustand (Anführungszeichen, aktuelle Spalte, angefangene Zelle) bleibt zwischen den Abschnitten erhalten.
+ * Semantik entspricht dem ursprünglichen CsvHelpers.parseCsv:
+ * Anführungszeichen bleiben in der Zelle erhalten, Kommas und Zeilenumbrüche werden nie Teil einer Zelle
+ * und ein Zeilenumbruch beendet eine Zeile nur, wenn die letzte Spalte erreicht ist.
+ */
+final class CsvParser {
+
+	private static final char[] NEWLINE = new char[] {'\n'};
+
+	private final int numColumns;
+
+	private boolean escaped;
+	private int curColumn;
+	private String[] curRow;
+	private String[] completedRow;
+	private int lineNum;
+	private boolean atLineStart;
+
+	private char[] cell = new char[64];
+	private int cellLength;
+
+	private CsvStringPool stringPool;
+	private ICsvCellHandler cellHandler;
+
+	private int[] projection;
+	private int rowWidth;
+	private boolean skippedChars;
+
+	private IPredicate<String>[] cellFilters;
+	private boolean rowRejected;
+
+	/**
+	 * Konstruktor
+	 * @param numColumns Spaltenzahl (aus Kopfzeile).
+	 */
+	CsvParser(int numColumns) {
+		this(numColumns, false, 0);
+	}
+
+	/**
+	 * Konstruktor für Parser, der mitten im Text an einem Zeilenanfang beginnt.
+	 * @param numColumns Spaltenzahl (aus Kopfzeile).
+	 * @param escaped true, gdw. an der Startposition eine ungerade Anzahl Anführungszeichen vorausging.
+	 * @param lineNum Anzahl der vorausgehenden Zeilenumbrüche (für Fehlermeldungen).
+	 */
+	CsvParser(int numColumns, boolean escaped, int lineNum) {
+		this.numColumns = numColumns;
+		this.rowWidth = numColumns;
+		this.curRow = new String[numColumns];
+		this.escaped = escaped;
+		this.lineNum = lineNum;
+	}
+
+	/**
+	 * Verarbeite Zeichen aus buf[from, to), bis der Bereich erschöpft oder eine Zeile vollständig ist.
+	 * @param buf Zeichenpuffer.
+	 * @param from Startindex. Inklusive.
+	 * @param to Endindex. Exklusive.
+	 * @return Index des ersten nicht verarbeiteten Zeichens.
+	 * @throws Exception bei Zeile mit zu vielen Spalten.
+	 */
+	int parse(char[] buf, int from, int to) throws Exception {
+		int runStart = from;
+		for(int i = from; i < to; i++) {
+			char c = buf[i];
+			if(c > ',') {
+				// Häufigster Fall: alle Strukturzeichen ('\n', '"', ',') liegen unterhalb von ','.
+				continue;
+			}
+			if(c == '"') {
+				escaped = !escaped;
+				continue;
+			}
+			if(c != ',' && c != '\n') {
+				continue;
+			}
+
+			appendToCell(buf, runStart, i);
+			runStart = i + 1;
+
+			if(c == '\n') {
+				lineNum++;
+				if(curColumn == numColumns - 1) {
+					storeCell();
+					curColumn = 0;
+					atLineStart = true;
+					if(rowRejected) {
+						// Zeile verworfen, ihre Zellen werden von der nächsten Zeile überschrieben.
+						rowRejected = false;
+						continue;
+					}
+					completedRow = curRow;
+					curRow = new String[rowWidth];
+					return i + 1;
+				}
+			} else if(!escaped) {
+				if(curColumn == numColumns) {
+					throw new Exception("Line malformed with too many columns in line " + (lineNum + 1));
+				}
+				storeCell();
+				curColumn++;
+			}
+		}
+		appendToCell(buf, runStart, to);
+		if(to > from) {
+			atLineStart = buf[to - 1] == '\n';
+		}
+		return to;
+	}
+
+	/**
+	 * Ende der Eingabe. Schließt letzte Zeile ab, falls Text nicht mit Zeilenumbruch endet.
+	 * @throws Exception bei Zeile mit zu vielen Spalten.
+	 */
+	void finish() throws Exception {
+		if(!atLineStart) {
+			parse(NEWLINE, 0, 1);
+		}
+	}
+
+	/**
+	 * @return true, gdw. eine vollständige Zeile abgeholt werden kann.
+	 */
+	boolean hasRow() {
+		return completedRow != null;
+	}
+
+	/**
+	 * Hole vollständige Zeile ab.
+	 * @return vollständige Zeile oder null.
+	 */
+	String[] takeRow() {
+		String[] row = completedRow;
+		completedRow = null;
+		return row;
+	}
+
+	/**
+	 * Verwende Pool für Zelleninhalte nachfolgender Zeilen.
+	 * @param stringPool Pool oder null für neue Zeichenkette je Zelle.
+	 */
+	void setStringPool(CsvStringPool stringPool) {
+		this.stringPool = stringPool;
+	}
+
+	/**
+	 * Übergebe Zellen nachfolgender Zeilen an Handler statt Zeichenketten zu erzeugen.
+	 * Vollständige Zeilen enthalten dann nur null.
+	 * @param cellHandler Handler oder null.
+	 */
+	void setCellHandler(ICsvCellHandler cellHandler) {
+		this.cellHandler = cellHandler;
+	}
+
+	/**
+	 * Übernehme nur ausgewählte Spalten in nachfolgende Zeilen. Zeichen anderer Spalten werden übersprungen, ohne sie zu kopieren.
+	 * Nur an einem Zeilenanfang aufrufen.
+	 * @param projection Zielindex je Spalte der Datei oder -1 für übersprungene Spalten. null für alle Spalten.
+	 * @param rowWidth Länge der gelieferten Zeilen.
+	 */
+	void setProjection(int[] projection, int rowWidth) {
+		this.projection = projection;
+		this.rowWidth = projection != null ? rowWidth : numColumns;
+		this.curRow = new String[this.rowWidth];
+	}
+
+	/**
+	 * Verwerfe nachfolgende Zeilen, deren Zelle in einer Spalte das Prädikat nicht erfüllt.
+	 * Nach der ersten nicht erfüllten Zelle werden die restlichen Zellen der Zeile übersprungen, ohne sie zu kopieren.
+	 * @param cellFilters Prädikat je Spalte der Datei oder null-Einträge für ungeprüfte Spalten. null für keine Filter.
+	 */
+	void setCellFilters(IPredicate<String>[] cellFilters) {
+		this.cellFilters = cellFilters;
+	}
+
+	/**
+	 * @return true, gdw. weder Zelle noch Zeile angefangen sind.
+	 */
+	boolean isAtRowStart() {
+		return curColumn == 0 && cellLength == 0 && !skippedChars;
+	}
+
+	private void appendToCell(char[] buf, int from, int to) {
+		int len = to - from;
+		if(len <= 0) {
+			return;
+		}
+		if(isSkipped(curColumn)) {
+			skippedChars = true;
+			return;
+		}
+		if(cellLength + len > cell.length) {
+			char[] ncell = new char[Math.max(cell.length * 2, cellLength + len)];
+			System.arraycopy(cell, 0, ncell, 0, cellLength);
+			cell = ncell;
+		}
+		System.arraycopy(buf, from, cell, cellLength, len);
+		cellLength += len;
+	}
+
+	/**
+	 * @return true, gdw. Zeichen der Spalte nicht gebraucht werden.
+	 */
+	private boolean isSkipped(int column) {
+		if(rowRejected) {
+			return true;
+		}
+		if(projection == null || column >= numColumns) {
+			return projection != null;
+		}
+		return projection[column] < 0 && (cellFilters == null || cellFilters[column] == null);
+	}
+
+	private void storeCell() throws Exception {
+		if(isSkipped(curColumn)) {
+			cellLength = 0;
+			skippedChars = false;
+			return;
+		}
+		int target = projection != null ? projection[curColumn] : curColumn;
+		IPredicate<String> filter = cellFilters != null ? cellFilters[curColumn] : null;
+		if(filter == null) {
+			curRow[target] = takeCell(curColumn);
+			return;
+		}
+		String str = stringPool != null ? stringPool.intern(curColumn, cell, 0, cellLength) : new String(cell, 0, cellLength);
+		if(!filter.invoke(str)) {
+			rowRejected = true;
+		} else if(target >= 0) {
+			if(cellHandler != null) {
+				cellHandler.cell(curColumn, cell, 0, cellLength);
+			} else {
+				curRow[target] = str;
+			}
+		}
+		cellLength = 0;
+	}
+
+	private String takeCell(int column) throws Exception {
+		if(cellHandler != null) {
+			cellHandler.cell(column, cell, 0, cellLength);
+			cellLength = 0;
+			return null;
+		}
+		String str = stringPool != null ? stringPool.intern(column, cell, 0, cellLength) : new String(cell, 0, cellLength);
+		cellLength = 0;
+		return str;
+	}
+}
@@ -0,0 +1,317 @@
+package org.andreschnabel.pecker.serialization;
+
+import org.andreschnabel.pecker.collections.ChunkedList;
+import org.andreschnabel.pecker.functional.IAction;
+import org.andreschnabel.pecker.threading.FutureHelpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Einlesen von CSV-Daten als Fließband aus drei Stufen, sodass Lesen, Parsen und Verarbeiten überlappen.
+ *
+ * 1. Lese-Thread: liest (und dekodiert bzw. entpackt) den Text in Blöcke fester Größe.
+ * 2. Parse-Thread: zerlegt die Blöcke mit CsvReader in Zeilen und fasst diese zu Stapeln zusammen.
+ * 3. Aufrufender Thread: übergibt die Zeilen der Stapel der Reihe nach an den Verbraucher.
+ *
+ * Die Stufen sind über Warteschlangen begrenzter Kapazität verbunden. Ist eine nachfolgende Stufe langsamer,
+ * blockiert die vorhergehende (Gegendruck), sodass der Speicherbedarf begrenzt bleibt.
+ * Die Blöcke werden wiederverwendet, während ein Block geparst wird, wird bereits der nächste gelesen.
+ *
+ * Semantik entspricht CsvHelpers.parseCsv. Eine Instanz kann nur einmal ausgeführt werden.
+ */
+public class CsvPipeline {
+
+	/**
+	 * Standardgröße eines gelesenen Blocks in Zeichen.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+	/**
+	 * Standardkapazität der Warteschlangen zwischen den Stufen.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+	/**
+	 * Standardanzahl Zeilen je Stapel.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1 << 10;
+
+	/**
+	 * Markiert das Ende der Blöcke.
+	 */
+	private static final CharBuffer END_OF_BLOCKS = CharBuffer.allocate(0);
+
+	/**
+	 * Markiert das Ende der Stapel.
+	 */
+	private static final List<String[]> END_OF_ROWS = new ArrayList<String[]>(0);
+
+	private final File file;
+	private final Reader reader;
+
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private CsvStringPool stringPool;
+
+	private volatile String[] headers;
+	private boolean started;
+
+	/**
+	 * Konstruktor
+	 * @param file CSV-Datei, unkomprimiert oder gzip. Wird erst im Lese-Thread geöffnet.
+	 */
+	public CsvPipeline(File file) {
+		this.file = file;
+		this.reader = null;
+	}
+
+	/**
+	 * Konstruktor
+	 * @param reader Quelle für CSV-Text. Wird nach dem Lesen geschlossen.
+	 */
+	public CsvPipeline(Reader reader) {
+		this.file = null;
+		this.reader = reader;
+	}
+
+	/**
+	 * @param blockSize Größe eines gelesenen Blocks in Zeichen.
+	 */
+	public void setBlockSize(int blockSize) {
+		this.blockSize = Math.max(1, blockSize);
+	}
+
+	/**
+	 * @param queueCapacity Anzahl Blöcke bzw. Stapel, welche höchstens zwischen zwei Stufen warten.
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = Math.max(1, queueCapacity);
+	}
+
+	/**
+	 * @param batchSize Anzahl Zeilen, welche der Parse-Thread gesammelt weiterreicht.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * @param stringPool Pool für Zelleninhalte oder null.
+	 */
+	public void setStringPool(CsvStringPool stringPool) {
+		this.stringPool = stringPool;
+	}
+
+	/**
+	 * @return Spaltenbezeichner oder null, falls die Kopfzeile noch nicht gelesen wurde.
+	 * Während forEachRow ab der ersten Zeile verfügbar.
+	 */
+	public String[] getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Führe das Fließband aus und übergebe jede Zeile im aufrufenden Thread an die Aktion.
+	 * Wirft die Aktion eine Ausnahme, werden Lese- und Parse-Thread abgebrochen.
+	 * @param rowAction Aktion, welche jede Zeile (ohne Kopfzeile) erhält.
+	 * @throws Exception Lese- oder Formatfehler oder Fehler der Aktion.
+	 */
+	public void forEachRow(IAction<String[]> rowAction) throws Exception {
+		if(started) {
+			throw new IllegalStateException("Pipeline has already been run");
+		}
+		started = true;
+
+		final BlockingQueue<CharBuffer> freeBlocks = new ArrayBlockingQueue<CharBuffer>(queueCapacity + 2);
+		for(int i = 0; i < queueCapacity + 2; i++) {
+			freeBlocks.add(CharBuffer.allocate(blockSize));
+		}
+		final BlockingQueue<CharBuffer> fullBlocks = new ArrayBlockingQueue<CharBuffer>(queueCapacity + 2);
+		final BlockingQueue<List<String[]>> batches = new ArrayBlockingQueue<List<String[]>>(queueCapacity + 1);
+
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			Future<Void> readTask = pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					readBlocks(freeBlocks, fullBlocks);
+					return null;
+				}
+			});
+			Future<Void> parseTask = pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					parseBlocks(freeBlocks, fullBlocks, batches);
+					return null;
+				}
+			});
+
+			List<String[]> batch;
+			while((batch = batches.take()) != END_OF_ROWS) {
+				for(String[] row : batch) {
+					rowAction.invoke(row);
+				}
+			}
+			// Parse-Thread ist fertig. Hat er die Eingabe vollständig gelesen, ist auch der Lese-Thread fertig.
+			// Sonst wird dieser in finally abgebrochen. Ein Lesefehler ist die eigentliche Ursache und hat Vorrang.
+			try {
+				FutureHelpers.getUnwrapped(parseTask);
+			} catch(Exception e) {
+				if(readTask.isDone()) {
+					FutureHelpers.getUnwrapped(readTask);
+				}
+				throw e;
+			}
+			FutureHelpers.getUnwrapped(readTask);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Führe das Fließband aus und sammle alle Zeilen.
+	 * @return CSV-Daten, identisch mit CsvHelpers.parseCsv.
+	 * @throws Exception Lese- oder Formatfehler.
+	 */
+	public CsvData toCsvData() throws Exception {
+		final List<String[]> rows = new ChunkedList<String[]>();
+		forEachRow(new IAction<String[]>() {
+			@Override
+			public void invoke(String[] row) throws Exception {
+				if(rows.isEmpty()) {
+					rows.add(headers);
+				}
+				rows.add(row);
+			}
+		});
+		if(rows.isEmpty()) {
+			rows.add(headers);
+		}
+		return new CsvData(rows);
+	}
+
+	private void readBlocks(BlockingQueue<CharBuffer> freeBlocks, BlockingQueue<CharBuffer> fullBlocks) throws Exception {
+		try {
+			Reader in = file != null ? CsvHelpers.openReader(file) : reader;
+			try {
+				boolean eof = false;
+				while(!eof) {
+					CharBuffer block = freeBlocks.take();
+					block.clear();
+					while(block.hasRemaining()) {
+						int n = in.read(block.array(), block.position(), block.remaining());
+						if(n < 0) {
+							eof = true;
+							break;
+						}
+						block.position(block.position() + n);
+					}
+					block.flip();
+					if(block.hasRemaining()) {
+						fullBlocks.put(block);
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw e;
+		} finally {
+			putEnd(fullBlocks, END_OF_BLOCKS);
+		}
+	}
+
+	private void parseBlocks(BlockingQueue<CharBuffer> freeBlocks, BlockingQueue<CharBuffer> fullBlocks,
+			BlockingQueue<List<String[]>> batches) throws Exception {
+		try {
+			CsvReader csvReader = new CsvReader(new BlockReader(freeBlocks, fullBlocks));
+			csvReader.setStringPool(stringPool);
+			try {
+				headers = csvReader.getHeaders();
+				List<String[]> batch = new ArrayList<String[]>(batchSize);
+				String[] row;
+				while((row = csvReader.readRow()) != null) {
+					batch.add(row);
+					if(batch.size() == batchSize) {
+						batches.put(batch);
+						batch = new ArrayList<String[]>(batchSize);
+					}
+				}
+				if(!batch.isEmpty()) {
+					batches.put(batch);
+				}
+			} finally {
+				csvReader.close();
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw e;
+		} finally {
+			putEnd(batches, END_OF_ROWS);
+		}
+	}
+
+	/**
+	 * Melde der nächsten Stufe das Ende, außer das Fließband wurde abgebrochen und niemand wartet mehr.
+	 */
+	private static <T> void putEnd(BlockingQueue<T> queue, T end) throws InterruptedException {
+		if(!Thread.currentThread().isInterrupted()) {
+			queue.put(end);
+		}
+	}
+
+	/**
+	 * Reader über die Blöcke des Lese-Threads. Gibt gelesene Blöcke zur Wiederverwendung zurück.
+	 */
+	private static class BlockReader extends Reader {
+		private final BlockingQueue<CharBuffer> freeBlocks;
+		private final BlockingQueue<CharBuffer> fullBlocks;
+		private CharBuffer current;
+
+		public BlockReader(BlockingQueue<CharBuffer> freeBlocks, BlockingQueue<CharBuffer> fullBlocks) {
+			this.freeBlocks = freeBlocks;
+			this.fullBlocks = fullBlocks;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			if(current == END_OF_BLOCKS) {
+				return -1;
+			}
+			try {
+				if(current == null || !current.hasRemaining()) {
+					if(current != null) {
+						freeBlocks.put(current);
+					}
+					current = fullBlocks.take();
+					if(current == END_OF_BLOCKS) {
+						return -1;
+					}
+				}
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("CSV pipeline interrupted");
+			}
+			int n = Math.min(len, current.remaining());
+			current.get(cbuf, off, n);
+			return n;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package org.andreschnabel.pecker.serialization;
+
+import org.andreschnabel.pecker.functional.IAction;
+import org.andreschnabel.pecker.functional.IPredicate;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Liest CSV-Daten zeilenweise aus einem Reader.
+ *
+ * Der Text wird in Puffern fester Größe gelesen, sodass der Speicherbedarf nur
+ * von der längsten Zeile und nicht von der Dateigröße abhängt.
+ * Semantik entspricht CsvHelpers.parseCsv.
+ */
+public class CsvReader implements Closeable {
+
+	/**
+	 * Standardgröße des Lesepuffers in Zeichen.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	private final Reader reader;
+	private char[] buf;
+	private int pos;
+	private int limit;
+	private boolean eof;
+
+	private CsvParser parser;
+	private String[] headers;
+	private String[] selectedHeaders;
+	private IPredicate<String>[] cellFilters;
+	private CsvStringPool stringPool;
+
+	/**
+	 * Konstruktor
+	 * @param reader Quelle für CSV-Text.
+	 */
+	public CsvReader(Reader reader) {
+		this(reader, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Konstruktor
+	 * @param reader Quelle für CSV-Text.
+	 * @param bufferSize Größe des Lesepuffers in Zeichen.
+	 */
+	public CsvReader(Reader reader, int bufferSize) {
+		this.reader = reader;
+		this.buf = new char[Math.max(1, bufferSize)];
+	}
+
+	/**
+	 * Konstruktor
+	 * @param channel Quelle für CSV-Bytes.
+	 * @param charsetName Zeichenkodierung der Bytes.
+	 */
+	public CsvReader(ReadableByteChannel channel, String charsetName) {
+		this(Channels.newReader(channel, charsetName));
+	}
+
+	/**
+	 * Konstruktor
+	 * @param file CSV-Datei, unkomprimiert oder gzip.
+	 * @throws Exception Lesefehler.
+	 */
+	public CsvReader(File file) throws Exception {
+		this(CsvHelpers.openReader(file));
+	}
+
+	/**
+	 * Bezeichner der Spalten. Liest beim ersten Aufruf die Kopfzeile.
+	 * Nach selectColumns nur die ausgewählten Spalten.
+	 * @return Array aus Spaltenbezeichnern.
+	 * @throws Exception Lese- oder Formatfehler.
+	 */
+	public String[] getHeaders() throws Exception {
+		if(headers == null) {
+			parser = new CsvParser(countHeaderColumns());
+			headers = nextRow();
+			parser.setStringPool(stringPool);
+		}
+		return selectedHeaders != null ? selectedHeaders : headers;
+	}
+
+	/**
+	 * Liefere nachfolgend nur die gegebenen Spalten in dieser Reihenfolge.
+	 * Zellen anderer Spalten werden beim Parsen übersprungen, ohne sie zu kopieren oder Zeichenketten zu erzeugen.
+	 * @param columns Bezeichner der gewünschten Spalten.
+	 * @throws Exception Lese- oder Formatfehler.
+	 * @throws IllegalArgumentException falls eine Spalte fehlt oder doppelt angegeben ist.
+	 */
+	public void selectColumns(String... columns) throws Exception {
+		getHeaders();
+		int[] projection = new int[headers.length];
+		Arrays.fill(projection, -1);
+		for(int i = 0; i < columns.length; i++) {
+			int col = Arrays.asList(headers).indexOf(columns[i]);
+			if(col < 0) {
+				throw new IllegalArgumentException("No column with header " + columns[i]);
+			}
+			if(projection[col] >= 0) {
+				throw new IllegalArgumentException("Column selected twice: " + columns[i]);
+			}
+			projection[col] = i;
+		}
+		parser.setProjection(projection, columns.length);
+		selectedHeaders = columns.clone();
+	}
+
+	/**
+	 * Liefere nachfolgend nur Zeilen, deren Zelle in der Spalte das Prädikat erfüllt. Mehrere Filter müssen alle erfüllt sein.
+	 * Verworfene Zeilen werden nach der ersten nicht erfüllten Zelle nur noch überlesen, ohne weitere Zeichenketten zu erzeugen.
+	 * Filterspalten weit vorne in der Zeile sparen daher am meisten. Die Spalte muss nicht ausgewählt sein (siehe selectColumns).
+	 * Nicht mit readRow(ICsvCellHandler) kombinierbar, da der Handler sonst Zellen verworfener Zeilen erhielte.
+	 * @param header Bezeichner der geprüften Spalte.
+	 * @param predicate Prädikat auf dem Zelleninhalt.
+	 * @throws Exception Lese- oder Formatfehler.
+	 * @throws IllegalArgumentException falls die Spalte fehlt.
+	 */
+	@SuppressWarnings("unchecked")
+	public void filterColumn(String header, final IPredicate<String> predicate) throws Exception {
+		getHeaders();
+		int col = Arrays.asList(headers).indexOf(header);
+		if(col < 0) {
+			throw new IllegalArgumentException("No column with header " + header);
+		}
+		if(cellFilters == null) {
+			cellFilters = (IPredicate<String>[]) new IPredicate<?>[headers.length];
+		}
+		final IPredicate<String> previous = cellFilters[col];
+		cellFilters[col] = previous == null ? predicate : new IPredicate<String>() {
+			@Override
+			public boolean invoke(String cell) {
+				return previous.invoke(cell) && predicate.invoke(cell);
+			}
+		};
+		parser.setCellFilters(cellFilters);
+	}
+
+	/**
+	 * Teile gleiche Zelleninhalte einer Spalte über einen Pool, statt je Zelle eine neue Zeichenkette zu erzeugen.
+	 * Gilt nicht für die Kopfzeile.
+	 * @param stringPool Pool oder null.
+	 */
+	public void setStringPool(CsvStringPool stringPool) {
+		this.stringPool = stringPool;
+		if(headers != null) {
+			parser.setStringPool(stringPool);
+		}
+	}
+
+	/**
+	 * Lies nächste Inhaltszeile. Keine Kopfzeile.
+	 * @return Zeile als Array aus Zelleninhalten oder null, falls Ende der Eingabe erreicht.
+	 * @throws Exception Lese- oder Formatfehler.
+	 */
+	public String[] readRow() throws Exception {
+		getHeaders();
+		return nextRow();
+	}
+
+	/**
+	 * Lies nächste Inhaltszeile und übergebe ihre Zellen direkt aus dem Lesepuffer an den Handler.
+	 * Es werden keine Zeichenketten für die Zellen erzeugt.
+	 * @param cellHandler Handler, welcher jede Zelle der Zeile in Spaltenreihenfolge erhält.
+	 * @return false, gdw. Ende der Eingabe erreicht.
+	 * @throws Exception Lese- oder Formatfehler oder Fehler des Handlers.
+	 * @throws IllegalStateException falls Zeilen mit filterColumn gefiltert werden.
+	 */
+	public boolean readRow(ICsvCellHandler cellHandler) throws Exception {
+		getHeaders();
+		if(cellFilters != null) {
+			throw new IllegalStateException("Cell handler cannot be combined with column filters");
+		}
+		parser.setCellHandler(cellHandler);
+		try {
+			return nextRow() != null;
+		} finally {
+			parser.setCellHandler(null);
+		}
+	}
+
+	/**
+	 * Führe Aktion für jede verbleibende Inhaltszeile aus.
+	 * @param rowAction Aktion, welche jede Zeile erhält.
+	 * @throws Exception Lese- oder Formatfehler oder Fehler der Aktion.
+	 */
+	public void forEachRow(IAction<String[]> rowAction) throws Exception {
+		String[] row;
+		while((row = readRow()) != null) {
+			rowAction.invoke(row);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private String[] nextRow() throws Exception {
+		while(true) {
+			if(pos == limit && !fill()) {
+				parser.finish();
+				return parser.takeRow();
+			}
+			pos = parser.parse(buf, pos, limit);
+			if(parser.hasRow()) {
+				return parser.takeRow();
+			}
+		}
+	}
+
+	/**
+	 * Puffere erste Textzeile vollständig und zähle ihre Spalten. Verbraucht keine Zeichen.
+	 */
+	private int countHeaderColumns() throws IOException {
+		int scanFrom = pos;
+		while(true) {
+			for(int i = scanFrom; i < limit; i++) {
+				if(buf[i] == '\n') {
+					return CsvHelpers.countColumns(CharBuffer.wrap(buf), pos, i);
+				}
+			}
+			int scanned = limit - pos;
+			if(!readMore()) {
+				return CsvHelpers.countColumns(CharBuffer.wrap(buf), pos, limit);
+			}
+			scanFrom = pos + scanned;
+		}
+	}
+
+	private boolean fill() throws IOException {
+		pos = 0;
+		limit = 0;
+		return readMore();
+	}
+
+	/**
+	 * Schiebe ungelesene Zeichen an Pufferanfang, vergrößere Puffer falls voll und lies weitere Zeichen nach.
+	 * @return false, gdw. Ende der Eingabe erreicht.
+	 */
+	private boolean readMore() throws IOException {
+		if(eof) {
+			return false;
+		}
+		int remaining = limit - pos;
+		if(pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, remaining);
+		} else if(remaining == buf.length) {
+			char[] nbuf = new char[buf.length * 2];
+			System.arraycopy(buf, 0, nbuf, 0, remaining);
+			buf = nbuf;
+		}
+		pos = 0;
+		limit = remaining;
+
+		int n;
+		do {
+			n = reader.read(buf, limit, buf.length - limit);
+		} while(n == 0);
+
+		if(n < 0) {
+			eof = true;
+			return false;
+		}
+		limit += n;
+		return true;
+	}
+}
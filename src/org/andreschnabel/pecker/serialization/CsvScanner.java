@@ -0,0 +1,102 @@
+package org.andreschnabel.pecker.serialization;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Suche nach Strukturzeichen (Komma, Anführungszeichen, Zeilenumbruch) in Blöcken von 64 Bytes.
+ *
+ * Liefert je Block eine Bitmaske, in der Bit i gesetzt ist, gdw. das i-te Byte des Blocks ein Strukturzeichen ist.
+ * Parser springen mit Long.numberOfTrailingZeros direkt von Strukturzeichen zu Strukturzeichen,
+ * statt jedes Byte einzeln zu lesen und zu verzweigen.
+ *
+ * Vollständige Blöcke werden als SWAR (SIMD within a register) zu je acht Bytes in einem long verglichen,
+ * Reste kürzer als ein Block Byte für Byte.
+ * Bytes müssen ASCII-kompatibel kodiert sein.
+ */
+final class CsvScanner {
+
+	/**
+	 * Anzahl der Bytes je Block und Bits je Maske.
+	 */
+	static final int BLOCK_SIZE = 64;
+
+	private static final long ONES = 0x0101010101010101L;
+	private static final long LOW_SEVEN = 0x7f7f7f7f7f7f7f7fL;
+	private static final long NEWLINES = ONES * '\n';
+	private static final long QUOTES = ONES * '"';
+	private static final long COMMAS = ONES * ',';
+
+	/**
+	 * Multiplikator, der das niedrigste Bit jedes Bytes in die oberen acht Bits sammelt (Byte j nach Bit 56 + j).
+	 */
+	private static final long GATHER = 0x0102040810204080L;
+
+	private CsvScanner() {
+	}
+
+	/**
+	 * @param bytes Bytepuffer.
+	 * @return Sicht auf den Puffer in Little-Endian-Reihenfolge, sodass Byte j eines long in dessen Bits 8j bis 8j+7 liegt.
+	 */
+	static ByteBuffer littleEndian(ByteBuffer bytes) {
+		return bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Maske der Strukturzeichen eines vollständigen Blocks.
+	 * @param bytes Little-Endian-Puffer (siehe littleEndian).
+	 * @param from Startindex des Blocks. Es müssen mindestens BLOCK_SIZE Bytes folgen.
+	 * @return Maske, Bit i für Byte from+i.
+	 */
+	static long structuralMask(ByteBuffer bytes, int from) {
+		long mask = 0;
+		for(int k = 0; k < BLOCK_SIZE; k += 8) {
+			mask |= structuralBytes(bytes.getLong(from + k)) << k;
+		}
+		return mask;
+	}
+
+	/**
+	 * @param word acht Bytes, Byte j in Bits 8j bis 8j+7.
+	 * @return Maske mit Bit j, gdw. Byte j ein Strukturzeichen ist.
+	 */
+	static long structuralBytes(long word) {
+		long hits = zeroBytes(word ^ NEWLINES) | zeroBytes(word ^ QUOTES) | zeroBytes(word ^ COMMAS);
+		return (hits >>> 7) * GATHER >>> 56;
+	}
+
+	/**
+	 * Exakte Erkennung von Nullbytes ohne Überträge zwischen Bytes.
+	 * @return 0x80 in jedem Byte, welches in word 0 ist, sonst 0.
+	 */
+	private static long zeroBytes(long word) {
+		long low = (word & LOW_SEVEN) + LOW_SEVEN;
+		return ~(low | word | LOW_SEVEN);
+	}
+
+	/**
+	 * Maske der Strukturzeichen eines unvollständigen Blocks, Byte für Byte.
+	 * @param bytes Bytepuffer.
+	 * @param from Startindex des Blocks.
+	 * @param len Länge des Blocks, höchstens BLOCK_SIZE.
+	 * @return Maske, Bit i für Byte from+i.
+	 */
+	static long structuralMask(ByteBuffer bytes, int from, int len) {
+		long mask = 0;
+		for(int i = 0; i < len; i++) {
+			if(isStructural(bytes.get(from + i))) {
+				mask |= 1L << i;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * @param b Byte in ASCII-kompatibler Kodierung.
+	 * @return true, gdw. b ein Strukturzeichen ist.
+	 */
+	static boolean isStructural(byte b) {
+		return b == '\n' || b == '"' || b == ',';
+	}
+}
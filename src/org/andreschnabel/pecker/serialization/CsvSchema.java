@@ -0,0 +1,69 @@
+package org.andreschnabel.pecker.serialization;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Zuordnung von Spaltenbezeichnern zu Spaltenindizes.
+ *
+ * Wird einmal je Spaltenlayout gebaut, sodass Zugriffe über Bezeichner nur eine Hashtabellen-Suche kosten.
+ * Ändert sich das Layout (z.B. durch CsvData.addColumn), erzeugt CsvData ein neues Schema und alle
+ * Spalten-Handles des alten Schemas werden ungültig.
+ */
+public final class CsvSchema {
+
+	private final String[] headers;
+	private final Map<String, Integer> indexOfHeader;
+
+	/**
+	 * Konstruktor
+	 * @param headers Spaltenbezeichner.
+	 */
+	public CsvSchema(String[] headers) {
+		this.headers = headers.clone();
+		this.indexOfHeader = new HashMap<String, Integer>(headers.length * 2);
+		for(int col = headers.length - 1; col >= 0; col--) {
+			// Bei doppelten Bezeichnern gewinnt wie bei indexOf die erste Spalte.
+			indexOfHeader.put(headers[col], col);
+		}
+	}
+
+	/**
+	 * Index der Spalte mit Bezeichner.
+	 * @param header Bezeichner.
+	 * @return Spaltenindex oder -1, falls keine Spalte so heißt.
+	 */
+	public int indexOf(String header) {
+		Integer col = indexOfHeader.get(header);
+		return col != null ? col : -1;
+	}
+
+	/**
+	 * @return Anzahl der Spalten.
+	 */
+	public int columnCount() {
+		return headers.length;
+	}
+
+	/**
+	 * Bezeichner der Spalte mit Index.
+	 * @param col Spaltenindex.
+	 * @return Bezeichner.
+	 */
+	public String header(int col) {
+		return headers[col];
+	}
+
+	/**
+	 * Handle für Spalte mit Bezeichner. Für wiederholte Zugriffe in Schleifen.
+	 * @param header Bezeichner.
+	 * @return Spalten-Handle.
+	 */
+	public CsvColumnHandle column(String header) {
+		int col = indexOf(header);
+		if(col < 0) {
+			throw new IllegalArgumentException("No column with header " + header);
+		}
+		return new CsvColumnHandle(this, col);
+	}
+}
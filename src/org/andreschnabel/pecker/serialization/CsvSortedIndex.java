@@ -0,0 +1,232 @@
+package org.andreschnabel.pecker.serialization;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Sortierter Index für Bereichs- und Präfixsuche auf einer Spalte.
+ *
+ * Einträge sind nach Zelleninhalt und bei Gleichheit nach Zeilenindex sortiert.
+ * Leere Zellen (null) stehen vor allen anderen Einträgen.
+ */
+public class CsvSortedIndex extends CsvIndex {
+
+	private final Comparator<String> comparator;
+	private String[] keys = new String[0];
+	private int[] rows = new int[0];
+	private int size;
+
+	/**
+	 * Konstruktor
+	 *
+	 * Index mit lexikographischer Ordnung.
+	 *
+	 * @param data indizierte CSV-Daten.
+	 * @param col Spaltenindex.
+	 */
+	public CsvSortedIndex(CsvData data, int col) {
+		this(data, col, null);
+	}
+
+	/**
+	 * Konstruktor
+	 *
+	 * Baut Index sofort auf und hält ihn aktuell bis close.
+	 *
+	 * @param data indizierte CSV-Daten.
+	 * @param col Spaltenindex.
+	 * @param comparator Ordnung der Zelleninhalte oder null für lexikographische Ordnung.
+	 */
+	public CsvSortedIndex(CsvData data, int col, Comparator<String> comparator) {
+		super(data, col);
+		this.comparator = comparator;
+		attach();
+	}
+
+	/**
+	 * Zeilen mit Zelleninhalt key.
+	 * @param key Zelleninhalt.
+	 * @return aufsteigende Zeilenindizes.
+	 */
+	public int[] rows(String key) {
+		return Arrays.copyOfRange(rows, lowerBound(key), upperBound(key));
+	}
+
+	/**
+	 * Zeilen mit Zelleninhalt in [from, to).
+	 * @param from untere Grenze inklusive oder null für unbeschränkt.
+	 * @param to obere Grenze exklusive oder null für unbeschränkt.
+	 * @return Zeilenindizes in Reihenfolge der Zelleninhalte.
+	 */
+	public int[] range(String from, String to) {
+		int start = from != null ? lowerBound(from) : firstNonNull();
+		int end = to != null ? lowerBound(to) : size;
+		return start < end ? Arrays.copyOfRange(rows, start, end) : new int[0];
+	}
+
+	/**
+	 * Zeilen mit Zelleninhalt, der mit prefix beginnt. Nur für lexikographische Ordnung sinnvoll.
+	 * @param prefix Präfix.
+	 * @return Zeilenindizes in Reihenfolge der Zelleninhalte.
+	 */
+	public int[] prefix(String prefix) {
+		int start = lowerBound(prefix);
+		int end = start;
+		while(end < size && keys[end].startsWith(prefix)) {
+			end++;
+		}
+		return Arrays.copyOfRange(rows, start, end);
+	}
+
+	/**
+	 * @return Kleinster Zelleninhalt ungleich null oder null, falls alle Zellen leer.
+	 */
+	public String minKey() {
+		int first = firstNonNull();
+		return first < size ? keys[first] : null;
+	}
+
+	/**
+	 * @return Größter Zelleninhalt oder null, falls alle Zellen leer.
+	 */
+	public String maxKey() {
+		return size > 0 ? keys[size - 1] : null;
+	}
+
+	/**
+	 * @return alle Zeilenindizes sortiert nach Zelleninhalt.
+	 */
+	public int[] sortedRows() {
+		return Arrays.copyOf(rows, size);
+	}
+
+	@Override
+	protected void build() {
+		int n = data.rowCount();
+		final String[] cells = new String[n];
+		Integer[] order = new Integer[n];
+		for(int row = 0; row < n; row++) {
+			cells[row] = data.getCellAt(row, col);
+			order[row] = row;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int c = compareKeys(cells[a], cells[b]);
+				return c != 0 ? c : a - b;
+			}
+		});
+		keys = new String[n];
+		rows = new int[n];
+		for(int i = 0; i < n; i++) {
+			keys[i] = cells[order[i]];
+			rows[i] = order[i];
+		}
+		size = n;
+	}
+
+	@Override
+	protected void add(String key, int row) {
+		int pos = -find(key, row) - 1;
+		if(pos < 0) {
+			return;
+		}
+		if(size == keys.length) {
+			int ncap = Math.max(8, size * 2);
+			keys = Arrays.copyOf(keys, ncap);
+			rows = Arrays.copyOf(rows, ncap);
+		}
+		System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+		System.arraycopy(rows, pos, rows, pos + 1, size - pos);
+		keys[pos] = key;
+		rows[pos] = row;
+		size++;
+	}
+
+	@Override
+	protected void remove(String key, int row) {
+		int pos = find(key, row);
+		if(pos < 0) {
+			return;
+		}
+		System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+		System.arraycopy(rows, pos + 1, rows, pos, size - pos - 1);
+		size--;
+		keys[size] = null;
+	}
+
+	@Override
+	protected void shift(int fromRow, int delta) {
+		for(int i = 0; i < size; i++) {
+			if(rows[i] >= fromRow) {
+				rows[i] += delta;
+			}
+		}
+	}
+
+	/**
+	 * Binärsuche nach Eintrag (key, row).
+	 * @return Position oder -(Einfügeposition)-1.
+	 */
+	private int find(String key, int row) {
+		int lo = 0, hi = size - 1;
+		while(lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int c = compareKeys(keys[mid], key);
+			if(c == 0) {
+				c = rows[mid] < row ? -1 : (rows[mid] == row ? 0 : 1);
+			}
+			if(c < 0) {
+				lo = mid + 1;
+			} else if(c > 0) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(lo + 1);
+	}
+
+	/**
+	 * @return erste Position mit Zelleninhalt größer oder gleich key.
+	 */
+	private int lowerBound(String key) {
+		int lo = 0, hi = size;
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(compareKeys(keys[mid], key) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return erste Position mit Zelleninhalt größer als key.
+	 */
+	private int upperBound(String key) {
+		int lo = 0, hi = size;
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(compareKeys(keys[mid], key) <= 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private int firstNonNull() {
+		return upperBound(null);
+	}
+
+	private int compareKeys(String a, String b) {
+		if(a == null || b == null) {
+			return a == null ? (b == null ? 0 : -1) : 1;
+		}
+		return comparator != null ? comparator.compare(a, b) : a.compareTo(b);
+	}
+}
@@ -0,0 +1,514 @@
+package org.andreschnabel.pecker.serialization;
+
+import org.andreschnabel.pecker.threading.FutureHelpers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stabile Sortierung von CSV-Daten nach einer oder mehreren Spalten.
+ *
+ * CSV-Dateien werden extern sortiert: Die Eingabe wird zeilenweise gelesen, Läufe bis zum Speicherbudget
+ * werden im Speicher sortiert (optional parallel) und in temporäre Dateien ausgelagert, die anschließend
+ * über eine Prioritätswarteschlange zusammengeführt werden. Die Datei muss daher nicht in den Heap passen.
+ *
+ * Numerische Schlüssel werden je Zeile nur einmal geparst. Leere Zellen stehen bei aufsteigender
+ * Sortierung vorn.
+ *
+ * Beispiel: new CsvSorter().by("Stadt").by("Alter", CsvSorter.KeyType.NUMERIC, false).sort(in, out)
+ */
+public class CsvSorter {
+
+	/**
+	 * Vergleichsart einer Schlüsselspalte.
+	 */
+	public static enum KeyType {
+		/**
+		 * Lexikographisch.
+		 */
+		STRING,
+
+		/**
+		 * Als Gleitkommazahl.
+		 */
+		NUMERIC
+	}
+
+	/**
+	 * Höchstzahl gleichzeitig zusammengeführter Läufe. Bei mehr Läufen wird in mehreren Durchgängen zusammengeführt.
+	 */
+	public static final int MAX_MERGE_FAN_IN = 64;
+
+	/**
+	 * Geschätzter Speicherbedarf einer Zeile bzw. Zelle ohne Zeichen in Bytes.
+	 */
+	private static final int ROW_OVERHEAD_BYTES = 64;
+	private static final int CELL_OVERHEAD_BYTES = 40;
+
+	private final List<SortKey> keys = new ArrayList<SortKey>();
+	private long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+	private File tempDir;
+	private int numThreads = 1;
+
+	/**
+	 * Sortiere zusätzlich lexikographisch aufsteigend nach Spalte.
+	 * @param header Spaltenbezeichner.
+	 * @return dieser Sortierer.
+	 */
+	public CsvSorter by(String header) {
+		return by(header, KeyType.STRING, true);
+	}
+
+	/**
+	 * Sortiere zusätzlich nach Spalte.
+	 * @param header Spaltenbezeichner.
+	 * @param type Vergleichsart.
+	 * @param ascending true für aufsteigend.
+	 * @return dieser Sortierer.
+	 */
+	public CsvSorter by(String header, KeyType type, boolean ascending) {
+		keys.add(new SortKey(header, type, null, ascending));
+		return this;
+	}
+
+	/**
+	 * Sortiere zusätzlich nach Spalte mit eigener Ordnung.
+	 * @param header Spaltenbezeichner.
+	 * @param comparator Ordnung der Zelleninhalte. Erhält keine leeren Zellen (null).
+	 * @return dieser Sortierer.
+	 */
+	public CsvSorter by(String header, Comparator<String> comparator) {
+		keys.add(new SortKey(header, null, comparator, true));
+		return this;
+	}
+
+	/**
+	 * @param bytes geschätzter Speicher für einen Lauf. Standard ist ein Viertel des maximalen Heaps.
+	 * @return dieser Sortierer.
+	 */
+	public CsvSorter memoryBudget(long bytes) {
+		this.memoryBudget = bytes;
+		return this;
+	}
+
+	/**
+	 * @param tempDir Verzeichnis für Läufe oder null für das temporäre Verzeichnis des Systems.
+	 * @return dieser Sortierer.
+	 */
+	public CsvSorter tempDir(File tempDir) {
+		this.tempDir = tempDir;
+		return this;
+	}
+
+	/**
+	 * @param numThreads Anzahl der Threads, auf die jeder Lauf zum Sortieren aufgeteilt wird. Standard ist 1.
+	 * @return dieser Sortierer.
+	 */
+	public CsvSorter parallel(int numThreads) {
+		this.numThreads = numThreads;
+		return this;
+	}
+
+	/**
+	 * Sortiere CSV-Daten im Speicher.
+	 * @param data CSV-Daten.
+	 * @return neue CSV-Daten mit sortierten Kopien der Zeilen. Änderungen daran wirken sich nicht auf data aus.
+	 */
+	public CsvData sort(CsvData data) {
+		BoundKey[] bound = bind(data.getHeaders());
+		Entry[] entries = new Entry[data.rowCount()];
+		for(int row = 0; row < entries.length; row++) {
+			entries[row] = new Entry(data.getRow(row), bound);
+		}
+		Arrays.sort(entries, new EntryComparator(bound));
+
+		List<String[]> rows = new ArrayList<String[]>(entries.length + 1);
+		rows.add(data.getHeaders().clone());
+		for(Entry entry : entries) {
+			rows.add(entry.row.clone());
+		}
+		CsvData result = new CsvData(rows);
+		result.title = data.title;
+		return result;
+	}
+
+	/**
+	 * Sortiere CSV-Datei extern.
+	 * @param in Eingabedatei.
+	 * @param out Ausgabedatei. Wird überschrieben.
+	 * @throws Exception Lese-, Format- oder Schreibfehler.
+	 */
+	public void sort(File in, File out) throws Exception {
+		List<File> runs = new ArrayList<File>();
+		CsvReader reader = new CsvReader(in);
+		ExecutorService pool = numThreads > 1 ? Executors.newFixedThreadPool(numThreads) : null;
+		try {
+			String[] headers = reader.getHeaders();
+			BoundKey[] bound = bind(headers);
+			EntryComparator comparator = new EntryComparator(bound);
+
+			List<Entry> buffer = new ArrayList<Entry>();
+			long bufferBytes = 0;
+			String[] row;
+			while((row = reader.readRow()) != null) {
+				buffer.add(new Entry(row, bound));
+				bufferBytes += estimateBytes(row);
+				if(bufferBytes >= memoryBudget) {
+					spillRuns(buffer, comparator, pool, runs);
+					buffer.clear();
+					bufferBytes = 0;
+				}
+			}
+
+			if(runs.isEmpty()) {
+				// Alles passt in einen Lauf: direkt schreiben.
+				Entry[] entries = buffer.toArray(new Entry[buffer.size()]);
+				Arrays.sort(entries, comparator);
+				CsvWriter writer = new CsvWriter(out);
+				try {
+					writer.writeRow(headers);
+					for(Entry entry : entries) {
+						writer.writeRow(entry.row);
+					}
+				} finally {
+					writer.close();
+				}
+				return;
+			}
+			if(!buffer.isEmpty()) {
+				spillRuns(buffer, comparator, pool, runs);
+				buffer.clear();
+			}
+
+			while(runs.size() > MAX_MERGE_FAN_IN) {
+				List<File> merged = new ArrayList<File>();
+				for(int i = 0; i < runs.size(); i += MAX_MERGE_FAN_IN) {
+					List<File> group = runs.subList(i, Math.min(runs.size(), i + MAX_MERGE_FAN_IN));
+					File run = createRunFile();
+					merged.add(run);
+					RunWriter runWriter = new RunWriter(run);
+					try {
+						merge(group, bound, comparator, runWriter);
+					} finally {
+						runWriter.close();
+					}
+					deleteAll(group);
+				}
+				runs = merged;
+			}
+
+			final CsvWriter writer = new CsvWriter(out);
+			try {
+				writer.writeRow(headers);
+				merge(runs, bound, comparator, new RowSink() {
+					@Override
+					public void write(String[] row) throws IOException {
+						writer.writeRow(row);
+					}
+				});
+			} finally {
+				writer.close();
+			}
+		} finally {
+			reader.close();
+			if(pool != null) {
+				pool.shutdownNow();
+			}
+			deleteAll(runs);
+		}
+	}
+
+	private BoundKey[] bind(String[] headers) {
+		CsvSchema schema = new CsvSchema(headers);
+		BoundKey[] bound = new BoundKey[keys.size()];
+		int numericSlots = 0;
+		for(int k = 0; k < bound.length; k++) {
+			SortKey key = keys.get(k);
+			boolean numeric = key.type == KeyType.NUMERIC;
+			bound[k] = new BoundKey(key, schema.column(key.header).index(), numeric ? numericSlots++ : -1);
+		}
+		return bound;
+	}
+
+	private static long estimateBytes(String[] row) {
+		long bytes = ROW_OVERHEAD_BYTES;
+		for(String cell : row) {
+			bytes += CELL_OVERHEAD_BYTES + (cell != null ? 2L * cell.length() : 0);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Sortiere gepufferte Zeilen und schreibe sie als einen Lauf oder, mit Threadpool, als einen Lauf je Thread.
+	 */
+	private void spillRuns(List<Entry> buffer, final EntryComparator comparator, ExecutorService pool, List<File> runs) throws Exception {
+		final Entry[] entries = buffer.toArray(new Entry[buffer.size()]);
+		int numSlices = pool != null ? Math.max(1, Math.min(numThreads, entries.length)) : 1;
+		final File[] sliceRuns = new File[numSlices];
+		for(int s = 0; s < numSlices; s++) {
+			sliceRuns[s] = createRunFile();
+			runs.add(sliceRuns[s]);
+		}
+
+		if(numSlices == 1) {
+			writeSortedRun(entries, 0, entries.length, comparator, sliceRuns[0]);
+			return;
+		}
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(numSlices);
+		for(int s = 0; s < numSlices; s++) {
+			final int from = (int)((long)entries.length * s / numSlices);
+			final int to = (int)((long)entries.length * (s + 1) / numSlices);
+			final File run = sliceRuns[s];
+			futures.add(pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					writeSortedRun(entries, from, to, comparator, run);
+					return null;
+				}
+			}));
+		}
+		for(Future<Void> future : futures) {
+			FutureHelpers.getUnwrapped(future);
+		}
+	}
+
+	private static void writeSortedRun(Entry[] entries, int from, int to, EntryComparator comparator, File run) throws IOException {
+		Arrays.sort(entries, from, to, comparator);
+		RunWriter writer = new RunWriter(run);
+		try {
+			for(int i = from; i < to; i++) {
+				writer.write(entries[i].row);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * K-Wege-Zusammenführung. Bei gleichen Schlüsseln gewinnt der frühere Lauf, sodass die Sortierung stabil bleibt.
+	 */
+	private static void merge(List<File> runs, BoundKey[] bound, final EntryComparator comparator, RowSink sink) throws IOException {
+		PriorityQueue<RunCursor> queue = new PriorityQueue<RunCursor>(Math.max(1, runs.size()), new Comparator<RunCursor>() {
+			@Override
+			public int compare(RunCursor a, RunCursor b) {
+				int c = comparator.compare(a.current, b.current);
+				return c != 0 ? c : a.index - b.index;
+			}
+		});
+		List<RunCursor> cursors = new ArrayList<RunCursor>(runs.size());
+		try {
+			for(int i = 0; i < runs.size(); i++) {
+				RunCursor cursor = new RunCursor(runs.get(i), i, bound);
+				cursors.add(cursor);
+				if(cursor.advance()) {
+					queue.add(cursor);
+				}
+			}
+			while(!queue.isEmpty()) {
+				RunCursor cursor = queue.poll();
+				sink.write(cursor.current.row);
+				if(cursor.advance()) {
+					queue.add(cursor);
+				}
+			}
+		} finally {
+			for(RunCursor cursor : cursors) {
+				cursor.close();
+			}
+		}
+	}
+
+	private File createRunFile() throws IOException {
+		File run = File.createTempFile("csvsort", ".run", tempDir);
+		run.deleteOnExit();
+		return run;
+	}
+
+	private static void deleteAll(List<File> files) {
+		for(File f : files) {
+			f.delete();
+		}
+	}
+
+	private static class SortKey {
+		private final String header;
+		private final KeyType type;
+		private final Comparator<String> comparator;
+		private final boolean ascending;
+
+		private SortKey(String header, KeyType type, Comparator<String> comparator, boolean ascending) {
+			this.header = header;
+			this.type = type;
+			this.comparator = comparator;
+			this.ascending = ascending;
+		}
+	}
+
+	/**
+	 * Sortierschlüssel mit aufgelöstem Spaltenindex.
+	 */
+	private static class BoundKey {
+		private final SortKey key;
+		private final int col;
+		private final int numericSlot;
+
+		private BoundKey(SortKey key, int col, int numericSlot) {
+			this.key = key;
+			this.col = col;
+			this.numericSlot = numericSlot;
+		}
+	}
+
+	/**
+	 * Zeile mit vorab geparsten numerischen Schlüsseln. NaN steht für leere Zellen.
+	 */
+	private static class Entry {
+		private final String[] row;
+		private final double[] numbers;
+
+		private Entry(String[] row, BoundKey[] bound) {
+			this.row = row;
+			int numeric = 0;
+			for(BoundKey key : bound) {
+				if(key.numericSlot >= 0) {
+					numeric++;
+				}
+			}
+			numbers = numeric > 0 ? new double[numeric] : null;
+			for(BoundKey key : bound) {
+				if(key.numericSlot >= 0) {
+					String cell = row[key.col];
+					numbers[key.numericSlot] = (cell == null || cell.length() == 0) ? Double.NaN : CsvNumbers.parseDouble(cell, 0, cell.length());
+				}
+			}
+		}
+	}
+
+	private static class EntryComparator implements Comparator<Entry> {
+		private final BoundKey[] bound;
+
+		private EntryComparator(BoundKey[] bound) {
+			this.bound = bound;
+		}
+
+		@Override
+		public int compare(Entry a, Entry b) {
+			for(BoundKey key : bound) {
+				int c;
+				if(key.numericSlot >= 0) {
+					c = compareNumbers(a.numbers[key.numericSlot], b.numbers[key.numericSlot]);
+				} else {
+					c = compareCells(a.row[key.col], b.row[key.col], key.key.comparator);
+				}
+				if(c != 0) {
+					return key.key.ascending ? c : -c;
+				}
+			}
+			return 0;
+		}
+
+		private static int compareNumbers(double a, double b) {
+			boolean aMissing = Double.isNaN(a), bMissing = Double.isNaN(b);
+			if(aMissing || bMissing) {
+				return aMissing ? (bMissing ? 0 : -1) : 1;
+			}
+			return a < b ? -1 : (a > b ? 1 : 0);
+		}
+
+		private static int compareCells(String a, String b, Comparator<String> comparator) {
+			if(a == null || b == null) {
+				return a == null ? (b == null ? 0 : -1) : 1;
+			}
+			return comparator != null ? comparator.compare(a, b) : a.compareTo(b);
+		}
+	}
+
+	private static interface RowSink {
+		public void write(String[] row) throws IOException;
+	}
+
+	/**
+	 * Schreibt Zeilen verlustfrei binär in eine Laufdatei.
+	 */
+	private static class RunWriter implements RowSink {
+		private final DataOutputStream out;
+
+		private RunWriter(File run) throws IOException {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+		}
+
+		@Override
+		public void write(String[] row) throws IOException {
+			out.writeInt(row.length);
+			for(String cell : row) {
+				if(cell == null) {
+					out.writeInt(-1);
+				} else {
+					out.writeInt(cell.length());
+					out.writeChars(cell);
+				}
+			}
+		}
+
+		private void close() throws IOException {
+			out.writeInt(-1);
+			out.close();
+		}
+	}
+
+	/**
+	 * Liest Laufdatei zeilenweise.
+	 */
+	private static class RunCursor {
+		private final DataInputStream in;
+		private final int index;
+		private final BoundKey[] bound;
+		private Entry current;
+
+		private RunCursor(File run, int index, BoundKey[] bound) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+			this.index = index;
+			this.bound = bound;
+		}
+
+		private boolean advance() throws IOException {
+			int numCells = in.readInt();
+			if(numCells < 0) {
+				current = null;
+				return false;
+			}
+			String[] row = new String[numCells];
+			for(int col = 0; col < numCells; col++) {
+				int len = in.readInt();
+				if(len >= 0) {
+					char[] chars = new char[len];
+					for(int i = 0; i < len; i++) {
+						chars[i] = in.readChar();
+					}
+					row[col] = new String(chars);
+				}
+			}
+			current = new Entry(row, bound);
+			return true;
+		}
+
+		private void close() throws IOException {
+			in.close();
+		}
+	}
+}
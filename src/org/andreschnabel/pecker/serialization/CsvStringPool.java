@@ -0,0 +1,192 @@
+package org.andreschnabel.pecker.serialization;
+
+/**
+ * Spaltenweiser Pool für Zelleninhalte beim Parsen.
+ *
+ * Gleiche Inhalte einer Spalte teilen sich eine String-Instanz, statt für jede Zelle eine neue zu erzeugen.
+ * Die Suche erfolgt direkt auf dem Zeichenpuffer des Parsers, sodass für bereits bekannte Werte gar nichts allokiert wird.
+ * Spalten mit mehr als maxDistinct verschiedenen Werten (z.B. IDs) werden nicht weiter gepoolt.
+ *
+ * Nicht threadsicher. Ein Pool je Parser.
+ */
+public class CsvStringPool {
+
+	/**
+	 * Standardobergrenze für verschiedene Werte je Spalte.
+	 */
+	public static final int DEFAULT_MAX_DISTINCT = 1 << 16;
+
+	/**
+	 * Geschätzter Speicherbedarf eines String-Objekts mit Zeichenarray ohne die Zeichen selbst in Bytes.
+	 */
+	private static final int STRING_OVERHEAD_BYTES = 40;
+
+	private final int maxDistinct;
+	private ColumnPool[] columns = new ColumnPool[0];
+
+	/**
+	 * Konstruktor
+	 */
+	public CsvStringPool() {
+		this(DEFAULT_MAX_DISTINCT);
+	}
+
+	/**
+	 * Konstruktor
+	 * @param maxDistinct Obergrenze für verschiedene Werte je Spalte, ab der die Spalte nicht mehr gepoolt wird.
+	 */
+	public CsvStringPool(int maxDistinct) {
+		this.maxDistinct = maxDistinct;
+	}
+
+	/**
+	 * Liefere gepoolte Zeichenkette mit Inhalt buf[off, off+len).
+	 * @param column Spaltenindex.
+	 * @param buf Zeichenpuffer.
+	 * @param off Startindex.
+	 * @param len Länge.
+	 * @return Zeichenkette. Für bekannte Werte der Spalte immer dieselbe Instanz.
+	 */
+	public String intern(int column, char[] buf, int off, int len) {
+		return columnPool(column).intern(buf, off, len);
+	}
+
+	/**
+	 * @param column Spaltenindex.
+	 * @return Anzahl verschiedener Werte im Wörterbuch der Spalte.
+	 */
+	public int dictionarySize(int column) {
+		return column < columns.length && columns[column] != null ? columns[column].size : 0;
+	}
+
+	/**
+	 * @param column Spaltenindex.
+	 * @return true, gdw. Spalte wegen zu vieler verschiedener Werte nicht mehr gepoolt wird.
+	 */
+	public boolean isDisabled(int column) {
+		return column < columns.length && columns[column] != null && columns[column].slots == null;
+	}
+
+	/**
+	 * @param column Spaltenindex.
+	 * @return Anzahl der Zellen, welche eine vorhandene Instanz wiederverwendet haben.
+	 */
+	public long hits(int column) {
+		return column < columns.length && columns[column] != null ? columns[column].hits : 0;
+	}
+
+	/**
+	 * @return Geschätzte Anzahl eingesparter Bytes über alle Spalten.
+	 */
+	public long bytesSaved() {
+		long sum = 0;
+		for(ColumnPool pool : columns) {
+			if(pool != null) {
+				sum += pool.bytesSaved;
+			}
+		}
+		return sum;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for(int col = 0; col < columns.length; col++) {
+			sb.append("column ").append(col).append(": ").append(dictionarySize(col)).append(" distinct, ")
+					.append(hits(col)).append(" hits").append(isDisabled(col) ? " (disabled)" : "").append('\n');
+		}
+		sb.append("bytes saved: ").append(bytesSaved()).append('\n');
+		return sb.toString();
+	}
+
+	private ColumnPool columnPool(int column) {
+		if(column >= columns.length) {
+			ColumnPool[] ncolumns = new ColumnPool[column + 1];
+			System.arraycopy(columns, 0, ncolumns, 0, columns.length);
+			columns = ncolumns;
+		}
+		if(columns[column] == null) {
+			columns[column] = new ColumnPool();
+		}
+		return columns[column];
+	}
+
+	/**
+	 * Hashtabelle mit offener Adressierung für eine Spalte.
+	 */
+	private class ColumnPool {
+		private String[] slots = new String[64];
+		private int[] hashes = new int[64];
+		private int size;
+		private long hits;
+		private long bytesSaved;
+
+		private String intern(char[] buf, int off, int len) {
+			if(slots == null) {
+				return new String(buf, off, len);
+			}
+
+			int h = 0;
+			for(int i = off; i < off + len; i++) {
+				h = 31 * h + buf[i];
+			}
+
+			int mask = slots.length - 1;
+			int idx = h & mask;
+			String candidate;
+			while((candidate = slots[idx]) != null) {
+				if(hashes[idx] == h && matches(candidate, buf, off, len)) {
+					hits++;
+					bytesSaved += STRING_OVERHEAD_BYTES + 2 * len;
+					return candidate;
+				}
+				idx = (idx + 1) & mask;
+			}
+
+			String str = new String(buf, off, len);
+			if(size + 1 > maxDistinct) {
+				// Zu viele verschiedene Werte. Pool lohnt sich nicht.
+				slots = null;
+				hashes = null;
+				return str;
+			}
+			slots[idx] = str;
+			hashes[idx] = h;
+			size++;
+			if(size * 2 > slots.length) {
+				rehash();
+			}
+			return str;
+		}
+
+		private boolean matches(String candidate, char[] buf, int off, int len) {
+			if(candidate.length() != len) {
+				return false;
+			}
+			for(int i = 0; i < len; i++) {
+				if(candidate.charAt(i) != buf[off + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void rehash() {
+			String[] oldSlots = slots;
+			int[] oldHashes = hashes;
+			slots = new String[oldSlots.length * 2];
+			hashes = new int[oldSlots.length * 2];
+			int mask = slots.length - 1;
+			for(int i = 0; i < oldSlots.length; i++) {
+				if(oldSlots[i] != null) {
+					int idx = oldHashes[i] & mask;
+					while(slots[idx] != null) {
+						idx = (idx + 1) & mask;
+					}
+					slots[idx] = oldSlots[i];
+					hashes[idx] = oldHashes[i];
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,269 @@
+package org.andreschnabel.pecker.serialization;
+
+import org.andreschnabel.pecker.functional.IAction;
+import org.andreschnabel.pecker.threading.ContinuousTask;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Verfolgt eine CSV-Datei, an die laufend angehängt wird, und liest nur neu angehängte vollständige Zeilen.
+ *
+ * Merkt sich die Byteposition bis zu der gelesen wurde und den Zustand von Zeichendekodierer und CsvParser,
+ * sodass angefangene Zeilen erst geliefert werden, wenn sie vollständig sind.
+ * Wird die Datei kürzer oder ändern sich ihre ersten Bytes (Kürzung oder Rotation), wird neu von vorne gelesen
+ * und vorher onRestart aufgerufen.
+ *
+ * Zeilen werden an CSV-Daten angehängt oder an eine Aktion übergeben.
+ * Mit execute wird im Hintergrund gepollt, Zugriffe anderer Threads auf die Ziel-CSV-Daten müssen auf diesen synchronisieren.
+ */
+public class CsvTailFollower extends ContinuousTask<Integer> {
+
+	/**
+	 * Standardwartezeit in Millisekunden, wenn keine neuen Zeilen vorliegen.
+	 */
+	public static final long DEFAULT_POLL_INTERVAL = 500;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int FINGERPRINT_SIZE = 256;
+
+	private final File file;
+	private final CsvData target;
+	private final IAction<String[]> rowAction;
+	private long pollInterval = DEFAULT_POLL_INTERVAL;
+
+	private final CharsetDecoder decoder;
+	private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+	private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+	private long offset;
+	private byte[] fingerprint = new byte[0];
+	private final StringBuilder headerText = new StringBuilder();
+	private String[] headers;
+	private CsvParser parser;
+
+	/**
+	 * Konstruktor
+	 * @param file verfolgte CSV-Datei.
+	 * @param target CSV-Daten mit gleichen Spaltenbezeichnern, an die neue Zeilen angehängt werden.
+	 */
+	public CsvTailFollower(File file, CsvData target) {
+		this(file, target, null);
+	}
+
+	/**
+	 * Konstruktor
+	 * @param file verfolgte CSV-Datei.
+	 * @param rowAction Aktion, welche jede neue Zeile erhält.
+	 */
+	public CsvTailFollower(File file, IAction<String[]> rowAction) {
+		this(file, null, rowAction);
+	}
+
+	private CsvTailFollower(File file, CsvData target, IAction<String[]> rowAction) {
+		this.file = file;
+		this.target = target;
+		this.rowAction = rowAction;
+		this.decoder = Charset.defaultCharset().newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * @param pollInterval Wartezeit in Millisekunden, wenn keine neuen Zeilen vorliegen.
+	 */
+	public void setPollInterval(long pollInterval) {
+		this.pollInterval = pollInterval;
+	}
+
+	/**
+	 * @return Spaltenbezeichner der Datei oder null, falls Kopfzeile noch nicht vollständig gelesen.
+	 */
+	public String[] getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * @return Anzahl bisher gelesener Bytes der Datei.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Lies seit dem letzten Aufruf angehängte vollständige Zeilen und liefere sie aus.
+	 * @return Anzahl neuer Zeilen.
+	 * @throws Exception Lese- oder Formatfehler oder Fehler der Aktion.
+	 */
+	public int poll() throws Exception {
+		List<String[]> rows = new ArrayList<String[]>();
+		if(!file.exists()) {
+			if(offset > 0) {
+				restart();
+			}
+			return 0;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long length = raf.length();
+			if(length < offset || !Arrays.equals(fingerprint, readStart(raf, fingerprint.length))) {
+				restart();
+			}
+			raf.seek(offset);
+			while(offset < length) {
+				int n = raf.read(bytes.array(), bytes.position(), (int)Math.min(bytes.remaining(), length - offset));
+				if(n < 0) {
+					break;
+				}
+				offset += n;
+				bytes.position(bytes.position() + n);
+				bytes.flip();
+				decode(rows);
+				bytes.compact();
+			}
+			if(fingerprint.length < FINGERPRINT_SIZE && offset > fingerprint.length) {
+				fingerprint = readStart(raf, (int)Math.min(FINGERPRINT_SIZE, offset));
+			}
+		} finally {
+			raf.close();
+		}
+		deliver(rows);
+		return rows.size();
+	}
+
+	/**
+	 * Datei wurde gekürzt oder ersetzt, es wird neu von vorne gelesen.
+	 * Entfernt alle Zeilen aus den Ziel-CSV-Daten.
+	 */
+	protected void onRestart() {
+		if(target != null) {
+			synchronized(target) {
+				for(int row = target.rowCount() - 1; row >= 0; row--) {
+					target.removeRow(row);
+				}
+			}
+		}
+	}
+
+	@Override
+	public Integer iterateInBackground() {
+		try {
+			int numRows = poll();
+			if(numRows > 0) {
+				return numRows;
+			}
+			Thread.sleep(pollInterval);
+		} catch(InterruptedException e) {
+			dipose();
+		} catch(Exception e) {
+			e.printStackTrace();
+			try {
+				Thread.sleep(pollInterval);
+			} catch(InterruptedException e2) {
+				dipose();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Neue Zeilen wurden ausgeliefert.
+	 * @param numRows Anzahl neuer Zeilen.
+	 */
+	@Override
+	public void onSuccess(Integer numRows) {
+	}
+
+	private void restart() {
+		resetState();
+		onRestart();
+	}
+
+	private void resetState() {
+		offset = 0;
+		fingerprint = new byte[0];
+		decoder.reset();
+		bytes.clear();
+		headerText.setLength(0);
+		headers = null;
+		parser = null;
+	}
+
+	private static byte[] readStart(RandomAccessFile raf, int len) throws Exception {
+		byte[] start = new byte[(int)Math.min(len, raf.length())];
+		raf.seek(0);
+		raf.readFully(start);
+		return start;
+	}
+
+	private void decode(List<String[]> rows) throws Exception {
+		while(true) {
+			CoderResult result = decoder.decode(bytes, chars, false);
+			chars.flip();
+			parse(chars.array(), chars.position(), chars.limit(), rows);
+			chars.clear();
+			if(result.isUnderflow()) {
+				return;
+			}
+		}
+	}
+
+	private void parse(char[] buf, int from, int to, List<String[]> rows) throws Exception {
+		int pos = from;
+		if(headers == null) {
+			while(pos < to && buf[pos] != '\n') {
+				pos++;
+			}
+			if(pos == to) {
+				headerText.append(buf, from, to - from);
+				return;
+			}
+			headerText.append(buf, from, ++pos - from);
+			readHeaders();
+		}
+		while(pos < to) {
+			pos = parser.parse(buf, pos, to);
+			if(parser.hasRow()) {
+				rows.add(parser.takeRow());
+			}
+		}
+	}
+
+	private void readHeaders() throws Exception {
+		char[] text = headerText.toString().toCharArray();
+		parser = new CsvParser(CsvHelpers.countColumns(CharBuffer.wrap(text), 0, text.length - 1));
+		parser.parse(text, 0, text.length);
+		String[] fileHeaders = parser.takeRow();
+		if(target != null && !Arrays.equals(fileHeaders, target.getHeaders())) {
+			resetState();
+			throw new Exception("Headers of " + file.getName() + " do not match target data: " + Arrays.toString(fileHeaders));
+		}
+		headers = fileHeaders;
+	}
+
+	private void deliver(List<String[]> rows) throws Exception {
+		if(target != null) {
+			synchronized(target) {
+				for(String[] row : rows) {
+					int r = target.rowCount();
+					target.addRow(r);
+					for(int col = 0; col < row.length; col++) {
+						target.setCellAt(r, col, row[col]);
+					}
+				}
+			}
+		} else {
+			for(String[] row : rows) {
+				rowAction.invoke(row);
+			}
+		}
+	}
+}
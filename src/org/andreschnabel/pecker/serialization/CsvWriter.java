@@ -0,0 +1,321 @@
+package org.andreschnabel.pecker.serialization;
+
+import org.andreschnabel.pecker.functional.ITransform;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Schreibt CSV-Zeilen direkt in einen Writer.
+ *
+ * Zellen werden in einem Durchlauf ohne reguläre Ausdrücke und ohne Zwischen-Strings in einen
+ * wiederverwendeten Puffer maskiert. Zahlen werden direkt in den Puffer formatiert.
+ * Es wird nie die gesamte Ausgabe im Speicher aufgebaut.
+ */
+public class CsvWriter implements Closeable, Flushable {
+
+	/**
+	 * Maskierung von Zellen.
+	 */
+	public static enum Quoting {
+		/**
+		 * Format von CsvData.toString: Anführungszeichen entfernen, Zellen mit Komma in Anführungszeichen setzen.
+		 * Passt zu CsvHelpers.parseCsv.
+		 */
+		STRIP_QUOTES,
+
+		/**
+		 * RFC 4180: Zellen mit Komma, Anführungszeichen oder Zeilenumbruch in Anführungszeichen setzen
+		 * und enthaltene Anführungszeichen verdoppeln.
+		 */
+		RFC4180
+	}
+
+	/**
+	 * Standardgröße des Schreibpuffers in Zeichen.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	private final Writer out;
+	private final Quoting quoting;
+	private final char[] buf;
+	private int pos;
+	private boolean rowStarted;
+	private final char[] digits = new char[20];
+
+	/**
+	 * Konstruktor
+	 * @param out Ziel.
+	 */
+	public CsvWriter(Writer out) {
+		this(out, Quoting.STRIP_QUOTES);
+	}
+
+	/**
+	 * Konstruktor
+	 * @param out Ziel.
+	 * @param quoting Maskierung von Zellen.
+	 */
+	public CsvWriter(Writer out, Quoting quoting) {
+		this(out, quoting, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Konstruktor
+	 * @param out Ziel.
+	 * @param quoting Maskierung von Zellen.
+	 * @param bufferSize Größe des Schreibpuffers in Zeichen.
+	 */
+	public CsvWriter(Writer out, Quoting quoting, int bufferSize) {
+		this.out = out;
+		this.quoting = quoting;
+		this.buf = new char[Math.max(1, bufferSize)];
+	}
+
+	/**
+	 * Konstruktor
+	 * @param channel Ziel, z.B. FileChannel.
+	 * @param charsetName Zeichenkodierung.
+	 * @param quoting Maskierung von Zellen.
+	 */
+	public CsvWriter(WritableByteChannel channel, String charsetName, Quoting quoting) {
+		this(Channels.newWriter(channel, charsetName), quoting);
+	}
+
+	/**
+	 * Konstruktor
+	 * @param file Zieldatei. Wird überschrieben, bei Endung ".gz" gzip-komprimiert.
+	 * @throws Exception Schreibfehler.
+	 */
+	public CsvWriter(File file) throws Exception {
+		this(CsvHelpers.openWriter(file));
+	}
+
+	/**
+	 * Schreibe Zelle.
+	 * @param cell Zelleninhalt. null wird als leere Zelle geschrieben.
+	 * @throws IOException Schreibfehler.
+	 */
+	public void writeCell(String cell) throws IOException {
+		separate();
+		if(cell == null) {
+			return;
+		}
+
+		int len = cell.length();
+		boolean needsQuotes = false;
+		boolean hasQuote = false;
+		for(int i = 0; i < len; i++) {
+			char c = cell.charAt(i);
+			if(c == ',') {
+				needsQuotes = true;
+			} else if(c == '"') {
+				hasQuote = true;
+			} else if((c == '\n' || c == '\r') && quoting == Quoting.RFC4180) {
+				needsQuotes = true;
+			}
+		}
+		if(hasQuote && quoting == Quoting.RFC4180) {
+			needsQuotes = true;
+		}
+
+		if(needsQuotes) {
+			put('"');
+		}
+		if(!hasQuote) {
+			put(cell);
+		} else {
+			for(int i = 0; i < len; i++) {
+				char c = cell.charAt(i);
+				if(c != '"') {
+					put(c);
+				} else if(quoting == Quoting.RFC4180) {
+					put('"');
+					put('"');
+				}
+			}
+		}
+		if(needsQuotes) {
+			put('"');
+		}
+	}
+
+	/**
+	 * Schreibe ganze Zahl als Zelle ohne Zwischen-String.
+	 * @param value Zahl.
+	 * @throws IOException Schreibfehler.
+	 */
+	public void writeCell(long value) throws IOException {
+		separate();
+		if(value == Long.MIN_VALUE) {
+			put(Long.toString(value));
+			return;
+		}
+		if(value < 0) {
+			put('-');
+			value = -value;
+		}
+		int n = digits.length;
+		do {
+			digits[--n] = (char)('0' + value % 10);
+			value /= 10;
+		} while(value != 0);
+		while(n < digits.length) {
+			put(digits[n++]);
+		}
+	}
+
+	/**
+	 * Schreibe Gleitkommazahl als Zelle. Format wie Double.toString.
+	 * @param value Zahl.
+	 * @throws IOException Schreibfehler.
+	 */
+	public void writeCell(double value) throws IOException {
+		long integral = (long)value;
+		if(integral == value && Math.abs(value) < 1e7 && !(value == 0 && 1 / value < 0)) {
+			// Häufiger Fall ganzzahliger Werte: Double.toString liefert dafür "x.0".
+			writeCell(integral);
+			put('.');
+			put('0');
+		} else {
+			separate();
+			put(Double.toString(value));
+		}
+	}
+
+	/**
+	 * Beende aktuelle Zeile.
+	 * @throws IOException Schreibfehler.
+	 */
+	public void endRow() throws IOException {
+		put('\n');
+		rowStarted = false;
+	}
+
+	/**
+	 * Schreibe vollständige Zeile.
+	 * @param row Zelleninhalte.
+	 * @throws IOException Schreibfehler.
+	 */
+	public void writeRow(String[] row) throws IOException {
+		for(String cell : row) {
+			writeCell(cell);
+		}
+		endRow();
+	}
+
+	/**
+	 * Schreibe CSV-Daten inklusive Kopfzeile.
+	 * Spaltenweise Daten werden direkt aus den typisierten Spalten geschrieben.
+	 * @param data CSV-Daten.
+	 * @throws IOException Schreibfehler.
+	 */
+	public void writeData(CsvData data) throws IOException {
+		writeRow(data.getHeaders());
+		if(data instanceof ColumnarCsvData) {
+			writeColumnar((ColumnarCsvData)data);
+			return;
+		}
+		for(int row = 0; row < data.rowCount(); row++) {
+			writeRow(data.getRow(row));
+		}
+	}
+
+	private void writeColumnar(ColumnarCsvData data) throws IOException {
+		CsvColumn[] columns = new CsvColumn[data.columnCount()];
+		for(int col = 0; col < columns.length; col++) {
+			columns[col] = data.getTypedColumn(col);
+		}
+		for(int row = 0; row < data.rowCount(); row++) {
+			for(CsvColumn column : columns) {
+				if(column.isMissing(row)) {
+					writeCell(column.get(row));
+					continue;
+				}
+				switch(column.getType()) {
+					case INT:
+					case LONG:
+						writeCell(column.getLong(row));
+						break;
+					case DOUBLE:
+						writeCell(column.getDouble(row));
+						break;
+					default:
+						writeCell(column.get(row));
+						break;
+				}
+			}
+			endRow();
+		}
+	}
+
+	/**
+	 * Schreibe Liste als CSV, ohne vorher CsvData aufzubauen. Gegenstück zu CsvData.fromList.
+	 * @param headers Spaltenbezeichnungen.
+	 * @param elemToRow Transformationsvorschrift von Listenelement zu CSV-Zeile.
+	 * @param elems Elemente.
+	 * @param <T> Typ der Elemente.
+	 * @throws Exception Schreibfehler oder Zeile mit falscher Länge.
+	 */
+	public <T> void writeList(String[] headers, ITransform<T, String[]> elemToRow, Iterable<T> elems) throws Exception {
+		writeRow(headers);
+		for(T elem : elems) {
+			String[] row = elemToRow.invoke(elem);
+			if(row.length != headers.length) {
+				throw new Exception("Row length is " + row.length + " but header count is " + headers.length);
+			}
+			writeRow(row);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.write(buf, 0, pos);
+		pos = 0;
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void separate() throws IOException {
+		if(rowStarted) {
+			put(',');
+		}
+		rowStarted = true;
+	}
+
+	private void put(char c) throws IOException {
+		if(pos == buf.length) {
+			out.write(buf, 0, pos);
+			pos = 0;
+		}
+		buf[pos++] = c;
+	}
+
+	private void put(String str) throws IOException {
+		int off = 0;
+		int len = str.length();
+		while(off < len) {
+			if(pos == buf.length) {
+				out.write(buf, 0, pos);
+				pos = 0;
+			}
+			int n = Math.min(len - off, buf.length - pos);
+			str.getChars(off, off + n, buf, pos);
+			pos += n;
+			off += n;
+		}
+	}
+}
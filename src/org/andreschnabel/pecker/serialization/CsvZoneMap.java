@@ -0,0 +1,389 @@
+package org.andreschnabel.pecker.serialization;
+
+import java.util.Arrays;
+
+/**
+ * Statistiken je Block aufeinanderfolgender Zeilen über eine Spalte (Zone Map).
+ *
+ * Je Block werden kleinster und größter Zahlenwert, kleinster und größter Zelleninhalt in lexikographischer Ordnung
+ * (bspw. für Datumsangaben im Format JJJJ-MM-TT) sowie die Anzahl leerer Zellen (null oder "") gespeichert.
+ * Bereichssuchen und Aggregate überspringen damit ganze Blöcke, die nicht passen können,
+ * und lesen nur die Zellen der übrigen Blöcke.
+ * Blöcke mit Zellen, die keine Zahl sind, werden bei Zahlenbereichen nie übersprungen.
+ *
+ * Beobachtet die Daten. setCellAt erweitert die Grenzen des Blocks direkt, nur wenn ein Grenzwert überschrieben
+ * oder Zeilen eingefügt bzw. entfernt werden, wird der Block als veraltet markiert und beim nächsten Zugriff neu berechnet.
+ * Speicherbedarf ist konstant je Block und damit klein gegenüber den Daten.
+ */
+public class CsvZoneMap implements ICsvDataListener {
+
+	/**
+	 * Standardanzahl Zeilen je Block.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+	private final CsvData data;
+	private final int col;
+	private final int blockSize;
+
+	private int numBlocks;
+	private double[] minValues = new double[0];
+	private double[] maxValues = new double[0];
+	private boolean[] nonNumeric = new boolean[0];
+	private String[] minKeys = new String[0];
+	private String[] maxKeys = new String[0];
+	private int[] nullCounts = new int[0];
+	private boolean[] dirty = new boolean[0];
+
+	/**
+	 * Konstruktor
+	 * @param data CSV-Daten.
+	 * @param col Spaltenindex.
+	 */
+	public CsvZoneMap(CsvData data, int col) {
+		this(data, col, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Konstruktor
+	 *
+	 * Berechnet alle Blöcke sofort und hält sie aktuell bis close.
+	 *
+	 * @param data CSV-Daten.
+	 * @param col Spaltenindex.
+	 * @param blockSize Anzahl Zeilen je Block.
+	 */
+	public CsvZoneMap(CsvData data, int col, int blockSize) {
+		if(col < 0 || col >= data.columnCount()) {
+			throw new IllegalArgumentException("No column with index " + col);
+		}
+		if(blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+		}
+		this.data = data;
+		this.col = col;
+		this.blockSize = blockSize;
+		resize();
+		for(int b = 0; b < numBlocks; b++) {
+			recompute(b);
+		}
+		data.addListener(this);
+	}
+
+	/**
+	 * Melde Zone Map ab. Danach wird sie nicht mehr aktualisiert.
+	 */
+	public void close() {
+		data.removeListener(this);
+	}
+
+	/**
+	 * @return Spaltenindex.
+	 */
+	public int getColumn() {
+		return col;
+	}
+
+	/**
+	 * @return Anzahl Zeilen je Block.
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * @return Anzahl Blöcke.
+	 */
+	public int blockCount() {
+		return numBlocks;
+	}
+
+	/**
+	 * @param block Blockindex.
+	 * @return kleinster Zahlenwert im Block oder +unendlich, falls keine Zahl enthalten.
+	 */
+	public double blockMin(int block) {
+		ensureClean(block);
+		return minValues[block];
+	}
+
+	/**
+	 * @param block Blockindex.
+	 * @return größter Zahlenwert im Block oder -unendlich, falls keine Zahl enthalten.
+	 */
+	public double blockMax(int block) {
+		ensureClean(block);
+		return maxValues[block];
+	}
+
+	/**
+	 * @param block Blockindex.
+	 * @return Anzahl leerer Zellen im Block.
+	 */
+	public int blockNullCount(int block) {
+		ensureClean(block);
+		return nullCounts[block];
+	}
+
+	/**
+	 * @param block Blockindex.
+	 * @param from untere Grenze inklusive.
+	 * @param to obere Grenze exklusive.
+	 * @return false, falls sicher keine Zelle des Blocks einen Zahlenwert in [from, to) hat.
+	 */
+	public boolean mayContain(int block, double from, double to) {
+		ensureClean(block);
+		return nonNumeric[block] || (minValues[block] < to && maxValues[block] >= from);
+	}
+
+	/**
+	 * @param block Blockindex.
+	 * @param from untere Grenze inklusive oder null für unbeschränkt.
+	 * @param to obere Grenze exklusive oder null für unbeschränkt.
+	 * @return false, falls sicher keine Zelle des Blocks einen Inhalt in [from, to) in lexikographischer Ordnung hat.
+	 */
+	public boolean mayContain(int block, String from, String to) {
+		ensureClean(block);
+		if(minKeys[block] == null) {
+			return false;
+		}
+		return (to == null || minKeys[block].compareTo(to) < 0) && (from == null || maxKeys[block].compareTo(from) >= 0);
+	}
+
+	/**
+	 * Zeilen mit Zahlenwert in [from, to). Zellen, die keine Zahl sind, werden ausgelassen.
+	 * @param from untere Grenze inklusive.
+	 * @param to obere Grenze exklusive.
+	 * @return aufsteigende Zeilenindizes.
+	 */
+	public int[] range(double from, double to) {
+		int[] rows = new int[16];
+		int n = 0;
+		for(int b = 0; b < numBlocks; b++) {
+			if(!mayContain(b, from, to)) {
+				continue;
+			}
+			for(int row = blockStart(b); row < blockEnd(b); row++) {
+				double value = numericValue(data.getCellAt(row, col));
+				if(value >= from && value < to) {
+					if(n == rows.length) {
+						rows = Arrays.copyOf(rows, n * 2);
+					}
+					rows[n++] = row;
+				}
+			}
+		}
+		return Arrays.copyOf(rows, n);
+	}
+
+	/**
+	 * Zeilen mit Zelleninhalt in [from, to) in lexikographischer Ordnung. Leere Zellen werden ausgelassen.
+	 * @param from untere Grenze inklusive oder null für unbeschränkt.
+	 * @param to obere Grenze exklusive oder null für unbeschränkt.
+	 * @return aufsteigende Zeilenindizes.
+	 */
+	public int[] range(String from, String to) {
+		int[] rows = new int[16];
+		int n = 0;
+		for(int b = 0; b < numBlocks; b++) {
+			if(!mayContain(b, from, to)) {
+				continue;
+			}
+			for(int row = blockStart(b); row < blockEnd(b); row++) {
+				String cell = data.getCellAt(row, col);
+				if(!isMissing(cell) && (from == null || cell.compareTo(from) >= 0) && (to == null || cell.compareTo(to) < 0)) {
+					if(n == rows.length) {
+						rows = Arrays.copyOf(rows, n * 2);
+					}
+					rows[n++] = row;
+				}
+			}
+		}
+		return Arrays.copyOf(rows, n);
+	}
+
+	/**
+	 * Anzahl Zeilen mit Zahlenwert in [from, to).
+	 * Blöcke, die vollständig im Bereich liegen, werden nur aus den Statistiken gezählt.
+	 * @param from untere Grenze inklusive.
+	 * @param to obere Grenze exklusive.
+	 * @return Anzahl Zeilen.
+	 */
+	public int count(double from, double to) {
+		int count = 0;
+		for(int b = 0; b < numBlocks; b++) {
+			if(!mayContain(b, from, to)) {
+				continue;
+			}
+			if(!nonNumeric[b] && minValues[b] >= from && maxValues[b] < to) {
+				count += blockEnd(b) - blockStart(b) - nullCounts[b];
+				continue;
+			}
+			for(int row = blockStart(b); row < blockEnd(b); row++) {
+				double value = numericValue(data.getCellAt(row, col));
+				if(value >= from && value < to) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return kleinster Zahlenwert der Spalte oder +unendlich, falls keine Zahl enthalten.
+	 */
+	public double min() {
+		double min = Double.POSITIVE_INFINITY;
+		for(int b = 0; b < numBlocks; b++) {
+			min = Math.min(min, blockMin(b));
+		}
+		return min;
+	}
+
+	/**
+	 * @return größter Zahlenwert der Spalte oder -unendlich, falls keine Zahl enthalten.
+	 */
+	public double max() {
+		double max = Double.NEGATIVE_INFINITY;
+		for(int b = 0; b < numBlocks; b++) {
+			max = Math.max(max, blockMax(b));
+		}
+		return max;
+	}
+
+	/**
+	 * @return Anzahl leerer Zellen der Spalte.
+	 */
+	public int nullCount() {
+		int count = 0;
+		for(int b = 0; b < numBlocks; b++) {
+			count += blockNullCount(b);
+		}
+		return count;
+	}
+
+	@Override
+	public void cellChanged(CsvData data, int row, int col, String oldContent, String newContent) {
+		if(col != this.col) {
+			return;
+		}
+		int b = row / blockSize;
+		if(dirty[b]) {
+			return;
+		}
+		double oldValue = numericValue(oldContent);
+		if(isMissing(oldContent)) {
+			nullCounts[b]--;
+		} else if(oldContent.equals(minKeys[b]) || oldContent.equals(maxKeys[b]) || oldValue == minValues[b] || oldValue == maxValues[b]) {
+			// Grenzwert entfernt, Grenzen könnten enger werden.
+			dirty[b] = true;
+			return;
+		}
+		include(b, newContent);
+	}
+
+	@Override
+	public void rowInserted(CsvData data, int row) {
+		resize();
+		markDirtyFrom(row / blockSize);
+	}
+
+	@Override
+	public void rowRemoved(CsvData data, int row, String[] oldRow) {
+		resize();
+		markDirtyFrom(row / blockSize);
+	}
+
+	@Override
+	public void columnAdded(CsvData data, int col) {
+		// Neue Spalten werden rechts angehängt, Spaltenindex bleibt gültig.
+	}
+
+	private int blockStart(int block) {
+		return block * blockSize;
+	}
+
+	private int blockEnd(int block) {
+		return Math.min((block + 1) * blockSize, data.rowCount());
+	}
+
+	private void resize() {
+		numBlocks = (data.rowCount() + blockSize - 1) / blockSize;
+		if(numBlocks > dirty.length) {
+			int ncap = Math.max(numBlocks, dirty.length * 2);
+			minValues = Arrays.copyOf(minValues, ncap);
+			maxValues = Arrays.copyOf(maxValues, ncap);
+			nonNumeric = Arrays.copyOf(nonNumeric, ncap);
+			minKeys = Arrays.copyOf(minKeys, ncap);
+			maxKeys = Arrays.copyOf(maxKeys, ncap);
+			nullCounts = Arrays.copyOf(nullCounts, ncap);
+			dirty = Arrays.copyOf(dirty, ncap);
+		}
+	}
+
+	private void markDirtyFrom(int block) {
+		for(int b = block; b < numBlocks; b++) {
+			dirty[b] = true;
+		}
+	}
+
+	private void ensureClean(int block) {
+		if(block < 0 || block >= numBlocks) {
+			throw new IndexOutOfBoundsException("Block: " + block + ", block count: " + numBlocks);
+		}
+		if(dirty[block]) {
+			recompute(block);
+		}
+	}
+
+	private void recompute(int b) {
+		minValues[b] = Double.POSITIVE_INFINITY;
+		maxValues[b] = Double.NEGATIVE_INFINITY;
+		nonNumeric[b] = false;
+		minKeys[b] = null;
+		maxKeys[b] = null;
+		nullCounts[b] = 0;
+		for(int row = blockStart(b); row < blockEnd(b); row++) {
+			include(b, data.getCellAt(row, col));
+		}
+		dirty[b] = false;
+	}
+
+	private void include(int b, String cell) {
+		if(isMissing(cell)) {
+			nullCounts[b]++;
+			return;
+		}
+		if(minKeys[b] == null || cell.compareTo(minKeys[b]) < 0) {
+			minKeys[b] = cell;
+		}
+		if(maxKeys[b] == null || cell.compareTo(maxKeys[b]) > 0) {
+			maxKeys[b] = cell;
+		}
+		double value = numericValue(cell);
+		if(Double.isNaN(value)) {
+			nonNumeric[b] = true;
+		} else {
+			minValues[b] = Math.min(minValues[b], value);
+			maxValues[b] = Math.max(maxValues[b], value);
+		}
+	}
+
+	static boolean isMissing(String cell) {
+		return cell == null || cell.length() == 0;
+	}
+
+	/**
+	 * @return Zahlenwert der Zelle oder NaN, falls leer oder keine Zahl.
+	 */
+	static double numericValue(String cell) {
+		if(isMissing(cell)) {
+			return Double.NaN;
+		}
+		try {
+			return CsvNumbers.parseDouble(cell, 0, cell.length());
+		} catch(NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+}
@@ -1,28 +1,677 @@
 package org.andreschnabel.pecker.serialization;
 
-import org.andreschnabel.pecker.functional.Func;
+import org.andreschnabel.pecker.collections.ChunkedList;
 import org.andreschnabel.pecker.functional.IPredicate;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Gefilterte CSV-Daten, in denen nur Zeilen, die Prädikat erfüllen, enthalten sind.
+ *
+ * Sicht auf die ursprünglichen Daten ohne Kopie der Zeilen. Die Auswahl wird als
+ * aufsteigend sortiertes Array von Zeilenindizes der Basisdaten gespeichert.
+ * Filter über Filter und Verknüpfungen mit and/or bilden direkt auf die Basisdaten ab.
+ * Zellinhalte, die über die Sicht gesetzt werden, werden in die Basisdaten geschrieben.
+ * Strukturelle Änderungen bleiben lokal: removeRow entfernt die Zeile nur aus der Sicht,
+ * addRow und addColumn lösen die Sicht von den Basisdaten, sie arbeitet danach auf einer eigenen Kopie ihrer Zeilen.
+ * Die Kopfzeile ist immer enthalten und wird nicht geprüft.
+ *
+ * Die Sicht beobachtet die Basisdaten und passt ihre Auswahl bei Änderungen inkrementell an:
+ * Nur geänderte Zeilen werden erneut geprüft, neu in die Basisdaten eingefügte (leere) Zeilen sind
+ * zunächst nicht enthalten. Aus der Sicht entfernte Zeilen werden nicht wieder aufgenommen. Mit addRow in die
+ * Basisdaten eingefügte Zeilen werden erst geprüft, wenn alle ihre Zellen gesetzt sind. Alle übrigen Zeilen werden
+ * bei jeder Änderung geprüft, das Prädikat muss dort also auch mit ungesetzten Zellen (null) umgehen, bspw. nach addColumn.
+ * Beobachter der Sicht erhalten Ereignisse mit Zeilenindizes der Sicht.
  */
 public class FilteredCsvData extends CsvData {
-	private final CsvData actualData;
+	private CsvData actualData;
+	private CsvData base;
+	private BaseListener listener;
+
+	/**
+	 * Indizes der enthaltenen Zeilen in base, aufsteigend. null gdw. alle Zeilen enthalten sind.
+	 */
+	private int[] selection;
+	private int size;
+
+	/**
+	 * Prädikat für Zeilen der Basisdaten inklusive aller Filter übergeordneter Sichten. null gdw. selection null.
+	 */
+	private IPredicate<String[]> rowPred;
+
+	/**
+	 * Mit removeRow aus der Sicht entfernte Zeilen der Basisdaten. Werden bei Änderungen nicht wieder aufgenommen.
+	 */
+	private SortedRows removed = new SortedRows();
+
+	/**
+	 * Mit addRow in die Basisdaten eingefügte Zeilen, deren Zellen noch nicht alle gesetzt wurden.
+	 */
+	private SortedRows pending = new SortedRows();
 
 	/**
 	 * Konstruktor
-	 * @param actualData ursprüngliche CSV-Daten.
+	 * @param actualData ursprüngliche CSV-Daten. Darf selbst gefiltert sein.
 	 */
 	public FilteredCsvData(CsvData actualData) {
-		super(new CsvData(actualData));
+		super((List<String[]>)null);
 		this.actualData = actualData;
+		this.base = (actualData instanceof FilteredCsvData) ? ((FilteredCsvData)actualData).base : actualData;
+		this.title = actualData.title;
+		if(actualData instanceof FilteredCsvData) {
+			FilteredCsvData parent = (FilteredCsvData)actualData;
+			if(parent.selection != null) {
+				setSelection(parent.selection.clone(), parent.size, parent.rowPred);
+			}
+			removed = parent.removed.copy();
+			pending = parent.pending.copy();
+		}
+		listener = new BaseListener(this);
+		base.addListener(listener);
+	}
+
+	private FilteredCsvData(CsvData base, int[] selection, int size, IPredicate<String[]> rowPred, SortedRows removed, SortedRows pending) {
+		this(base);
+		if(rowPred != null) {
+			setSelection(selection, size, rowPred);
+		}
+		this.removed = removed;
+		this.pending = pending;
 	}
 
 	/**
-	 * Enthalte nur noch Zeilen, die Prädikat erfüllen.
+	 * Enthalte nur noch Zeilen der ursprünglichen Daten, die Prädikat erfüllen.
+	 * Vorherige Filter dieser Sicht werden ersetzt.
 	 * @param rowPred Predikat für eine Zeile.
 	 */
 	public void filter(IPredicate<String[]> rowPred) {
-		rowList = Func.filter(rowPred, actualData.rowList);
+		int n = actualData.rowCount();
+		int[] nselection = new int[n];
+		int nsize = 0;
+		for(int row = 0; row < n; row++) {
+			if(rowPred.invoke(actualData.getRow(row))) {
+				nselection[nsize++] = baseRowOf(actualData, row);
+			}
+		}
+		setSelection(nselection, nsize, and(parentPred(), rowPred));
+		removed = parentRemoved();
+	}
+
+	/**
+	 * Hebe Filter auf. Enthält danach alle Zeilen der ursprünglichen Daten, auch zuvor mit removeRow entfernte.
+	 */
+	public void clearFilter() {
+		if(actualData instanceof FilteredCsvData) {
+			FilteredCsvData parent = (FilteredCsvData)actualData;
+			setSelection(parent.selection != null ? parent.selection.clone() : null, parent.size, parent.rowPred);
+		} else {
+			setSelection(null, 0, null);
+		}
+		removed = parentRemoved();
+	}
+
+	/**
+	 * Neue Sicht mit Zeilen, die in dieser Sicht enthalten sind und Prädikat erfüllen.
+	 * @param rowPred Predikat für eine Zeile.
+	 * @return gefilterte Sicht auf diese Sicht.
+	 */
+	public FilteredCsvData where(IPredicate<String[]> rowPred) {
+		FilteredCsvData view = new FilteredCsvData(this);
+		view.filter(rowPred);
+		return view;
+	}
+
+	/**
+	 * Schnitt mit anderer Sicht auf dieselben Basisdaten.
+	 * @param other andere Sicht.
+	 * @return neue Sicht mit Zeilen, die in beiden Sichten enthalten sind.
+	 */
+	public FilteredCsvData and(FilteredCsvData other) {
+		checkSameBase(other);
+		SortedRows bothRemoved = removed.union(other.removed);
+		SortedRows anyPending = pending.union(other.pending);
+		if(other.selection == null) {
+			return new FilteredCsvData(base, copySelection(), size, rowPred, bothRemoved, anyPending);
+		}
+		if(selection == null) {
+			return new FilteredCsvData(base, other.copySelection(), other.size, other.rowPred, bothRemoved, anyPending);
+		}
+		int[] result = new int[Math.min(size, other.size)];
+		int n = intersect(selection, size, other.selection, other.size, result);
+		return new FilteredCsvData(base, result, n, and(rowPred, other.rowPred), bothRemoved, anyPending);
+	}
+
+	/**
+	 * Neue Sicht mit Zeilen, die in dieser Sicht enthalten sind und in der Spalte einen Zahlenwert in [from, to) haben.
+	 * Nutzt die Zone Map der Basisdaten und liest nur Zellen von Blöcken, die passende Werte enthalten können.
+	 * @param header Spaltenbezeichner.
+	 * @param from untere Grenze inklusive.
+	 * @param to obere Grenze exklusive.
+	 * @return gefilterte Sicht auf die Basisdaten.
+	 */
+	public FilteredCsvData whereBetween(String header, final double from, final double to) {
+		final int col = base.column(header).index();
+		IPredicate<String[]> rangePred = new IPredicate<String[]>() {
+			@Override
+			public boolean invoke(String[] row) {
+				double value = CsvZoneMap.numericValue(row[col]);
+				return value >= from && value < to;
+			}
+		};
+		return withRows(base.zoneMap(header).range(from, to), rangePred);
+	}
+
+	/**
+	 * Neue Sicht mit Zeilen, die in dieser Sicht enthalten sind und in der Spalte einen Inhalt in [from, to)
+	 * in lexikographischer Ordnung haben, bspw. Datumsangaben im Format JJJJ-MM-TT.
+	 * Nutzt die Zone Map der Basisdaten und liest nur Zellen von Blöcken, die passende Werte enthalten können.
+	 * @param header Spaltenbezeichner.
+	 * @param from untere Grenze inklusive oder null für unbeschränkt.
+	 * @param to obere Grenze exklusive oder null für unbeschränkt.
+	 * @return gefilterte Sicht auf die Basisdaten.
+	 */
+	public FilteredCsvData whereBetween(String header, final String from, final String to) {
+		final int col = base.column(header).index();
+		IPredicate<String[]> rangePred = new IPredicate<String[]>() {
+			@Override
+			public boolean invoke(String[] row) {
+				String cell = row[col];
+				return !CsvZoneMap.isMissing(cell) && (from == null || cell.compareTo(from) >= 0) && (to == null || cell.compareTo(to) < 0);
+			}
+		};
+		return withRows(base.zoneMap(header).range(from, to), rangePred);
+	}
+
+	private FilteredCsvData withRows(int[] baseRows, IPredicate<String[]> pred) {
+		if(selection == null) {
+			return new FilteredCsvData(base, baseRows, baseRows.length, pred, removed.copy(), pending.copy());
+		}
+		int[] result = new int[Math.min(size, baseRows.length)];
+		int n = intersect(selection, size, baseRows, baseRows.length, result);
+		return new FilteredCsvData(base, result, n, and(rowPred, pred), removed.copy(), pending.copy());
+	}
+
+	private static int intersect(int[] a, int aSize, int[] b, int bSize, int[] result) {
+		int n = 0;
+		int i = 0, j = 0;
+		while(i < aSize && j < bSize) {
+			if(a[i] == b[j]) {
+				result[n++] = a[i];
+				i++;
+				j++;
+			} else if(a[i] < b[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Vereinigung mit anderer Sicht auf dieselben Basisdaten.
+	 * @param other andere Sicht.
+	 * @return neue Sicht mit Zeilen, die in mindestens einer der Sichten enthalten sind.
+	 * Mit removeRow entfernte Zeilen einer Sicht können über die andere enthalten sein.
+	 */
+	public FilteredCsvData or(FilteredCsvData other) {
+		checkSameBase(other);
+		if(selection == null || other.selection == null) {
+			return new FilteredCsvData(base);
+		}
+		int[] result = new int[size + other.size];
+		int n = 0;
+		int i = 0, j = 0;
+		while(i < size || j < other.size) {
+			int a = i < size ? selection[i] : Integer.MAX_VALUE;
+			int b = j < other.size ? other.selection[j] : Integer.MAX_VALUE;
+			if(a <= b) {
+				result[n++] = a;
+				i++;
+				if(a == b) {
+					j++;
+				}
+			} else {
+				result[n++] = b;
+				j++;
+			}
+		}
+		return new FilteredCsvData(base, result, n, or(rowPred, other.rowPred), removed.intersection(other.removed), pending.union(other.pending));
+	}
+
+	/**
+	 * Zeilenindex in den ungefilterten Basisdaten.
+	 * @param row Zeilenindex in dieser Sicht.
+	 * @return Zeilenindex in den Basisdaten.
+	 */
+	public int baseRow(int row) {
+		if(selection == null) {
+			return row;
+		}
+		if(row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", row count: " + size);
+		}
+		return selection[row];
+	}
+
+	/**
+	 * @return ungefilterte Basisdaten, auf die sich alle Zeilenindizes der Auswahl beziehen.
+	 * Nach addRow oder addColumn auf der Sicht ist dies ihre eigene Kopie.
+	 */
+	public CsvData getBaseData() {
+		return base;
+	}
+
+	@Override
+	public String[] getHeaders() {
+		return base.getHeaders();
+	}
+
+	@Override
+	public CsvSchema getSchema() {
+		return base.getSchema();
+	}
+
+	@Override
+	public int rowCount() {
+		return selection == null ? base.rowCount() : size;
+	}
+
+	@Override
+	public String getCellAt(int row, int col) {
+		return base.getCellAt(baseRow(row), col);
+	}
+
+	@Override
+	public int getIntAt(int row, int col) {
+		return base.getIntAt(baseRow(row), col);
+	}
+
+	@Override
+	public long getLongAt(int row, int col) {
+		return base.getLongAt(baseRow(row), col);
+	}
+
+	@Override
+	public double getDoubleAt(int row, int col) {
+		return base.getDoubleAt(baseRow(row), col);
+	}
+
+	@Override
+	public boolean getBooleanAt(int row, int col) {
+		return base.getBooleanAt(baseRow(row), col);
+	}
+
+	@Override
+	public void setCellAt(int row, int col, String content) {
+		base.setCellAt(baseRow(row), col, content);
+	}
+
+	@Override
+	public String[] getRow(int row) {
+		return base.getRow(baseRow(row));
+	}
+
+	@Override
+	public List<String> getColumn(String header) {
+		int col = columnWithHeader(header);
+		int n = rowCount();
+		List<String> cells = new ArrayList<String>(n + 1);
+		cells.add(header);
+		for(int row = 0; row < n; row++) {
+			cells.add(getCellAt(row, col));
+		}
+		return cells;
+	}
+
+	/**
+	 * Füge neue Spalte hinzu. Die Basisdaten bleiben unverändert, die Sicht wird zuvor von ihnen gelöst.
+	 * @param header Spaltenbezeichner.
+	 */
+	@Override
+	public void addColumn(String header) {
+		detach();
+		base.addColumn(header);
+	}
+
+	/**
+	 * Entferne Zeile aus der Sicht. Die Basisdaten bleiben unverändert.
+	 * @param row Zeilenindex in dieser Sicht.
+	 */
+	@Override
+	public void removeRow(int row) {
+		int baseRow = baseRow(row);
+		String[] oldRow = base.getRow(baseRow);
+		if(selection == null) {
+			setSelection(copySelection(), base.rowCount(), ALL_ROWS);
+		}
+		System.arraycopy(selection, row + 1, selection, row, size - row - 1);
+		size--;
+		removed.add(baseRow);
+		fireRowRemoved(row, oldRow);
+	}
+
+	/**
+	 * Füge neue leere Zeile mit gegebenem Zeilenindex ein. Ohne Kopfzeile.
+	 * Die Basisdaten bleiben unverändert, die Sicht wird zuvor von ihnen gelöst.
+	 * @param row Zeilenindex.
+	 */
+	@Override
+	public void addRow(int row) {
+		if(row < 0 || row > rowCount()) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", row count: " + rowCount());
+		}
+		detach();
+		base.addRow(row);
+	}
+
+	/**
+	 * Löse Sicht von den Basisdaten. Sie enthält danach eine eigene Kopie ihrer Zeilen ohne Filter.
+	 */
+	private void detach() {
+		int n = rowCount();
+		List<String[]> rows = new ChunkedList<String[]>();
+		rows.add(getHeaders().clone());
+		for(int row = 0; row < n; row++) {
+			rows.add(getRow(row).clone());
+		}
+		base.removeListener(listener);
+		base = new CsvData(title, rows);
+		actualData = base;
+		setSelection(null, 0, null);
+		removed = new SortedRows();
+		pending = new SortedRows();
+		listener = new BaseListener(this);
+		base.addListener(listener);
+	}
+
+	private void baseCellChanged(int baseRow, int col, String oldContent, String newContent) {
+		if(selection == null) {
+			fireCellChanged(baseRow, col, oldContent, newContent);
+			return;
+		}
+		int pos = Arrays.binarySearch(selection, 0, size, baseRow);
+		String[] cells = base.getRow(baseRow);
+		if(pending.contains(baseRow)) {
+			if(!isFilled(cells)) {
+				// Zeile wird noch befüllt, Prädikat erst für vollständige Zeile prüfen.
+				if(pos >= 0) {
+					fireCellChanged(pos, col, oldContent, newContent);
+				}
+				return;
+			}
+			pending.remove(baseRow);
+		}
+		boolean matches = rowPred.invoke(cells);
+		if(pos >= 0 && matches) {
+			fireCellChanged(pos, col, oldContent, newContent);
+		} else if(pos >= 0) {
+			System.arraycopy(selection, pos + 1, selection, pos, size - pos - 1);
+			size--;
+			String[] oldRow = cells.clone();
+			oldRow[col] = oldContent;
+			fireRowRemoved(pos, oldRow);
+		} else if(matches && !removed.contains(baseRow)) {
+			insertAt(-pos - 1, baseRow);
+			fireRowInserted(-pos - 1);
+		}
+	}
+
+	private static boolean isFilled(String[] cells) {
+		for(String cell : cells) {
+			if(cell == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void baseRowInserted(int baseRow) {
+		removed.shiftFrom(baseRow, 1);
+		pending.shiftFrom(baseRow, 1);
+		if(!isFilled(base.getRow(baseRow))) {
+			pending.add(baseRow);
+		}
+		if(selection == null) {
+			fireRowInserted(baseRow);
+			return;
+		}
+		int pos = Arrays.binarySearch(selection, 0, size, baseRow);
+		if(pos < 0) {
+			pos = -pos - 1;
+		}
+		shiftFrom(pos, 1);
+	}
+
+	private void baseRowRemoved(int baseRow, String[] oldRow) {
+		removed.remove(baseRow);
+		removed.shiftFrom(baseRow, -1);
+		pending.remove(baseRow);
+		pending.shiftFrom(baseRow, -1);
+		if(selection == null) {
+			fireRowRemoved(baseRow, oldRow);
+			return;
+		}
+		int pos = Arrays.binarySearch(selection, 0, size, baseRow);
+		boolean contained = pos >= 0;
+		if(contained) {
+			System.arraycopy(selection, pos + 1, selection, pos, size - pos - 1);
+			size--;
+		} else {
+			pos = -pos - 1;
+		}
+		shiftFrom(pos, -1);
+		if(contained) {
+			fireRowRemoved(pos, oldRow);
+		}
+	}
+
+	private void insertAt(int pos, int baseRow) {
+		if(size == selection.length) {
+			selection = Arrays.copyOf(selection, Math.max(8, size * 2));
+		}
+		System.arraycopy(selection, pos, selection, pos + 1, size - pos);
+		selection[pos] = baseRow;
+		size++;
+	}
+
+	private void shiftFrom(int from, int delta) {
+		for(int i = from; i < size; i++) {
+			selection[i] += delta;
+		}
+	}
+
+	private void setSelection(int[] selection, int size, IPredicate<String[]> rowPred) {
+		this.selection = selection;
+		this.size = size;
+		this.rowPred = rowPred;
+	}
+
+	private int[] copySelection() {
+		if(selection == null) {
+			int n = base.rowCount();
+			int[] all = new int[n];
+			for(int i = 0; i < n; i++) {
+				all[i] = i;
+			}
+			return all;
+		}
+		return selection.clone();
+	}
+
+	private IPredicate<String[]> parentPred() {
+		return (actualData instanceof FilteredCsvData) ? ((FilteredCsvData)actualData).rowPred : null;
+	}
+
+	private SortedRows parentRemoved() {
+		return (actualData instanceof FilteredCsvData) ? ((FilteredCsvData)actualData).removed.copy() : new SortedRows();
+	}
+
+	private void checkSameBase(FilteredCsvData other) {
+		if(other.base != base) {
+			throw new IllegalArgumentException("Filtered views have different base data");
+		}
+	}
+
+	private static int baseRowOf(CsvData data, int row) {
+		return (data instanceof FilteredCsvData) ? ((FilteredCsvData)data).baseRow(row) : row;
+	}
+
+	private static final IPredicate<String[]> ALL_ROWS = new IPredicate<String[]>() {
+		@Override
+		public boolean invoke(String[] row) {
+			return true;
+		}
+	};
+
+	private static IPredicate<String[]> and(final IPredicate<String[]> a, final IPredicate<String[]> b) {
+		if(a == null || b == null) {
+			return a == null ? b : a;
+		}
+		return new IPredicate<String[]>() {
+			@Override
+			public boolean invoke(String[] row) {
+				return a.invoke(row) && b.invoke(row);
+			}
+		};
+	}
+
+	private static IPredicate<String[]> or(final IPredicate<String[]> a, final IPredicate<String[]> b) {
+		if(a == null || b == null) {
+			return null;
+		}
+		return new IPredicate<String[]>() {
+			@Override
+			public boolean invoke(String[] row) {
+				return a.invoke(row) || b.invoke(row);
+			}
+		};
+	}
+
+	/**
+	 * Aufsteigend sortierte Menge von Zeilenindizes der Basisdaten, die beim Einfügen und Entfernen
+	 * von Zeilen in den Basisdaten mitgeführt wird.
+	 */
+	private static class SortedRows {
+		private int[] rows = new int[0];
+		private int size;
+
+		private boolean contains(int row) {
+			return Arrays.binarySearch(rows, 0, size, row) >= 0;
+		}
+
+		private void add(int row) {
+			int pos = Arrays.binarySearch(rows, 0, size, row);
+			if(pos >= 0) {
+				return;
+			}
+			pos = -pos - 1;
+			if(size == rows.length) {
+				rows = Arrays.copyOf(rows, Math.max(8, size * 2));
+			}
+			System.arraycopy(rows, pos, rows, pos + 1, size - pos);
+			rows[pos] = row;
+			size++;
+		}
+
+		private boolean remove(int row) {
+			int pos = Arrays.binarySearch(rows, 0, size, row);
+			if(pos < 0) {
+				return false;
+			}
+			System.arraycopy(rows, pos + 1, rows, pos, size - pos - 1);
+			size--;
+			return true;
+		}
+
+		/**
+		 * Verschiebe alle Indizes ab from um delta.
+		 */
+		private void shiftFrom(int from, int delta) {
+			int pos = Arrays.binarySearch(rows, 0, size, from);
+			for(int i = pos >= 0 ? pos : -pos - 1; i < size; i++) {
+				rows[i] += delta;
+			}
+		}
+
+		private SortedRows copy() {
+			SortedRows copy = new SortedRows();
+			copy.rows = Arrays.copyOf(rows, size);
+			copy.size = size;
+			return copy;
+		}
+
+		private SortedRows union(SortedRows other) {
+			SortedRows result = copy();
+			for(int i = 0; i < other.size; i++) {
+				result.add(other.rows[i]);
+			}
+			return result;
+		}
+
+		private SortedRows intersection(SortedRows other) {
+			SortedRows result = new SortedRows();
+			for(int i = 0; i < size; i++) {
+				if(other.contains(rows[i])) {
+					result.add(rows[i]);
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Leitet Änderungen der Basisdaten an die Sicht weiter. Hält die Sicht nur schwach,
+	 * sodass nicht mehr benutzte Sichten eingesammelt werden und sich beim nächsten Ereignis abmelden.
+	 */
+	private static class BaseListener implements ICsvDataListener {
+		private final WeakReference<FilteredCsvData> viewRef;
+
+		private BaseListener(FilteredCsvData view) {
+			this.viewRef = new WeakReference<FilteredCsvData>(view);
+		}
+
+		private FilteredCsvData view(CsvData data) {
+			FilteredCsvData view = viewRef.get();
+			if(view == null) {
+				data.removeListener(this);
+			}
+			return view;
+		}
+
+		@Override
+		public void cellChanged(CsvData data, int row, int col, String oldContent, String newContent) {
+			FilteredCsvData view = view(data);
+			if(view != null) {
+				view.baseCellChanged(row, col, oldContent, newContent);
+			}
+		}
+
+		@Override
+		public void rowInserted(CsvData data, int row) {
+			FilteredCsvData view = view(data);
+			if(view != null) {
+				view.baseRowInserted(row);
+			}
+		}
+
+		@Override
+		public void rowRemoved(CsvData data, int row, String[] oldRow) {
+			FilteredCsvData view = view(data);
+			if(view != null) {
+				view.baseRowRemoved(row, oldRow);
+			}
+		}
+
+		@Override
+		public void columnAdded(CsvData data, int col) {
+			FilteredCsvData view = view(data);
+			if(view != null) {
+				view.fireColumnAdded(col);
+			}
+		}
 	}
 }
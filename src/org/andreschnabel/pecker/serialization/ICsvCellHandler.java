@@ -0,0 +1,12 @@
+package org.andreschnabel.pecker.serialization;
+
+/**
+ * Empfängt Zellen direkt aus dem Zeichenpuffer des Parsers, ohne dass Zeichenketten erzeugt werden.
+ * Zusammen mit CsvNumbers lassen sich so Zahlen ohne Allokation je Zelle lesen.
+ * Der Puffer ist nur während des Aufrufs gültig.
+ */
+public interface ICsvCellHandler {
+
+	public void cell(int column, char[] buf, int off, int len) throws Exception;
+
+}
@@ -0,0 +1,17 @@
+package org.andreschnabel.pecker.serialization;
+
+/**
+ * Beobachter für Änderungen an CSV-Daten.
+ * Wird nach der jeweiligen Änderung benachrichtigt. Zeilenindizes ohne Kopfzeile.
+ */
+public interface ICsvDataListener {
+
+	public void cellChanged(CsvData data, int row, int col, String oldContent, String newContent);
+
+	public void rowInserted(CsvData data, int row);
+
+	public void rowRemoved(CsvData data, int row, String[] oldRow);
+
+	public void columnAdded(CsvData data, int col);
+
+}
@@ -0,0 +1,301 @@
+package org.andreschnabel.pecker.serialization;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CSV-Daten direkt auf einer in den Speicher abgebildeten Datei.
+ *
+ * Beim Einlesen werden nur die Byte-Positionen der Zellgrenzen vermerkt.
+ * Eine Zelle wird erst beim Zugriff mit getCellAt in eine Zeichenkette dekodiert.
+ * Semantik entspricht CsvHelpers.parseCsv.
+ *
+ * Nur lesend. Dateien bis 2 GB. Die Zeichenkodierung muss ASCII-kompatibel sein (z.B. UTF-8, ISO-8859-1),
+ * da Trennzeichen byteweise gesucht werden.
+ */
+public class MappedCsvData extends CsvData {
+
+	private final MappedByteBuffer buffer;
+	private final Charset charset;
+	private final int numColumns;
+
+	/**
+	 * Position des Trennzeichens (Komma oder Zeilenumbruch) hinter jeder Zelle.
+	 * Zeilenweise, Kopfzeile zuerst. Zelle (r, c) endet bei cellEnds[r*numColumns+c].
+	 */
+	private int[] cellEnds;
+	private int numRows;
+
+	private final String[] headers;
+
+	/**
+	 * true, gdw. Ziffern, Vorzeichen und Buchstaben von Zahlen in der Kodierung einzelne ASCII-Bytes sind.
+	 */
+	private final boolean asciiNumbers;
+
+	/**
+	 * Konstruktor
+	 *
+	 * Zeichenkodierung ist Standardkodierung der Plattform (wie bei CsvHelpers.parseCsv).
+	 *
+	 * @param file CSV-Datei.
+	 * @throws Exception Lese- oder Formatfehler.
+	 */
+	public MappedCsvData(File file) throws Exception {
+		this(file, Charset.defaultCharset().name());
+	}
+
+	/**
+	 * Konstruktor
+	 * @param file CSV-Datei.
+	 * @param charsetName ASCII-kompatible Zeichenkodierung der Datei.
+	 * @throws Exception Lese- oder Formatfehler.
+	 */
+	public MappedCsvData(File file, String charsetName) throws Exception {
+		super((List<String[]>)null);
+		this.charset = Charset.forName(charsetName);
+
+		if(file.length() > Integer.MAX_VALUE) {
+			throw new Exception("File too large for memory mapping: " + file.getPath());
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+
+		numColumns = countHeaderColumns();
+		cellEnds = new int[numColumns * 64];
+		scan();
+
+		if(numRows == 0) {
+			throw new Exception("Missing header line: " + file.getPath());
+		}
+		headers = decodeRow(0);
+		String numberChars = "0123456789+-.eEtrufalsTRUFALS";
+		asciiNumbers = Arrays.equals(numberChars.getBytes(charset), numberChars.getBytes("US-ASCII"));
+	}
+
+	private int countHeaderColumns() {
+		int numColumns = 1;
+		boolean escaped = false;
+		for(int i = 0; i < buffer.limit(); i++) {
+			byte b = buffer.get(i);
+			if(b == '\n') {
+				break;
+			} else if(b == '"') {
+				escaped = !escaped;
+			} else if(b == ',' && !escaped) {
+				numColumns++;
+			}
+		}
+		return numColumns;
+	}
+
+	/**
+	 * Bestimme Zellgrenzen. Zustandsautomat wie in CsvParser, jedoch ohne Zellinhalte zu kopieren.
+	 * Besucht mit den Bitmasken von CsvScanner nur Strukturzeichen.
+	 */
+	private void scan() throws Exception {
+		int size = buffer.limit();
+		ByteBuffer words = CsvScanner.littleEndian(buffer);
+		boolean escaped = false;
+		int curColumn = 0;
+		int lineNum = 0;
+
+		for(int block = 0; block < size; block += CsvScanner.BLOCK_SIZE) {
+			long mask = block + CsvScanner.BLOCK_SIZE <= size
+					? CsvScanner.structuralMask(words, block)
+					: CsvScanner.structuralMask(buffer, block, size - block);
+			for(; mask != 0; mask &= mask - 1) {
+				int i = block + Long.numberOfTrailingZeros(mask);
+				byte b = buffer.get(i);
+				if(b == '"') {
+					escaped = !escaped;
+				} else if(b == '\n') {
+					lineNum++;
+					if(curColumn == numColumns - 1) {
+						recordCellEnd(curColumn, i);
+						numRows++;
+						curColumn = 0;
+					}
+				} else if(!escaped) {
+					if(curColumn == numColumns) {
+						throw new Exception("Line malformed with too many columns in line " + (lineNum + 1));
+					}
+					recordCellEnd(curColumn++, i);
+				}
+			}
+		}
+
+		// Fehlender Zeilenumbruch am Dateiende schließt die letzte Zeile ab.
+		if((size == 0 || buffer.get(size - 1) != '\n') && curColumn == numColumns - 1) {
+			recordCellEnd(curColumn, size);
+			numRows++;
+		}
+	}
+
+	private void recordCellEnd(int column, int pos) {
+		int idx = numRows * numColumns + column;
+		if(idx >= cellEnds.length) {
+			cellEnds = Arrays.copyOf(cellEnds, cellEnds.length * 2);
+		}
+		cellEnds[idx] = pos;
+	}
+
+	private String decodeCell(int fileRow, int col) {
+		int idx = fileRow * numColumns + col;
+		int start = idx == 0 ? 0 : cellEnds[idx - 1] + 1;
+		int end = cellEnds[idx];
+
+		byte[] bytes = new byte[end - start];
+		int len = 0;
+		for(int i = start; i < end; i++) {
+			byte b = buffer.get(i);
+			// Kommas in Anführungszeichen und Zeilenumbrüche innerhalb einer Zeile gehören nie zur Zelle.
+			if(b != ',' && b != '\n') {
+				bytes[len++] = b;
+			}
+		}
+		return new String(bytes, 0, len, charset);
+	}
+
+	private String[] decodeRow(int fileRow) {
+		String[] row = new String[numColumns];
+		for(int col = 0; col < numColumns; col++) {
+			row[col] = decodeCell(fileRow, col);
+		}
+		return row;
+	}
+
+	/**
+	 * Bytebereich einer Zelle zum direkten Parsen.
+	 * @return Startindex in den oberen und Endindex in den unteren 32 Bit oder -1, falls die Zelle Kommas
+	 * oder Zeilenumbrüche enthält, welche beim Dekodieren entfernt würden, oder die Kodierung nicht ASCII-kompatibel ist.
+	 */
+	private long rawCellRange(int row, int col) {
+		checkRow(row);
+		if(col < 0 || col >= numColumns) {
+			throw new IndexOutOfBoundsException("Column: " + col + ", column count: " + numColumns);
+		}
+		if(!asciiNumbers) {
+			return -1;
+		}
+		int idx = (row + 1) * numColumns + col;
+		int start = cellEnds[idx - 1] + 1;
+		int end = cellEnds[idx];
+		for(int i = start; i < end; i++) {
+			byte b = buffer.get(i);
+			if(b == ',' || b == '\n') {
+				return -1;
+			}
+		}
+		return (long)start << 32 | end;
+	}
+
+	private void checkRow(int row) {
+		if(row < 0 || row >= rowCount()) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", row count: " + rowCount());
+		}
+	}
+
+	/**
+	 * Dekodiere alle Zellen in veränderbare CSV-Daten.
+	 * @return CSV-Daten mit gleichem Inhalt.
+	 */
+	public CsvData toCsvData() {
+		List<String[]> rows = new ArrayList<String[]>(numRows);
+		for(int i = 0; i < numRows; i++) {
+			rows.add(i == 0 ? headers.clone() : decodeRow(i));
+		}
+		return new CsvData(title, rows);
+	}
+
+	@Override
+	public String[] getHeaders() {
+		return headers;
+	}
+
+	@Override
+	public int rowCount() {
+		return numRows - 1;
+	}
+
+	@Override
+	public String getCellAt(int row, int col) {
+		checkRow(row);
+		if(col < 0 || col >= numColumns) {
+			throw new IndexOutOfBoundsException("Column: " + col + ", column count: " + numColumns);
+		}
+		return decodeCell(row + 1, col);
+	}
+
+	@Override
+	public int getIntAt(int row, int col) {
+		long range = rawCellRange(row, col);
+		return range >= 0 ? CsvNumbers.parseInt(buffer, (int)(range >>> 32), (int)range) : super.getIntAt(row, col);
+	}
+
+	@Override
+	public long getLongAt(int row, int col) {
+		long range = rawCellRange(row, col);
+		return range >= 0 ? CsvNumbers.parseLong(buffer, (int)(range >>> 32), (int)range) : super.getLongAt(row, col);
+	}
+
+	@Override
+	public double getDoubleAt(int row, int col) {
+		long range = rawCellRange(row, col);
+		return range >= 0 ? CsvNumbers.parseDouble(buffer, (int)(range >>> 32), (int)range) : super.getDoubleAt(row, col);
+	}
+
+	@Override
+	public boolean getBooleanAt(int row, int col) {
+		long range = rawCellRange(row, col);
+		return range >= 0 ? CsvNumbers.parseBoolean(buffer, (int)(range >>> 32), (int)range) : super.getBooleanAt(row, col);
+	}
+
+	@Override
+	public String[] getRow(int row) {
+		checkRow(row);
+		return decodeRow(row + 1);
+	}
+
+	@Override
+	public List<String> getColumn(String header) {
+		int col = columnWithHeader(header);
+		List<String> column = new ArrayList<String>(numRows);
+		for(int i = 0; i < numRows; i++) {
+			column.add(decodeCell(i, col));
+		}
+		return column;
+	}
+
+	@Override
+	public void setCellAt(int row, int col, String content) {
+		throw new UnsupportedOperationException("MappedCsvData is read-only, use toCsvData()");
+	}
+
+	@Override
+	public void addColumn(String header) {
+		throw new UnsupportedOperationException("MappedCsvData is read-only, use toCsvData()");
+	}
+
+	@Override
+	public void removeRow(int row) {
+		throw new UnsupportedOperationException("MappedCsvData is read-only, use toCsvData()");
+	}
+
+	@Override
+	public void addRow(int row) {
+		throw new UnsupportedOperationException("MappedCsvData is read-only, use toCsvData()");
+	}
+}
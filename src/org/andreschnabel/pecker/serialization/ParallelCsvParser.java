@@ -0,0 +1,213 @@
+package org.andreschnabel.pecker.serialization;
+
+import org.andreschnabel.pecker.collections.ChunkedList;
+import org.andreschnabel.pecker.threading.FutureHelpers;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Paralleles Parsen von CSV-Text in Abschnitten.
+ *
+ * 1. Text wird hinter Zeilenumbrüchen in Abschnitte geteilt.
+ * 2. Parallel: Anführungszeichen und Zeilenumbrüche je Abschnitt zählen. Präfixsummen liefern
+ *    den exakten Anführungszeichen-Zustand an jedem Abschnittsanfang.
+ * 3. Parallel: jeden Abschnitt unter der Annahme parsen, dass an seinem Anfang eine Zeile beginnt.
+ * 4. Sequentiell zusammenfügen. Endet der vorige Abschnitt nicht an einer Zeilengrenze
+ *    (Zeile über mehrere Textzeilen), wird der Abschnitt mit dem echten Zustand neu geparst.
+ *
+ * Ergebnis ist identisch mit CsvHelpers.parseCsv.
+ */
+final class ParallelCsvParser {
+
+	/**
+	 * Abschnitte kleiner als diese Zeichenzahl lohnen nicht.
+	 */
+	private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+	/**
+	 * Abschnitte je Thread für Lastausgleich.
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final char[] text;
+	private final int length;
+	private final int numThreads;
+
+	/**
+	 * Konstruktor
+	 * @param text Zeichenpuffer mit CSV-Text.
+	 * @param length Anzahl gültiger Zeichen im Puffer.
+	 * @param numThreads Anzahl der Threads.
+	 */
+	ParallelCsvParser(char[] text, int length, int numThreads) {
+		this.text = text;
+		this.length = length;
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * Parse gesamten Text.
+	 * @return Zeilen inklusive Kopfzeile.
+	 * @throws Exception bei Formatfehlern.
+	 */
+	List<String[]> parse() throws Exception {
+		int numColumns = CsvHelpers.countColumns(CharBuffer.wrap(text), 0, headerEnd());
+		int[] bounds = chunkBounds();
+		int numChunks = bounds.length - 1;
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(numThreads, numChunks));
+		try {
+			int[][] counts = countQuotesAndNewlines(pool, bounds);
+			List<Future<ChunkResult>> futures = new ArrayList<Future<ChunkResult>>(numChunks);
+			boolean escaped = false;
+			int lineNum = 0;
+			for(int k = 0; k < numChunks; k++) {
+				futures.add(pool.submit(new ChunkTask(numColumns, bounds[k], bounds[k+1], escaped, lineNum)));
+				escaped ^= (counts[k][0] & 1) == 1;
+				lineNum += counts[k][1];
+			}
+			return stitch(futures, bounds);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private int headerEnd() {
+		for(int i = 0; i < length; i++) {
+			if(text[i] == '\n') {
+				return i;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Abschnittsgrenzen. Jede innere Grenze liegt direkt hinter einem Zeilenumbruch.
+	 */
+	private int[] chunkBounds() {
+		int numChunks = Math.max(1, Math.min(numThreads * CHUNKS_PER_THREAD, length / MIN_CHUNK_SIZE));
+		List<Integer> bounds = new ArrayList<Integer>(numChunks + 1);
+		bounds.add(0);
+		for(int k = 1; k < numChunks; k++) {
+			int pos = Math.max((int)((long)length * k / numChunks), bounds.get(bounds.size()-1));
+			while(pos < length && text[pos] != '\n') {
+				pos++;
+			}
+			if(pos + 1 < length && pos + 1 > bounds.get(bounds.size()-1)) {
+				bounds.add(pos + 1);
+			}
+		}
+		bounds.add(length);
+
+		int[] arr = new int[bounds.size()];
+		for(int i = 0; i < arr.length; i++) {
+			arr[i] = bounds.get(i);
+		}
+		return arr;
+	}
+
+	private int[][] countQuotesAndNewlines(ExecutorService pool, int[] bounds) throws Exception {
+		List<Future<int[]>> futures = new ArrayList<Future<int[]>>(bounds.length - 1);
+		for(int k = 0; k < bounds.length - 1; k++) {
+			final int from = bounds[k];
+			final int to = bounds[k+1];
+			futures.add(pool.submit(new Callable<int[]>() {
+				@Override
+				public int[] call() {
+					int quotes = 0;
+					int newlines = 0;
+					for(int i = from; i < to; i++) {
+						char c = text[i];
+						if(c == '"') quotes++;
+						else if(c == '\n') newlines++;
+					}
+					return new int[] {quotes, newlines};
+				}
+			}));
+		}
+		int[][] counts = new int[futures.size()][];
+		for(int k = 0; k < counts.length; k++) {
+			counts[k] = futures.get(k).get();
+		}
+		return counts;
+	}
+
+	private List<String[]> stitch(List<Future<ChunkResult>> futures, int[] bounds) throws Exception {
+		List<ChunkResult> results = new ArrayList<ChunkResult>(futures.size());
+		for(Future<ChunkResult> future : futures) {
+			results.add(FutureHelpers.getUnwrapped(future));
+		}
+
+		List<String[]> rows = new ChunkedList<String[]>();
+		CsvParser parser = null;
+		for(int k = 0; k < results.size(); k++) {
+			ChunkResult result = results.get(k);
+			if(parser == null || parser.isAtRowStart()) {
+				// Annahme des Abschnitts war korrekt.
+				if(result.error != null) {
+					throw result.error;
+				}
+				rows.addAll(result.rows);
+				parser = result.parser;
+			} else {
+				parseSequentially(parser, bounds[k], bounds[k+1], rows);
+			}
+		}
+
+		parser.finish();
+		if(parser.hasRow()) {
+			rows.add(parser.takeRow());
+		}
+		return rows;
+	}
+
+	private void parseSequentially(CsvParser parser, int from, int to, List<String[]> rows) throws Exception {
+		int pos = from;
+		while(pos < to) {
+			pos = parser.parse(text, pos, to);
+			if(parser.hasRow()) {
+				rows.add(parser.takeRow());
+			}
+		}
+	}
+
+	private static class ChunkResult {
+		private final List<String[]> rows = new ArrayList<String[]>();
+		private CsvParser parser;
+		private Exception error;
+	}
+
+	private class ChunkTask implements Callable<ChunkResult> {
+		private final int numColumns;
+		private final int from;
+		private final int to;
+		private final boolean escaped;
+		private final int lineNum;
+
+		private ChunkTask(int numColumns, int from, int to, boolean escaped, int lineNum) {
+			this.numColumns = numColumns;
+			this.from = from;
+			this.to = to;
+			this.escaped = escaped;
+			this.lineNum = lineNum;
+		}
+
+		@Override
+		public ChunkResult call() {
+			ChunkResult result = new ChunkResult();
+			result.parser = new CsvParser(numColumns, escaped, lineNum);
+			try {
+				parseSequentially(result.parser, from, to, result.rows);
+			} catch(Exception e) {
+				result.error = e;
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package org.andreschnabel.pecker.serialization;
+
+import org.andreschnabel.pecker.collections.ChunkedList;
+import org.andreschnabel.pecker.functional.IPredicate;
+import org.andreschnabel.pecker.helpers.FileHelpers;
+import org.andreschnabel.pecker.threading.FutureHelpers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Datenbestand aus mehreren CSV-Dateien in einem nach Partitionen geordneten Verzeichnisbaum.
+ *
+ * Verzeichnisnamen der Form schluessel=wert unterhalb der Wurzel legen die Partitionswerte
+ * aller darin enthaltenen Dateien fest, bspw. root/year=2026/month=10/teil1.csv.
+ * Mit where werden Partitionen allein anhand des Pfads ausgeschlossen, ohne Dateien zu öffnen.
+ * Erst load liest die verbliebenen Dateien parallel und fügt sie zu einer CSV-Tabelle zusammen.
+ *
+ * Alle Dateien müssen die gleichen Spaltenbezeichner haben. Partitionsschlüssel, die keine Spalte der Dateien sind,
+ * werden als zusätzliche Spalten mit dem Wert aus dem Pfad angehängt.
+ * Instanzen sind unveränderlich, where liefert einen neuen Datenbestand.
+ */
+public class PartitionedCsvDataset {
+
+	private final File root;
+	private final List<File> files;
+	private final List<Map<String, String>> partitionValues;
+	private final List<String> partitionKeys;
+
+	/**
+	 * Konstruktor
+	 * Sucht rekursiv alle Dateien mit Endung .csv oder .csv.gz unterhalb der Wurzel.
+	 * @param root Wurzelverzeichnis des Datenbestands.
+	 * @throws Exception falls root kein Verzeichnis ist.
+	 */
+	public PartitionedCsvDataset(File root) throws Exception {
+		this.root = root;
+		this.files = FileHelpers.filesWithPredicateInTree(root, new IPredicate<File>() {
+			@Override
+			public boolean invoke(File f) {
+				String name = f.getName();
+				return name.endsWith(".csv") || name.endsWith(".csv.gz");
+			}
+		});
+		// Reihenfolge der Zeilen soll nicht von der Reihenfolge des Dateisystems abhängen.
+		Collections.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				return f1.getPath().compareTo(f2.getPath());
+			}
+		});
+
+		this.partitionValues = new ArrayList<Map<String, String>>(files.size());
+		this.partitionKeys = new ArrayList<String>();
+		for(File f : files) {
+			Map<String, String> values = parsePartitionValues(f);
+			for(String key : values.keySet()) {
+				if(!partitionKeys.contains(key)) {
+					partitionKeys.add(key);
+				}
+			}
+			partitionValues.add(values);
+		}
+	}
+
+	private PartitionedCsvDataset(File root, List<File> files, List<Map<String, String>> partitionValues, List<String> partitionKeys) {
+		this.root = root;
+		this.files = files;
+		this.partitionValues = partitionValues;
+		this.partitionKeys = partitionKeys;
+	}
+
+	private Map<String, String> parsePartitionValues(File f) {
+		LinkedList<String> dirs = new LinkedList<String>();
+		for(File dir = f.getParentFile(); dir != null && !dir.equals(root); dir = dir.getParentFile()) {
+			dirs.addFirst(dir.getName());
+		}
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		for(String dir : dirs) {
+			int eq = dir.indexOf('=');
+			if(eq > 0) {
+				values.put(dir.substring(0, eq), dir.substring(eq + 1));
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * @return Wurzelverzeichnis des Datenbestands.
+	 */
+	public File getRoot() {
+		return root;
+	}
+
+	/**
+	 * @return Dateien des Datenbestands, nach Pfad sortiert.
+	 */
+	public List<File> getFiles() {
+		return Collections.unmodifiableList(files);
+	}
+
+	/**
+	 * @return Partitionsschlüssel aller Dateien in der Reihenfolge ihres ersten Auftretens im Pfad.
+	 */
+	public List<String> getPartitionKeys() {
+		return Collections.unmodifiableList(partitionKeys);
+	}
+
+	/**
+	 * @param fileIndex Index der Datei in getFiles.
+	 * @param key Partitionsschlüssel.
+	 * @return Wert der Partition im Pfad der Datei oder null, falls der Pfad den Schlüssel nicht enthält.
+	 */
+	public String getPartitionValue(int fileIndex, String key) {
+		return partitionValues.get(fileIndex).get(key);
+	}
+
+	/**
+	 * Schließe Partitionen anhand des Pfads aus. Es werden keine Dateien geöffnet.
+	 * @param key Partitionsschlüssel.
+	 * @param predicate Prädikat für den Wert der Partition.
+	 * @return Datenbestand aus Dateien, deren Pfad den Schlüssel mit einem Wert enthält, welcher das Prädikat erfüllt.
+	 */
+	public PartitionedCsvDataset where(String key, IPredicate<String> predicate) {
+		List<File> keptFiles = new ArrayList<File>();
+		List<Map<String, String>> keptValues = new ArrayList<Map<String, String>>();
+		for(int i = 0; i < files.size(); i++) {
+			String value = partitionValues.get(i).get(key);
+			if(value != null && predicate.invoke(value)) {
+				keptFiles.add(files.get(i));
+				keptValues.add(partitionValues.get(i));
+			}
+		}
+		return new PartitionedCsvDataset(root, keptFiles, keptValues, partitionKeys);
+	}
+
+	/**
+	 * Schließe alle Partitionen aus, deren Wert nicht dem gegebenen entspricht.
+	 * @param key Partitionsschlüssel.
+	 * @param value gewünschter Wert.
+	 * @return Datenbestand aus Dateien, deren Pfad key=value enthält.
+	 */
+	public PartitionedCsvDataset whereEquals(String key, final String value) {
+		return where(key, new IPredicate<String>() {
+			@Override
+			public boolean invoke(String v) {
+				return v.equals(value);
+			}
+		});
+	}
+
+	/**
+	 * Lese alle Dateien parallel mit einem Thread je Prozessorkern.
+	 * @return CSV-Daten aller Dateien in Reihenfolge von getFiles.
+	 * @throws Exception Lese- oder Formatfehler oder abweichende Spaltenbezeichner.
+	 */
+	public CsvData load() throws Exception {
+		return load(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Lese alle Dateien parallel.
+	 * @param numThreads Anzahl der Threads.
+	 * @return CSV-Daten aller Dateien in Reihenfolge von getFiles.
+	 * @throws Exception Lese- oder Formatfehler oder abweichende Spaltenbezeichner.
+	 */
+	public CsvData load(int numThreads) throws Exception {
+		if(files.isEmpty()) {
+			throw new Exception("No CSV files left in " + root.getPath());
+		}
+
+		String[] fileHeaders = CsvHelpers.readHeaders(files.get(0));
+		final List<String> extraKeys = new ArrayList<String>();
+		for(String key : partitionKeys) {
+			if(!Arrays.asList(fileHeaders).contains(key)) {
+				extraKeys.add(key);
+			}
+		}
+		final String[] headers = Arrays.copyOf(fileHeaders, fileHeaders.length + extraKeys.size());
+		for(int i = 0; i < extraKeys.size(); i++) {
+			headers[fileHeaders.length + i] = extraKeys.get(i);
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(numThreads, files.size())));
+		try {
+			List<Future<List<String[]>>> futures = new ArrayList<Future<List<String[]>>>(files.size());
+			for(int i = 0; i < files.size(); i++) {
+				final File file = files.get(i);
+				final Map<String, String> values = partitionValues.get(i);
+				final String[] expectedHeaders = fileHeaders;
+				futures.add(pool.submit(new Callable<List<String[]>>() {
+					@Override
+					public List<String[]> call() throws Exception {
+						return readFile(file, expectedHeaders, extraKeys, values);
+					}
+				}));
+			}
+
+			List<String[]> rows = new ChunkedList<String[]>();
+			rows.add(headers);
+			for(Future<List<String[]>> future : futures) {
+				rows.addAll(FutureHelpers.getUnwrapped(future));
+			}
+			return new CsvData(rows);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static List<String[]> readFile(File file, String[] expectedHeaders, List<String> extraKeys, Map<String, String> values) throws Exception {
+		List<String[]> rows = new ArrayList<String[]>();
+		CsvReader reader = new CsvReader(file);
+		try {
+			if(!Arrays.equals(expectedHeaders, reader.getHeaders())) {
+				throw new Exception("Headers of " + file.getPath() + " do not match: " + Arrays.toString(reader.getHeaders()));
+			}
+			String[] row;
+			while((row = reader.readRow()) != null) {
+				if(!extraKeys.isEmpty()) {
+					String[] extended = Arrays.copyOf(row, row.length + extraKeys.size());
+					for(int i = 0; i < extraKeys.size(); i++) {
+						extended[row.length + i] = values.get(extraKeys.get(i));
+					}
+					row = extended;
+				}
+				rows.add(row);
+			}
+		} finally {
+			reader.close();
+		}
+		return rows;
+	}
+}
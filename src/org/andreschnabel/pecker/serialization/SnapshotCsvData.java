@@ -0,0 +1,482 @@
+package org.andreschnabel.pecker.serialization;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * CSV-Daten aus einem binären, spaltenweisen Schnappschuss, der in den Speicher abgebildet wird.
+ *
+ * Der Schnappschuss enthält Kopfzeile, typisierte Spalten (wie ColumnarCsvData) und je Zeichenkettenspalte
+ * ein Wörterbuch. Beim Öffnen wird nichts geparst, Zellen werden erst beim Zugriff gelesen,
+ * Wörterbücher beim ersten Zugriff auf ihre Spalte dekodiert.
+ * Zusätzlich werden Länge und Änderungszeitpunkt der CSV-Quelldatei gespeichert, sodass load
+ * veraltete Schnappschüsse erkennt und dann die CSV-Datei neu einliest.
+ *
+ * Nur lesend. Jede Spalte darf höchstens 2 GB groß sein, die Datei insgesamt beliebig.
+ * Leere Zellen in Zahlen- und Wahrheitswertspalten werden wie bei ColumnarCsvData als "" gelesen.
+ *
+ * Aufbau (Big Endian): Kennung, Version, Länge und Änderungszeitpunkt der Quelle, Zeilen- und Spaltenzahl,
+ * Spaltenbezeichner und -typen, Tabelle aus Position und Länge je Spaltenabschnitt, Spaltenabschnitte.
+ * Zahlenspalten: Bitmaske fehlender Werte, dann Werte. Zeichenkettenspalten: Codes je Zeile (-1 für null), dann Wörterbuch.
+ */
+public class SnapshotCsvData extends CsvData {
+
+	private static final int MAGIC = 0x50434b53;
+	private static final int VERSION = 1;
+
+	private final long sourceLength;
+	private final long sourceLastModified;
+	private final int numRows;
+	private final String[] headers;
+	private final CsvColumn.Type[] types;
+	private final ByteBuffer[] sections;
+	private final AtomicReferenceArray<String[]> dictionaries;
+
+	/**
+	 * Konstruktor
+	 * @param snapshot Schnappschussdatei.
+	 * @throws Exception Lesefehler oder keine gültige Schnappschussdatei.
+	 */
+	public SnapshotCsvData(File snapshot) throws Exception {
+		super((List<String[]>)null);
+		this.title = snapshot.getName();
+
+		long[] offsets;
+		long[] lengths;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+		try {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new Exception("Not a snapshot file: " + snapshot.getPath());
+			}
+			sourceLength = in.readLong();
+			sourceLastModified = in.readLong();
+			numRows = in.readInt();
+			int numColumns = in.readInt();
+			headers = new String[numColumns];
+			types = new CsvColumn.Type[numColumns];
+			for(int col = 0; col < numColumns; col++) {
+				headers[col] = readString(in);
+				types[col] = CsvColumn.Type.values()[in.readByte()];
+			}
+			offsets = new long[numColumns];
+			lengths = new long[numColumns];
+			for(int col = 0; col < numColumns; col++) {
+				offsets[col] = in.readLong();
+				lengths[col] = in.readLong();
+			}
+		} finally {
+			in.close();
+		}
+
+		sections = new ByteBuffer[headers.length];
+		dictionaries = new AtomicReferenceArray<String[]>(headers.length);
+		RandomAccessFile raf = new RandomAccessFile(snapshot, "r");
+		try {
+			for(int col = 0; col < headers.length; col++) {
+				sections[col] = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, offsets[col], lengths[col]);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Schreibe Schnappschuss von CSV-Daten. Zeilenweise Daten werden dazu mit abgeleiteten Typen spaltenweise umgewandelt.
+	 * Die Datei wird erst vollständig geschrieben und dann umbenannt, ein vorhandener Schnappschuss bleibt bis dahin gültig.
+	 * @param data CSV-Daten.
+	 * @param source CSV-Quelldatei der Daten für Prüfung auf Aktualität oder null.
+	 * @param snapshot Schnappschussdatei. Wird überschrieben.
+	 * @throws Exception Schreibfehler.
+	 */
+	public static void write(CsvData data, File source, File snapshot) throws Exception {
+		ColumnarCsvData columnar = (data instanceof ColumnarCsvData) ? (ColumnarCsvData)data : new ColumnarCsvData(data);
+		String[] headers = columnar.getHeaders();
+		int numRows = columnar.rowCount();
+		File tmp = new File(snapshot.getPath() + ".tmp");
+
+		FileOutputStream fos = new FileOutputStream(tmp);
+		long tablePos;
+		long[] offsets = new long[headers.length];
+		long[] lengths = new long[headers.length];
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(source != null ? source.length() : -1);
+			out.writeLong(source != null ? source.lastModified() : -1);
+			out.writeInt(numRows);
+			out.writeInt(headers.length);
+			for(int col = 0; col < headers.length; col++) {
+				writeString(out, headers[col]);
+				out.writeByte(columnar.getColumnType(col).ordinal());
+			}
+			out.flush();
+			tablePos = fos.getChannel().position();
+			for(int col = 0; col < headers.length; col++) {
+				out.writeLong(0);
+				out.writeLong(0);
+			}
+			for(int col = 0; col < headers.length; col++) {
+				out.flush();
+				offsets[col] = fos.getChannel().position();
+				writeColumn(out, columnar.getTypedColumn(col), numRows);
+				out.flush();
+				lengths[col] = fos.getChannel().position() - offsets[col];
+			}
+		} finally {
+			fos.close();
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+		try {
+			raf.seek(tablePos);
+			for(int col = 0; col < headers.length; col++) {
+				raf.writeLong(offsets[col]);
+				raf.writeLong(lengths[col]);
+			}
+		} finally {
+			raf.close();
+		}
+
+		if(snapshot.exists() && !snapshot.delete()) {
+			throw new IOException("Unable to replace snapshot " + snapshot.getPath());
+		}
+		if(!tmp.renameTo(snapshot)) {
+			throw new IOException("Unable to rename " + tmp.getPath() + " to " + snapshot.getPath());
+		}
+	}
+
+	/**
+	 * Prüfe, ob Schnappschuss zur aktuellen Fassung der CSV-Quelldatei gehört.
+	 * @param snapshot Schnappschussdatei.
+	 * @param source CSV-Quelldatei.
+	 * @return true, gdw. Schnappschuss existiert und Länge und Änderungszeitpunkt der Quelle übereinstimmen.
+	 * @throws Exception Lesefehler.
+	 */
+	public static boolean isFresh(File snapshot, File source) throws Exception {
+		if(!snapshot.exists()) {
+			return false;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+		try {
+			return in.readInt() == MAGIC && in.readInt() == VERSION
+					&& in.readLong() == source.length() && in.readLong() == source.lastModified();
+		} catch(IOException e) {
+			return false;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Lade CSV-Datei über ihren Schnappschuss. Ist dieser veraltet oder fehlt, wird die CSV-Datei
+	 * eingelesen und der Schnappschuss neu geschrieben.
+	 * @param source CSV-Quelldatei.
+	 * @param snapshot Schnappschussdatei.
+	 * @return CSV-Daten aus dem Schnappschuss.
+	 * @throws Exception Lese-, Format- oder Schreibfehler.
+	 */
+	public static SnapshotCsvData load(File source, File snapshot) throws Exception {
+		if(!isFresh(snapshot, source)) {
+			write(ColumnarCsvData.load(source, null), source, snapshot);
+		}
+		SnapshotCsvData data = new SnapshotCsvData(snapshot);
+		data.title = source.getName();
+		return data;
+	}
+
+	private static void writeColumn(DataOutputStream out, CsvColumn column, int numRows) throws IOException {
+		CsvColumn.Type type = column.getType();
+		if(type == CsvColumn.Type.STRING) {
+			Map<String, Integer> codes = new HashMap<String, Integer>();
+			List<String> dictionary = new ArrayList<String>();
+			for(int row = 0; row < numRows; row++) {
+				String value = column.get(row);
+				if(value == null) {
+					out.writeInt(-1);
+					continue;
+				}
+				Integer code = codes.get(value);
+				if(code == null) {
+					code = dictionary.size();
+					codes.put(value, code);
+					dictionary.add(value);
+				}
+				out.writeInt(code);
+			}
+			out.writeInt(dictionary.size());
+			for(String value : dictionary) {
+				writeString(out, value);
+			}
+			return;
+		}
+
+		byte[] missing = new byte[bitmapBytes(numRows)];
+		for(int row = 0; row < numRows; row++) {
+			if(column.isMissing(row)) {
+				missing[row >>> 3] |= 1 << (row & 7);
+			}
+		}
+		out.write(missing);
+		for(int row = 0; row < numRows; row++) {
+			boolean isMissing = column.isMissing(row);
+			switch(type) {
+				case INT:
+					out.writeInt(isMissing ? 0 : column.getInt(row));
+					break;
+				case LONG:
+					out.writeLong(isMissing ? 0 : column.getLong(row));
+					break;
+				case DOUBLE:
+					out.writeDouble(isMissing ? 0 : column.getDouble(row));
+					break;
+				default:
+					out.writeByte(!isMissing && column.getBoolean(row) ? 1 : 0);
+					break;
+			}
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String str) throws IOException {
+		if(str == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(str.length());
+			out.writeChars(str);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int len = in.readInt();
+		if(len < 0) {
+			return null;
+		}
+		char[] chars = new char[len];
+		for(int i = 0; i < len; i++) {
+			chars[i] = in.readChar();
+		}
+		return new String(chars);
+	}
+
+	private static int bitmapBytes(int numRows) {
+		return (numRows + 7) >>> 3;
+	}
+
+	/**
+	 * @return Länge der CSV-Quelldatei beim Schreiben des Schnappschusses oder -1.
+	 */
+	public long getSourceLength() {
+		return sourceLength;
+	}
+
+	/**
+	 * @return Änderungszeitpunkt der CSV-Quelldatei beim Schreiben des Schnappschusses oder -1.
+	 */
+	public long getSourceLastModified() {
+		return sourceLastModified;
+	}
+
+	/**
+	 * Typ einer Spalte.
+	 * @param col Spaltenindex.
+	 * @return Spaltentyp.
+	 */
+	public CsvColumn.Type getColumnType(int col) {
+		return types[col];
+	}
+
+	/**
+	 * @param row Zeilenindex.
+	 * @param col Spaltenindex.
+	 * @return true, gdw. Zelle leer ist.
+	 */
+	public boolean isMissing(int row, int col) {
+		checkCell(row, col);
+		if(types[col] == CsvColumn.Type.STRING) {
+			int code = sections[col].getInt(4 * row);
+			return code < 0 || dictionary(col)[code].isEmpty();
+		}
+		return (sections[col].get(row >>> 3) & (1 << (row & 7))) != 0;
+	}
+
+	private String[] dictionary(int col) {
+		String[] dictionary = dictionaries.get(col);
+		if(dictionary == null) {
+			ByteBuffer section = sections[col];
+			int pos = 4 * numRows;
+			dictionary = new String[section.getInt(pos)];
+			pos += 4;
+			for(int code = 0; code < dictionary.length; code++) {
+				int len = section.getInt(pos);
+				pos += 4;
+				char[] chars = new char[len];
+				for(int i = 0; i < len; i++, pos += 2) {
+					chars[i] = section.getChar(pos);
+				}
+				dictionary[code] = new String(chars);
+			}
+			dictionaries.compareAndSet(col, null, dictionary);
+			dictionary = dictionaries.get(col);
+		}
+		return dictionary;
+	}
+
+	private void checkCell(int row, int col) {
+		if(row < 0 || row >= numRows) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", row count: " + numRows);
+		}
+		if(col < 0 || col >= headers.length) {
+			throw new IndexOutOfBoundsException("Column: " + col + ", column count: " + headers.length);
+		}
+	}
+
+	/**
+	 * Lies alle Zellen in veränderbare CSV-Daten.
+	 * @return CSV-Daten mit gleichem Inhalt.
+	 */
+	public CsvData toCsvData() {
+		List<String[]> rows = new ArrayList<String[]>(numRows + 1);
+		rows.add(headers.clone());
+		for(int row = 0; row < numRows; row++) {
+			rows.add(getRow(row));
+		}
+		return new CsvData(title, rows);
+	}
+
+	@Override
+	public String[] getHeaders() {
+		return headers;
+	}
+
+	@Override
+	public int rowCount() {
+		return numRows;
+	}
+
+	@Override
+	public String getCellAt(int row, int col) {
+		checkCell(row, col);
+		ByteBuffer section = sections[col];
+		if(types[col] == CsvColumn.Type.STRING) {
+			int code = section.getInt(4 * row);
+			return code < 0 ? null : dictionary(col)[code];
+		}
+		if(isMissing(row, col)) {
+			return "";
+		}
+		int values = bitmapBytes(numRows);
+		switch(types[col]) {
+			case INT:
+				return Integer.toString(section.getInt(values + 4 * row));
+			case LONG:
+				return Long.toString(section.getLong(values + 8 * row));
+			case DOUBLE:
+				return Double.toString(section.getDouble(values + 8 * row));
+			default:
+				return Boolean.toString(section.get(values + row) != 0);
+		}
+	}
+
+	@Override
+	public int getIntAt(int row, int col) {
+		if(types[col] != CsvColumn.Type.INT) {
+			return super.getIntAt(row, col);
+		}
+		checkPresent(row, col);
+		return sections[col].getInt(bitmapBytes(numRows) + 4 * row);
+	}
+
+	@Override
+	public long getLongAt(int row, int col) {
+		if(types[col] == CsvColumn.Type.INT) {
+			return getIntAt(row, col);
+		} else if(types[col] != CsvColumn.Type.LONG) {
+			return super.getLongAt(row, col);
+		}
+		checkPresent(row, col);
+		return sections[col].getLong(bitmapBytes(numRows) + 8 * row);
+	}
+
+	@Override
+	public double getDoubleAt(int row, int col) {
+		if(types[col] == CsvColumn.Type.INT || types[col] == CsvColumn.Type.LONG) {
+			return getLongAt(row, col);
+		} else if(types[col] != CsvColumn.Type.DOUBLE) {
+			return super.getDoubleAt(row, col);
+		}
+		checkPresent(row, col);
+		return sections[col].getDouble(bitmapBytes(numRows) + 8 * row);
+	}
+
+	@Override
+	public boolean getBooleanAt(int row, int col) {
+		if(types[col] != CsvColumn.Type.BOOLEAN) {
+			return super.getBooleanAt(row, col);
+		}
+		checkPresent(row, col);
+		return sections[col].get(bitmapBytes(numRows) + row) != 0;
+	}
+
+	/**
+	 * Typisierte Getter liefern für fehlende Werte wie ColumnarCsvData eine NumberFormatException.
+	 */
+	private void checkPresent(int row, int col) {
+		if(isMissing(row, col)) {
+			throw new NumberFormatException("Missing value in row " + row);
+		}
+	}
+
+	@Override
+	public String[] getRow(int row) {
+		String[] cells = new String[headers.length];
+		for(int col = 0; col < headers.length; col++) {
+			cells[col] = getCellAt(row, col);
+		}
+		return cells;
+	}
+
+	@Override
+	public List<String> getColumn(String header) {
+		int col = columnWithHeader(header);
+		List<String> cells = new ArrayList<String>(numRows + 1);
+		cells.add(header);
+		for(int row = 0; row < numRows; row++) {
+			cells.add(getCellAt(row, col));
+		}
+		return cells;
+	}
+
+	@Override
+	public void setCellAt(int row, int col, String content) {
+		throw new UnsupportedOperationException("SnapshotCsvData is read-only, use toCsvData()");
+	}
+
+	@Override
+	public void addColumn(String header) {
+		throw new UnsupportedOperationException("SnapshotCsvData is read-only, use toCsvData()");
+	}
+
+	@Override
+	public void removeRow(int row) {
+		throw new UnsupportedOperationException("SnapshotCsvData is read-only, use toCsvData()");
+	}
+
+	@Override
+	public void addRow(int row) {
+		throw new UnsupportedOperationException("SnapshotCsvData is read-only, use toCsvData()");
+	}
+}
@@ -0,0 +1,53 @@
+package org.andreschnabel.pecker.tests.collections;
+
+import org.andreschnabel.pecker.collections.ChunkedList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ChunkedListTest {
+
+	@Test
+	public void testAppendAndGet() {
+		List<Integer> lst = new ChunkedList<Integer>(4);
+		for(int i = 0; i < 100; i++) {
+			lst.add(i);
+		}
+		Assert.assertEquals(100, lst.size());
+		for(int i = 0; i < 100; i++) {
+			Assert.assertEquals(Integer.valueOf(i), lst.get(i));
+		}
+	}
+
+	@Test
+	public void testRandomOperationsMatchArrayList() {
+		Random rand = new Random(42);
+		List<Integer> expected = new ArrayList<Integer>();
+		List<Integer> actual = new ChunkedList<Integer>(8);
+		for(int op = 0; op < 20000; op++) {
+			int choice = rand.nextInt(10);
+			if(choice < 5 || expected.isEmpty()) {
+				int index = rand.nextInt(expected.size() + 1);
+				expected.add(index, op);
+				actual.add(index, op);
+			} else if(choice < 8) {
+				int index = rand.nextInt(expected.size());
+				Assert.assertEquals(expected.remove(index), actual.remove(index));
+			} else {
+				int index = rand.nextInt(expected.size());
+				Assert.assertEquals(expected.set(index, -op), actual.set(index, -op));
+			}
+		}
+		Assert.assertEquals(expected, actual);
+		actual.clear();
+		Assert.assertTrue(actual.isEmpty());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testOutOfBounds() {
+		new ChunkedList<String>().get(0);
+	}
+}
@@ -0,0 +1,141 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.serialization.BlockGzipInputStream;
+import org.andreschnabel.pecker.serialization.BlockGzipOutputStream;
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvHelpers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class BlockGzipTest {
+
+	private static byte[] testBytes() {
+		byte[] data = new byte[3 * BlockGzipOutputStream.BLOCK_SIZE + 1234];
+		Random random = new Random(42);
+		for(int i = 0; i < data.length; i++) {
+			data[i] = (byte)(i % 3 == 0 ? random.nextInt() : 'a' + i % 7);
+		}
+		return data;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[1000];
+		int n;
+		while((n = in.read(buf)) >= 0) {
+			out.write(buf, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+	private static byte[] compress(byte[] data, int numThreads) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BlockGzipOutputStream out = new BlockGzipOutputStream(bytes, 6, numThreads);
+		out.write(data, 0, 100);
+		out.write(data[100]);
+		out.write(data, 101, data.length - 101);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		byte[] data = testBytes();
+		byte[] sequential = compress(data, 1);
+		byte[] parallel = compress(data, 4);
+		Assert.assertArrayEquals(sequential, parallel);
+		Assert.assertArrayEquals(data, readAll(new BlockGzipInputStream(new ByteArrayInputStream(parallel), 4)));
+		Assert.assertArrayEquals(data, readAll(new BlockGzipInputStream(new ByteArrayInputStream(parallel), 1)));
+	}
+
+	@Test
+	public void testReadableAsGzip() throws IOException {
+		byte[] data = testBytes();
+		Assert.assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(compress(data, 2)))));
+	}
+
+	@Test
+	public void testPlainGzipFallback() throws IOException {
+		byte[] data = testBytes();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(bytes);
+		out.write(data);
+		out.close();
+		Assert.assertArrayEquals(data, readAll(new BlockGzipInputStream(new ByteArrayInputStream(bytes.toByteArray()), 3)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorruptBlock() throws IOException {
+		byte[] compressed = compress(testBytes(), 2);
+		compressed[compressed.length / 2] ^= 0x55;
+		readAll(new BlockGzipInputStream(new ByteArrayInputStream(compressed), 2));
+	}
+
+	@Test
+	public void testSaveAndParseCompressedCsv() throws Exception {
+		List<String[]> rows = new ArrayList<String[]>();
+		rows.add(new String[]{"id", "name"});
+		for(int i = 0; i < 20000; i++) {
+			rows.add(new String[]{Integer.toString(i), "name" + (i % 13)});
+		}
+		CsvData data = new CsvData(rows);
+		File f = new File("compressed.csv.gz");
+		try {
+			data.save(f);
+			Assert.assertTrue(f.length() < data.toString().length() / 2);
+			Assert.assertEquals(data.toString(), new String(readAll(new GZIPInputStream(new FileInputStream(f)))));
+			Assert.assertEquals(data.toString(), CsvHelpers.parseCsv(f).toString());
+			Assert.assertEquals(data.toString(), CsvHelpers.parseCsvParallel(f).toString());
+
+			GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(f));
+			out.write(data.toString().getBytes());
+			out.close();
+			Assert.assertEquals(data.toString(), CsvHelpers.parseCsv(f).toString());
+		} finally {
+			f.delete();
+		}
+	}
+
+	private static int countThreads(boolean daemon) {
+		int n = 0;
+		for(Thread t : Thread.getAllStackTraces().keySet()) {
+			if(t.getName().equals("BlockGzip") && t.isAlive() && t.isDaemon() == daemon) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	@Test
+	public void testDaemonThreads() throws IOException {
+		byte[] data = testBytes();
+		BlockGzipOutputStream out = new BlockGzipOutputStream(new ByteArrayOutputStream(), 6, 4);
+		out.write(data, 0, BlockGzipOutputStream.BLOCK_SIZE);
+		out.write(0);
+		Assert.assertTrue(countThreads(true) > 0);
+		Assert.assertEquals(0, countThreads(false));
+		out.close();
+
+		// Kleine Daten werden im aufrufenden Thread komprimiert.
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		out = new BlockGzipOutputStream(bytes, 6, 4);
+		out.write(data, 0, 100);
+		out.close();
+		Assert.assertArrayEquals(Arrays.copyOf(data, 100), readAll(new BlockGzipInputStream(new ByteArrayInputStream(bytes.toByteArray()), 4)));
+	}
+}
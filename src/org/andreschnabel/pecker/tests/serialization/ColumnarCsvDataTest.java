@@ -0,0 +1,137 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.serialization.ColumnarCsvData;
+import org.andreschnabel.pecker.serialization.CsvColumn;
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvHashIndex;
+import org.andreschnabel.pecker.serialization.CsvZoneMap;
+import org.andreschnabel.pecker.serialization.CsvHelpers;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ColumnarCsvDataTest {
+
+	private static final String CSV = "name,age,score,big,active,zip\nPeter,23,1.5,10000000000,true,007\nHans,,2.25,3,false,123\n";
+
+	@Test
+	public void testInferredTypes() throws Exception {
+		ColumnarCsvData data = new ColumnarCsvData(CsvHelpers.parseCsv(CSV));
+		Assert.assertEquals(CsvColumn.Type.STRING, data.getColumnType(0));
+		Assert.assertEquals(CsvColumn.Type.INT, data.getColumnType(1));
+		Assert.assertEquals(CsvColumn.Type.DOUBLE, data.getColumnType(2));
+		Assert.assertEquals(CsvColumn.Type.LONG, data.getColumnType(3));
+		Assert.assertEquals(CsvColumn.Type.BOOLEAN, data.getColumnType(4));
+		Assert.assertEquals(CsvColumn.Type.STRING, data.getColumnType(5));
+
+		Assert.assertEquals(23, data.getIntAt(0, "age"));
+		Assert.assertEquals(2.25, data.getDoubleAt(1, "score"), 0.0);
+		Assert.assertEquals(10000000000L, data.getLongAt(0, "big"));
+		Assert.assertTrue(data.getBooleanAt(0, "active"));
+		Assert.assertEquals("", data.getCellAt(1, "age"));
+		Assert.assertEquals("007", data.getCellAt(0, "zip"));
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		CsvData rows = CsvHelpers.parseCsv(CSV);
+		ColumnarCsvData data = new ColumnarCsvData(rows);
+		Assert.assertEquals(rows.toString(), data.toString());
+		Assert.assertArrayEquals(rows.getRow(1), data.getRow(1));
+		Assert.assertEquals(rows.getColumn("score"), data.getColumn("score"));
+	}
+
+	@Test
+	public void testWidenOnSet() throws Exception {
+		ColumnarCsvData data = new ColumnarCsvData(CsvHelpers.parseCsv(CSV));
+		data.setCellAt(0, "age", "unknown");
+		Assert.assertEquals(CsvColumn.Type.STRING, data.getColumnType(1));
+		Assert.assertEquals("unknown", data.getCellAt(0, "age"));
+		Assert.assertEquals("", data.getCellAt(1, "age"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDeclaredTypeRejectsValue() {
+		ColumnarCsvData data = new ColumnarCsvData(new String[]{"id"}, new CsvColumn.Type[]{CsvColumn.Type.INT});
+		data.appendRow(new String[]{"1"});
+		data.setCellAt(0, 0, "x");
+	}
+
+	@Test
+	public void testAddAndRemoveRows() {
+		ColumnarCsvData data = new ColumnarCsvData(new String[]{"id", "name"});
+		data.appendRow(new String[]{"1", "a"});
+		data.appendRow(new String[]{"3", "c"});
+		data.addRow(1);
+		data.setCellAt(1, "id", "2");
+		data.setCellAt(1, "name", "b");
+		Assert.assertEquals(3, data.rowCount());
+		Assert.assertArrayEquals(new String[]{"2", "b"}, data.getRow(1));
+		data.removeRow(0);
+		Assert.assertArrayEquals(new String[]{"2", "b"}, data.getRow(0));
+		Assert.assertEquals(3, data.getIntAt(1, "id"));
+		data.addColumn("extra");
+		Assert.assertEquals(3, data.columnCount());
+		Assert.assertNull(data.getCellAt(0, "extra"));
+	}
+
+	@Test
+	public void testListenersSeeStoredValue() {
+		ColumnarCsvData data = new ColumnarCsvData(new String[]{"id"}, new CsvColumn.Type[]{CsvColumn.Type.INT});
+		data.appendRow(new String[]{"1"});
+		data.appendRow(new String[]{"3"});
+		data.appendRow(new String[]{"2"});
+		CsvHashIndex index = data.hashIndex("id");
+		CsvZoneMap zoneMap = data.zoneMap("id");
+
+		data.setCellAt(2, "id", "007");
+		Assert.assertEquals("7", data.getCellAt(2, "id"));
+		Assert.assertArrayEquals(new int[]{2}, index.rows("7"));
+		Assert.assertArrayEquals(new int[]{2}, zoneMap.range("5", null));
+
+		data.setCellAt(2, "id", "8");
+		Assert.assertEquals(3, index.keys().size());
+		Assert.assertFalse(index.keys().contains("7"));
+		Assert.assertFalse(index.keys().contains("007"));
+	}
+
+	@Test
+	public void testDictionaryReclaimsCodes() {
+		ColumnarCsvData data = new ColumnarCsvData(new String[]{"city"}, new CsvColumn.Type[]{CsvColumn.Type.STRING});
+		for(int i = 0; i < 100; i++) {
+			data.appendRow(new String[]{i % 2 == 0 ? "Bonn" : "Köln"});
+		}
+		CsvColumn column = data.getTypedColumn(0);
+		Assert.assertEquals(2, column.dictionarySize());
+
+		for(int i = 0; i < 1000; i++) {
+			data.setCellAt(0, 0, "temp" + i);
+		}
+		Assert.assertEquals(3, column.dictionarySize());
+		Assert.assertEquals("temp999", data.getCellAt(0, 0));
+
+		for(int row = data.rowCount() - 1; row >= 0; row -= 2) {
+			data.removeRow(row);
+		}
+		data.setCellAt(0, 0, "Bonn");
+		Assert.assertEquals(1, column.dictionarySize());
+		Assert.assertEquals("Bonn", data.getCellAt(49, 0));
+	}
+
+	@Test
+	public void testDistinctValuesStoredPlain() {
+		ColumnarCsvData data = new ColumnarCsvData(new String[]{"id"}, new CsvColumn.Type[]{CsvColumn.Type.STRING});
+		for(int i = 0; i < 2000; i++) {
+			data.appendRow(new String[]{"id" + i});
+		}
+		CsvColumn column = data.getTypedColumn(0);
+		Assert.assertEquals(-1, column.dictionarySize());
+		data.addRow(5);
+		data.setCellAt(5, 0, "new");
+		data.removeRow(0);
+		Assert.assertEquals(2000, data.rowCount());
+		Assert.assertEquals("id1", data.getCellAt(0, 0));
+		Assert.assertEquals("new", data.getCellAt(4, 0));
+		Assert.assertEquals("id5", data.getCellAt(5, 0));
+		Assert.assertEquals("id1999", data.getCellAt(1999, 0));
+	}
+}
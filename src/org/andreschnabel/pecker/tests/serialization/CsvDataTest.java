@@ -2,6 +2,7 @@ package org.andreschnabel.pecker.tests.serialization;
 
 import org.andreschnabel.pecker.functional.ITransform;
 import org.andreschnabel.pecker.helpers.AssertHelpers;
+import org.andreschnabel.pecker.serialization.CsvColumnHandle;
 import org.andreschnabel.pecker.serialization.CsvData;
 import org.junit.Assert;
 import org.junit.Test;
@@ -69,6 +70,68 @@ public class CsvDataTest {
 		}, persons);
 	}
 
+	@Test
+	public void testAddAndRemoveRow() throws Exception {
+		List<String[]> rows = new LinkedList<String[]>();
+		rows.add(new String[]{"id"});
+		for(int i = 0; i < 5000; i++) {
+			rows.add(new String[]{String.valueOf(i)});
+		}
+		CsvData data = new CsvData(rows);
+		data.addRow(2500);
+		data.setCellAt(2500, "id", "new");
+		Assert.assertEquals(5001, data.rowCount());
+		Assert.assertEquals("2499", data.getCellAt(2499, 0));
+		Assert.assertEquals("new", data.getCellAt(2500, 0));
+		Assert.assertEquals("2500", data.getCellAt(2501, 0));
+		data.removeRow(0);
+		Assert.assertEquals("1", data.getCellAt(0, "id"));
+		Assert.assertEquals("4999", data.getCellAt(4999, "id"));
+	}
+
+	@Test
+	public void testAddRowIndexExcludesHeader() {
+		List<String[]> rows = new LinkedList<String[]>();
+		rows.add(new String[]{"name", "age"});
+		rows.add(new String[]{"Heinrich", "44"});
+		CsvData data = new CsvData(rows);
+		data.addRow(0);
+		Assert.assertArrayEquals(new String[]{"name", "age"}, data.getHeaders());
+		Assert.assertArrayEquals(new String[]{null, null}, data.getRow(0));
+		Assert.assertArrayEquals(new String[]{"Heinrich", "44"}, data.getRow(1));
+
+		data.addRow(data.rowCount());
+		Assert.assertEquals(3, data.rowCount());
+		Assert.assertArrayEquals(new String[]{null, null}, data.getRow(2));
+		Assert.assertArrayEquals(new String[]{"Heinrich", "44"}, data.getRow(1));
+	}
+
+	@Test
+	public void testColumnHandle() throws Exception {
+		List<String[]> rows = new LinkedList<String[]>();
+		rows.add(new String[]{"name", "age"});
+		rows.add(new String[]{"Heinrich", "44"});
+		CsvData data = new CsvData(rows);
+		Assert.assertSame(data.getSchema(), data.getSchema());
+		Assert.assertEquals(1, data.columnWithHeader("age"));
+		Assert.assertEquals(-1, data.columnWithHeader("missing"));
+
+		CsvColumnHandle age = data.column("age");
+		Assert.assertEquals("44", data.getCellAt(0, age));
+		data.setCellAt(0, age, "45");
+		Assert.assertEquals("45", data.getCellAt(0, "age"));
+
+		data.addColumn("city");
+		Assert.assertEquals(2, data.columnWithHeader("city"));
+		try {
+			data.getCellAt(0, age);
+			Assert.fail("Stale handle must be rejected");
+		} catch(IllegalStateException e) {
+			// erwartet
+		}
+		Assert.assertEquals("45", data.getCellAt(0, data.column("age")));
+	}
+
 	private static class Person {
 		public String name;
 		public int age;
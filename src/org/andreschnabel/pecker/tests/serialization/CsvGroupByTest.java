@@ -0,0 +1,54 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.serialization.ColumnarCsvData;
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvGroupBy;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CsvGroupByTest {
+
+	private static CsvData testData() {
+		return new CsvData(new ArrayList<String[]>(Arrays.asList(
+				new String[]{"city", "kind", "amount"},
+				new String[]{"Bonn", "a", "10"},
+				new String[]{"Berlin", "a", "2.5"},
+				new String[]{"Bonn", "b", ""},
+				new String[]{"Bonn", "a", "4"},
+				new String[]{"Berlin", "b", "1"})));
+	}
+
+	@Test
+	public void testGroupBy() {
+		CsvData result = testData().groupBy("city").count().sum("amount").avg("amount").min("amount").max("amount").execute();
+		Assert.assertArrayEquals(new String[]{"city", "count", "sum(amount)", "avg(amount)", "min(amount)", "max(amount)"}, result.getHeaders());
+		Assert.assertEquals(2, result.rowCount());
+		Assert.assertArrayEquals(new String[]{"Bonn", "3", "14", "7.0", "4", "10"}, result.getRow(0));
+		Assert.assertArrayEquals(new String[]{"Berlin", "2", "3.5", "1.75", "1", "2.5"}, result.getRow(1));
+	}
+
+	@Test
+	public void testMultipleKeys() {
+		CsvData result = new ColumnarCsvData(testData()).groupBy("city", "kind").count().sum("amount").execute();
+		Assert.assertEquals(4, result.rowCount());
+		Assert.assertArrayEquals(new String[]{"Bonn", "a", "2", "14"}, result.getRow(0));
+		Assert.assertArrayEquals(new String[]{"Bonn", "b", "1", "0"}, result.getRow(2));
+	}
+
+	@Test
+	public void testParallelMatchesSequential() throws Exception {
+		int numRows = CsvGroupBy.MIN_ROWS_PER_THREAD * 4 + 17;
+		List<String[]> rows = new ArrayList<String[]>(numRows + 1);
+		rows.add(new String[]{"key", "value"});
+		for(int i = 0; i < numRows; i++) {
+			rows.add(new String[]{"k" + (i * 7919 % 101), Integer.toString(i % 1000)});
+		}
+		CsvData data = new CsvData(rows);
+		CsvGroupBy groupBy = data.groupBy("key").count().sum("value").min("value").max("value");
+		Assert.assertEquals(groupBy.execute().toString(), groupBy.executeParallel(4).toString());
+	}
+}
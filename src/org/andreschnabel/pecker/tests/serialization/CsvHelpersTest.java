@@ -1,5 +1,6 @@
 package org.andreschnabel.pecker.tests.serialization;
 
+import org.andreschnabel.pecker.helpers.FileHelpers;
 import org.andreschnabel.pecker.serialization.CsvData;
 import org.andreschnabel.pecker.serialization.CsvHelpers;
 import org.junit.Assert;
@@ -56,4 +57,46 @@ public class CsvHelpersTest {
 		Assert.assertArrayEquals(row3, data.getRow(1));
 	}
 
+	@Test
+	public void testParseCsvParallel() throws Exception {
+		StringBuilder sb = new StringBuilder("id,text,flag\n");
+		for(int i = 0; i < 50000; i++) {
+			sb.append(i).append(",\"a,b").append(i % 7 == 0 ? "\n" : "").append("c\",").append(i % 2).append('\n');
+		}
+		String csv = sb.toString();
+
+		CsvData expected = CsvHelpers.parseCsv(csv);
+		CsvData actual = CsvHelpers.parseCsvParallel(csv, 4);
+
+		Assert.assertEquals(50000, actual.rowCount());
+		Assert.assertArrayEquals(expected.getHeaders(), actual.getHeaders());
+		Assert.assertEquals(expected.toString(), actual.toString());
+	}
+
+	@Test
+	public void testReadHeadersAndSample() throws Exception {
+		StringBuilder sb = new StringBuilder("id,name\n");
+		for(int i = 0; i < 10000; i++) {
+			sb.append(i).append(",n").append(i).append('\n');
+		}
+		sb.append("1,2,3,4\n");
+		File f = new File("sample.csv");
+		FileHelpers.writeStrToFile(sb.toString(), f);
+		try {
+			Assert.assertArrayEquals(new String[]{"id", "name"}, CsvHelpers.readHeaders(f));
+			CsvData sample = CsvHelpers.parseCsvSample(f, 3);
+			Assert.assertEquals(3, sample.rowCount());
+			Assert.assertEquals("n2", sample.getCellAt(2, "name"));
+			Assert.assertEquals(0, CsvHelpers.parseCsvSample(f, 0).rowCount());
+			try {
+				CsvHelpers.parseCsv(f);
+				Assert.fail();
+			} catch(Exception e) {
+				Assert.assertTrue(e.getMessage().contains("too many columns"));
+			}
+		} finally {
+			f.delete();
+		}
+	}
+
 }
@@ -0,0 +1,75 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.serialization.ColumnarCsvData;
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvHashIndex;
+import org.andreschnabel.pecker.serialization.CsvSortedIndex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class CsvIndexTest {
+
+	private static CsvData testData() {
+		return new CsvData(new ArrayList<String[]>(Arrays.asList(
+				new String[]{"name", "city"},
+				new String[]{"Hans", "Bonn"},
+				new String[]{"Peter", "Berlin"},
+				new String[]{"Heinrich", "Bonn"},
+				new String[]{"Paul", "Aachen"})));
+	}
+
+	@Test
+	public void testHashIndex() {
+		CsvData data = testData();
+		CsvHashIndex index = data.hashIndex("city");
+		Assert.assertSame(index, data.hashIndex("city"));
+		Assert.assertArrayEquals(new int[]{0, 2}, index.rows("Bonn"));
+		Assert.assertEquals(1, index.firstRow("Berlin"));
+		Assert.assertEquals(-1, index.firstRow("Köln"));
+
+		data.setCellAt(0, "city", "Köln");
+		Assert.assertArrayEquals(new int[]{2}, index.rows("Bonn"));
+		Assert.assertEquals(0, index.firstRow("Köln"));
+
+		data.removeRow(1);
+		Assert.assertArrayEquals(new int[]{1}, index.rows("Bonn"));
+		Assert.assertEquals(2, index.firstRow("Aachen"));
+		Assert.assertEquals(0, index.count("Berlin"));
+
+		data.addRow(0);
+		Assert.assertArrayEquals(new int[]{0}, index.rows(null));
+		Assert.assertArrayEquals(new int[]{2}, index.rows("Bonn"));
+		Assert.assertEquals(1, index.firstRow("Köln"));
+	}
+
+	@Test
+	public void testSortedIndex() {
+		CsvData data = testData();
+		CsvSortedIndex index = data.sortedIndex("name");
+		Assert.assertArrayEquals(new int[]{0, 2, 3, 1}, index.sortedRows());
+		Assert.assertArrayEquals(new int[]{3, 1}, index.prefix("P"));
+		Assert.assertArrayEquals(new int[]{2, 3}, index.range("Hei", "Pe"));
+		Assert.assertEquals("Hans", index.minKey());
+		Assert.assertEquals("Peter", index.maxKey());
+
+		data.setCellAt(1, "name", "Anna");
+		data.addRow(4);
+		data.removeRow(0);
+		Assert.assertArrayEquals(new int[]{0}, index.rows("Anna"));
+		Assert.assertArrayEquals(new int[]{3, 0, 1, 2}, index.sortedRows());
+		Assert.assertArrayEquals(new int[]{0, 1, 2}, index.range(null, null));
+		Assert.assertEquals("Anna", index.minKey());
+	}
+
+	@Test
+	public void testColumnarIndex() {
+		ColumnarCsvData data = new ColumnarCsvData(testData());
+		CsvHashIndex index = data.hashIndex("city");
+		data.removeRow(0);
+		data.setCellAt(0, 1, "Bonn");
+		Assert.assertArrayEquals(new int[]{0, 1}, index.rows("Bonn"));
+	}
+}
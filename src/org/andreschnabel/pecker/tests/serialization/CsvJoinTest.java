@@ -0,0 +1,88 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvJoin;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CsvJoinTest {
+
+	private static CsvData persons() {
+		return new CsvData(new ArrayList<String[]>(Arrays.asList(
+				new String[]{"id", "name"},
+				new String[]{"1", "Hans"},
+				new String[]{"2", "Peter"},
+				new String[]{"3", "Paul"})));
+	}
+
+	private static CsvData addresses() {
+		return new CsvData(new ArrayList<String[]>(Arrays.asList(
+				new String[]{"personId", "city", "name"},
+				new String[]{"2", "Bonn", "home"},
+				new String[]{"1", "Berlin", "home"},
+				new String[]{"2", "Köln", "work"},
+				new String[]{"4", "Aachen", "home"})));
+	}
+
+	@Test
+	public void testInnerJoin() throws Exception {
+		CsvData result = persons().join(addresses(), "id", "personId", CsvJoin.Type.INNER);
+		Assert.assertArrayEquals(new String[]{"id", "name", "city", "name_right"}, result.getHeaders());
+		Assert.assertEquals(3, result.rowCount());
+		Assert.assertArrayEquals(new String[]{"1", "Hans", "Berlin", "home"}, result.getRow(0));
+		Assert.assertArrayEquals(new String[]{"2", "Peter", "Bonn", "home"}, result.getRow(1));
+		Assert.assertArrayEquals(new String[]{"2", "Peter", "Köln", "work"}, result.getRow(2));
+	}
+
+	@Test
+	public void testLeftJoin() throws Exception {
+		CsvData result = persons().join(addresses(), "id", "personId", CsvJoin.Type.LEFT);
+		Assert.assertEquals(4, result.rowCount());
+		Assert.assertArrayEquals(new String[]{"3", "Paul", null, null}, result.getRow(3));
+
+		result = addresses().join(persons(), "personId", "id", CsvJoin.Type.LEFT);
+		Assert.assertArrayEquals(new String[]{"personId", "city", "name", "name_right"}, result.getHeaders());
+		Assert.assertArrayEquals(new String[]{"2", "Bonn", "home", "Peter"}, result.getRow(0));
+		Assert.assertArrayEquals(new String[]{"4", "Aachen", "home", null}, result.getRow(3));
+	}
+
+	@Test
+	public void testRenamedHeadersAreUnique() throws Exception {
+		CsvData left = new CsvData(new ArrayList<String[]>(Arrays.asList(
+				new String[]{"id", "x", "x_right"},
+				new String[]{"1", "a", "b"})));
+		CsvData right = new CsvData(new ArrayList<String[]>(Arrays.asList(
+				new String[]{"id", "x", "x_right"},
+				new String[]{"1", "c", "d"})));
+		CsvData result = left.join(right, "id", "id", CsvJoin.Type.INNER);
+		Assert.assertArrayEquals(new String[]{"id", "x", "x_right", "x_right_right", "x_right_right_right"}, result.getHeaders());
+		Assert.assertEquals("b", result.getCellAt(0, "x_right"));
+		Assert.assertEquals("c", result.getCellAt(0, "x_right_right"));
+		Assert.assertEquals("d", result.getCellAt(0, "x_right_right_right"));
+	}
+
+	@Test
+	public void testParallelAndSpillMatchInMemory() throws Exception {
+		int numRows = CsvJoin.MIN_ROWS_PER_THREAD * 4;
+		List<String[]> leftRows = new ArrayList<String[]>();
+		leftRows.add(new String[]{"key", "a"});
+		for(int i = 0; i < numRows; i++) {
+			leftRows.add(new String[]{"k" + (i % 5003), Integer.toString(i)});
+		}
+		List<String[]> rightRows = new ArrayList<String[]>();
+		rightRows.add(new String[]{"key", "b"});
+		for(int i = 0; i < 6000; i++) {
+			rightRows.add(new String[]{"k" + (i * 7 % 6000), Integer.toString(i)});
+		}
+		CsvData left = new CsvData(leftRows);
+		CsvData right = new CsvData(rightRows);
+
+		String expected = new CsvJoin(left, "key", right, "key").type(CsvJoin.Type.LEFT).execute().toString();
+		Assert.assertEquals(expected, new CsvJoin(left, "key", right, "key").type(CsvJoin.Type.LEFT).parallel(4).execute().toString());
+		Assert.assertEquals(expected, new CsvJoin(left, "key", right, "key").type(CsvJoin.Type.LEFT).memoryBudget(10000).execute().toString());
+	}
+}
@@ -0,0 +1,135 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.helpers.FileHelpers;
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvHelpers;
+import org.andreschnabel.pecker.serialization.CsvNumbers;
+import org.andreschnabel.pecker.serialization.CsvReader;
+import org.andreschnabel.pecker.serialization.ICsvCellHandler;
+import org.andreschnabel.pecker.serialization.MappedCsvData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class CsvNumbersTest {
+
+	private static void assertSameDouble(String str) throws Exception {
+		double expected = Double.parseDouble(str);
+		String padded = "#" + str + "#";
+		int to = padded.length() - 1;
+		Assert.assertEquals(str, Double.doubleToLongBits(expected), Double.doubleToLongBits(CsvNumbers.parseDouble(padded.toCharArray(), 1, to)));
+		Assert.assertEquals(str, Double.doubleToLongBits(expected), Double.doubleToLongBits(CsvNumbers.parseDouble(padded, 1, to)));
+		ByteBuffer bytes = ByteBuffer.wrap(padded.getBytes("US-ASCII"));
+		Assert.assertEquals(str, Double.doubleToLongBits(expected), Double.doubleToLongBits(CsvNumbers.parseDouble(bytes, 1, to)));
+	}
+
+	private static void assertSameLong(String str) throws Exception {
+		long expected = Long.parseLong(str);
+		Assert.assertEquals(expected, CsvNumbers.parseLong(str.toCharArray(), 0, str.length()));
+		Assert.assertEquals(expected, CsvNumbers.parseLong(str, 0, str.length()));
+		Assert.assertEquals(expected, CsvNumbers.parseLong(ByteBuffer.wrap(str.getBytes("US-ASCII")), 0, str.length()));
+	}
+
+	@Test
+	public void testDoublesMatchJdk() throws Exception {
+		String[] samples = {"0", "-0", "1", "1.5", "-2.25", "+3", ".5", "1.", "0.1", "0.3", "123456.789", "1e10", "1E-5", "2.5e+3",
+				"999999999999999", "1234567890123456789", "0.000000000000000000001", "1e22", "1e23", "1e-400", "NaN", "-Infinity",
+				"0x1p3", "1d", " 1", "0.00000000000000000000000000000000000125", "1234.5678901234567890123456789012345"};
+		for(String sample : samples) {
+			assertSameDouble(sample);
+		}
+		Random random = new Random(7);
+		for(int i = 0; i < 10000; i++) {
+			assertSameDouble(Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(20) - 10)));
+			assertSameDouble(random.nextInt(100000) + "." + random.nextInt(100000));
+		}
+	}
+
+	@Test
+	public void testIntegersMatchJdk() throws Exception {
+		for(String sample : new String[]{"0", "-0", "+7", "42", "-2147483648", "2147483647", "2147483648", "9223372036854775807", "-9223372036854775808",
+				"0000000000000000000000000000000000000042"}) {
+			assertSameLong(sample);
+		}
+		Assert.assertEquals(Integer.MIN_VALUE, CsvNumbers.parseInt("-2147483648", 0, 11));
+		Assert.assertEquals(123, CsvNumbers.parseInt("x123y".toCharArray(), 1, 4));
+	}
+
+	@Test
+	public void testErrors() {
+		for(String sample : new String[]{"", "-", "1.5", "1a", "2147483648"}) {
+			try {
+				CsvNumbers.parseInt(sample, 0, sample.length());
+				Assert.fail(sample);
+			} catch(NumberFormatException e) {
+			}
+		}
+		for(String sample : new String[]{"", ".", "1e", "1.5.", "e5", "-"}) {
+			try {
+				CsvNumbers.parseDouble(sample.toCharArray(), 0, sample.length());
+				Assert.fail(sample);
+			} catch(NumberFormatException e) {
+			}
+		}
+	}
+
+	@Test
+	public void testBooleansAndCanonical() {
+		Assert.assertTrue(CsvNumbers.parseBoolean("TRUE", 0, 4));
+		Assert.assertFalse(CsvNumbers.parseBoolean("yes", 0, 3));
+		Assert.assertFalse(CsvNumbers.parseBoolean((String)null, 0, 0));
+		Assert.assertTrue(CsvNumbers.isCanonicalInteger("-12".toCharArray(), 0, 3));
+		Assert.assertTrue(CsvNumbers.isCanonicalInteger("0".toCharArray(), 0, 1));
+		Assert.assertFalse(CsvNumbers.isCanonicalInteger("007".toCharArray(), 0, 3));
+		Assert.assertFalse(CsvNumbers.isCanonicalInteger("-0".toCharArray(), 0, 2));
+		Assert.assertFalse(CsvNumbers.isCanonicalInteger("+1".toCharArray(), 0, 2));
+	}
+
+	@Test
+	public void testTypedGetters() throws Exception {
+		String csv = "i,d,b,s\n12,1.5,true,\"x, y\"\n-3,,False,z\n";
+		CsvData data = CsvHelpers.parseCsv(csv);
+		File f = new File("numbers.csv");
+		FileHelpers.writeStrToFile(csv, f);
+		try {
+			for(CsvData d : new CsvData[]{data, new MappedCsvData(f)}) {
+				Assert.assertEquals(12, d.getIntAt(0, "i"));
+				Assert.assertEquals(-3L, d.getLongAt(1, 0));
+				Assert.assertEquals(1.5, d.getDoubleAt(0, "d"), 0);
+				Assert.assertTrue(d.getBooleanAt(0, "b"));
+				Assert.assertFalse(d.getBooleanAt(1, "b"));
+				try {
+					d.getDoubleAt(1, "d");
+					Assert.fail();
+				} catch(NumberFormatException e) {
+				}
+			}
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testReadRowWithCellHandler() throws Exception {
+		CsvReader reader = new CsvReader(new StringReader("a,b\n1,2.5\n3,4\n"));
+		final double[] sums = new double[2];
+		ICsvCellHandler sum = new ICsvCellHandler() {
+			@Override
+			public void cell(int column, char[] buf, int off, int len) {
+				sums[column] += CsvNumbers.parseDouble(buf, off, off + len);
+			}
+		};
+		int rows = 0;
+		while(reader.readRow(sum)) {
+			rows++;
+		}
+		reader.close();
+		Assert.assertEquals(2, rows);
+		Assert.assertEquals(4.0, sums[0], 0);
+		Assert.assertEquals(6.5, sums[1], 0);
+	}
+}
@@ -0,0 +1,79 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.functional.IAction;
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvHelpers;
+import org.andreschnabel.pecker.serialization.CsvPipeline;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.Writer;
+
+public class CsvPipelineTest {
+
+	private static String testCsv(int numRows) {
+		StringBuilder sb = new StringBuilder("id,name,comment\n");
+		for(int i = 0; i < numRows; i++) {
+			sb.append(i).append(",Name ").append(i % 17).append(",\"a, b").append(i).append("\"\n");
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testMatchesParseCsv() throws Exception {
+		String csv = testCsv(5000);
+		CsvPipeline pipeline = new CsvPipeline(new StringReader(csv));
+		pipeline.setBlockSize(100);
+		pipeline.setQueueCapacity(1);
+		pipeline.setBatchSize(7);
+		Assert.assertEquals(CsvHelpers.parseCsv(csv).toString(), pipeline.toCsvData().toString());
+		Assert.assertEquals("id,name,comment\n", new CsvPipeline(new StringReader("id,name,comment\n")).toCsvData().toString());
+	}
+
+	@Test
+	public void testGzipFile() throws Exception {
+		String csv = testCsv(20000);
+		File f = new File("pipeline.csv.gz");
+		try {
+			Writer writer = CsvHelpers.openWriter(f);
+			writer.write(csv);
+			writer.close();
+			CsvData data = CsvHelpers.parseCsvPipelined(f);
+			Assert.assertEquals(20000, data.rowCount());
+			Assert.assertEquals(CsvHelpers.parseCsv(csv).toString(), data.toString());
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testConsumerErrorCancels() throws Exception {
+		final CsvPipeline pipeline = new CsvPipeline(new StringReader(testCsv(100000)));
+		pipeline.setBlockSize(64);
+		final int[] numRows = new int[1];
+		try {
+			pipeline.forEachRow(new IAction<String[]>() {
+				@Override
+				public void invoke(String[] row) throws Exception {
+					Assert.assertArrayEquals(new String[]{"id", "name", "comment"}, pipeline.getHeaders());
+					if(++numRows[0] == 10) {
+						throw new Exception("stop");
+					}
+				}
+			});
+			Assert.fail();
+		} catch(Exception e) {
+			Assert.assertEquals("stop", e.getMessage());
+		}
+		Assert.assertEquals(10, numRows[0]);
+	}
+
+	@Test(expected = Exception.class)
+	public void testFormatError() throws Exception {
+		CsvPipeline pipeline = new CsvPipeline(new StringReader(testCsv(1000) + "1,2,3,4\n" + testCsv(1000)));
+		pipeline.setBlockSize(32);
+		pipeline.toCsvData();
+	}
+}
@@ -0,0 +1,167 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.functional.IAction;
+import org.andreschnabel.pecker.functional.IPredicate;
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvHelpers;
+import org.andreschnabel.pecker.serialization.CsvReader;
+import org.andreschnabel.pecker.serialization.ICsvCellHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+public class CsvReaderTest {
+
+	@Test
+	public void testReadRowSmallBuffer() throws Exception {
+		String csv = "Name,\"Age\",Comment\nPeter,23,\"Test, comment\"\nHans,44,Finish";
+		CsvReader reader = new CsvReader(new StringReader(csv), 4);
+		Assert.assertArrayEquals(new String[]{"Name", "\"Age\"", "Comment"}, reader.getHeaders());
+		Assert.assertArrayEquals(new String[]{"Peter", "23", "\"Test comment\""}, reader.readRow());
+		Assert.assertArrayEquals(new String[]{"Hans", "44", "Finish"}, reader.readRow());
+		Assert.assertNull(reader.readRow());
+		reader.close();
+	}
+
+	@Test
+	public void testRowSpanningLines() throws Exception {
+		CsvReader reader = new CsvReader(new StringReader("a,b\n1\n,2\n"), 2);
+		Assert.assertArrayEquals(new String[]{"1", "2"}, reader.readRow());
+		Assert.assertNull(reader.readRow());
+	}
+
+	@Test
+	public void testHeaderOnly() throws Exception {
+		CsvReader reader = new CsvReader(new StringReader("a,b,c"));
+		Assert.assertArrayEquals(new String[]{"a", "b", "c"}, reader.getHeaders());
+		Assert.assertNull(reader.readRow());
+	}
+
+	@Test
+	public void testForEachRow() throws Exception {
+		StringBuilder sb = new StringBuilder("id,value\n");
+		for(int i = 0; i < 1000; i++) {
+			sb.append(i).append(',').append(i * 2).append('\n');
+		}
+		final List<String[]> rows = new LinkedList<String[]>();
+		new CsvReader(new StringReader(sb.toString()), 16).forEachRow(new IAction<String[]>() {
+			@Override
+			public void invoke(String[] row) {
+				rows.add(row);
+			}
+		});
+		Assert.assertEquals(1000, rows.size());
+		Assert.assertArrayEquals(new String[]{"999", "1998"}, rows.get(999));
+	}
+
+	@Test(expected = Exception.class)
+	public void testTooManyColumns() throws Exception {
+		CsvReader reader = new CsvReader(new StringReader("a,b\n1,2,3,4\n"));
+		reader.readRow();
+	}
+
+	@Test
+	public void testSelectColumns() throws Exception {
+		String csv = "a,b,c,d\n1,\"x, y\",3,4\n5,long text,7\n,8\n";
+		CsvReader reader = new CsvReader(new StringReader(csv), 3);
+		reader.selectColumns("d", "a");
+		Assert.assertArrayEquals(new String[]{"d", "a"}, reader.getHeaders());
+		Assert.assertArrayEquals(new String[]{"4", "1"}, reader.readRow());
+		Assert.assertArrayEquals(new String[]{"8", "5"}, reader.readRow());
+		Assert.assertNull(reader.readRow());
+		reader.close();
+
+		StringBuilder sb = new StringBuilder("id,name,flag\n");
+		for(int i = 0; i < 1000; i++) {
+			sb.append(i).append(",\"n,").append(i).append("\",").append(i % 2).append('\n');
+		}
+		CsvData all = CsvHelpers.parseCsv(sb.toString());
+		CsvData projected = CsvHelpers.parseCsvColumns(new StringReader(sb.toString()), "flag", "name");
+		Assert.assertEquals(all.rowCount(), projected.rowCount());
+		for(int row = 0; row < all.rowCount(); row++) {
+			Assert.assertEquals(all.getCellAt(row, "name"), projected.getCellAt(row, "name"));
+			Assert.assertEquals(all.getCellAt(row, "flag"), projected.getCellAt(row, "flag"));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSelectUnknownColumn() throws Exception {
+		new CsvReader(new StringReader("a,b\n1,2\n")).selectColumns("c");
+	}
+
+	@Test
+	public void testFilterColumn() throws Exception {
+		StringBuilder sb = new StringBuilder("id,city,text\n");
+		for(int i = 0; i < 1000; i++) {
+			sb.append(i).append(',').append(i % 3 == 0 ? "Bonn" : "Köln").append(",\"t,").append(i).append('"');
+			if(i < 999) {
+				sb.append('\n');
+			}
+		}
+		String csv = sb.toString();
+		IPredicate<String> inBonn = new IPredicate<String>() {
+			@Override
+			public boolean invoke(String city) {
+				return city.equals("Bonn");
+			}
+		};
+		IPredicate<String> even = new IPredicate<String>() {
+			@Override
+			public boolean invoke(String id) {
+				return Integer.parseInt(id) % 2 == 0;
+			}
+		};
+
+		CsvData all = CsvHelpers.parseCsv(csv);
+		List<String> expected = new LinkedList<String>();
+		for(int row = 0; row < all.rowCount(); row++) {
+			if(inBonn.invoke(all.getCellAt(row, "city")) && even.invoke(all.getCellAt(row, "id"))) {
+				expected.add(all.getCellAt(row, "text"));
+			}
+		}
+
+		CsvReader reader = new CsvReader(new StringReader(csv), 16);
+		reader.filterColumn("city", inBonn);
+		reader.filterColumn("id", even);
+		reader.selectColumns("text");
+		List<String> actual = new LinkedList<String>();
+		String[] row;
+		while((row = reader.readRow()) != null) {
+			actual.add(row[0]);
+		}
+		reader.close();
+		Assert.assertEquals(expected, actual);
+
+		Map<String, IPredicate<String>> predicates = new HashMap<String, IPredicate<String>>();
+		predicates.put("city", inBonn);
+		CsvData filtered = CsvHelpers.parseCsvWhere(new StringReader(csv), predicates);
+		Assert.assertEquals(334, filtered.rowCount());
+		Assert.assertArrayEquals(all.getRow(999), filtered.getRow(333));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFilterColumnRejectsCellHandler() throws Exception {
+		CsvReader reader = new CsvReader(new StringReader("id,city\n1,Bonn\n2,Köln"));
+		try {
+			reader.filterColumn("city", new IPredicate<String>() {
+				@Override
+				public boolean invoke(String city) {
+					return city.equals("Köln");
+				}
+			});
+			reader.readRow(new ICsvCellHandler() {
+				@Override
+				public void cell(int column, char[] buf, int off, int len) {
+					Assert.fail();
+				}
+			});
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.helpers.FileHelpers;
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvHashIndex;
+import org.andreschnabel.pecker.serialization.CsvSorter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CsvSorterTest {
+
+	@Test
+	public void testSortInMemory() {
+		CsvData data = new CsvData(new ArrayList<String[]>(Arrays.asList(
+				new String[]{"city", "age", "name"},
+				new String[]{"Bonn", "9", "a"},
+				new String[]{"Berlin", "10", "b"},
+				new String[]{"Bonn", "", "c"},
+				new String[]{"Bonn", "10", "d"},
+				new String[]{"Berlin", "10", "e"})));
+		CsvData sorted = new CsvSorter().by("city").by("age", CsvSorter.KeyType.NUMERIC, false).sort(data);
+		Assert.assertEquals("city,age,name\nBerlin,10,b\nBerlin,10,e\nBonn,10,d\nBonn,9,a\nBonn,,c\n", sorted.toString());
+		Assert.assertEquals(5, data.rowCount());
+		Assert.assertEquals("a", data.getCellAt(0, "name"));
+	}
+
+	@Test
+	public void testSortedRowsAreCopies() {
+		CsvData data = new CsvData(new ArrayList<String[]>(Arrays.asList(
+				new String[]{"k"},
+				new String[]{"b"},
+				new String[]{"a"})));
+		CsvHashIndex index = data.hashIndex("k");
+		CsvData sorted = new CsvSorter().by("k").sort(data);
+		sorted.setCellAt(0, "k", "zz");
+		Assert.assertEquals("k\nb\na\n", data.toString());
+		Assert.assertArrayEquals(new int[]{1}, index.rows("a"));
+	}
+
+	@Test
+	public void testExternalSort() throws Exception {
+		List<String[]> rows = new ArrayList<String[]>();
+		rows.add(new String[]{"key", "value"});
+		for(int i = 0; i < 5000; i++) {
+			rows.add(new String[]{Integer.toString(i * 7919 % 1000), "v" + i});
+		}
+		CsvData data = new CsvData(rows);
+		File in = new File("sortin.csv");
+		File out = new File("sortout.csv");
+		data.save(in);
+
+		CsvSorter sorter = new CsvSorter().by("key", CsvSorter.KeyType.NUMERIC, true);
+		String expected = sorter.sort(data).toString();
+
+		sorter.memoryBudget(4000).sort(in, out);
+		Assert.assertEquals(expected, FileHelpers.readEntireFile(out));
+
+		sorter.parallel(3).sort(in, out);
+		Assert.assertEquals(expected, FileHelpers.readEntireFile(out));
+
+		sorter.memoryBudget(Long.MAX_VALUE).sort(in, out);
+		Assert.assertEquals(expected, FileHelpers.readEntireFile(out));
+
+		in.delete();
+		out.delete();
+	}
+}
@@ -0,0 +1,51 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvHelpers;
+import org.andreschnabel.pecker.serialization.CsvStringPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+
+public class CsvStringPoolTest {
+
+	@Test
+	public void testIntern() {
+		CsvStringPool pool = new CsvStringPool();
+		char[] buf = "openclosedopen".toCharArray();
+		String first = pool.intern(0, buf, 0, 4);
+		Assert.assertEquals("open", first);
+		Assert.assertEquals("closed", pool.intern(0, buf, 4, 6));
+		Assert.assertSame(first, pool.intern(0, buf, 10, 4));
+		Assert.assertNotSame(first, pool.intern(1, buf, 10, 4));
+		Assert.assertEquals(2, pool.dictionarySize(0));
+		Assert.assertEquals(1, pool.hits(0));
+		Assert.assertTrue(pool.bytesSaved() > 0);
+	}
+
+	@Test
+	public void testDisabledForHighCardinality() {
+		CsvStringPool pool = new CsvStringPool(10);
+		for(int i = 0; i < 20; i++) {
+			char[] buf = String.valueOf(i).toCharArray();
+			Assert.assertEquals(String.valueOf(i), pool.intern(0, buf, 0, buf.length));
+		}
+		Assert.assertTrue(pool.isDisabled(0));
+	}
+
+	@Test
+	public void testParseWithPool() throws Exception {
+		StringBuilder sb = new StringBuilder("id,status\n");
+		for(int i = 0; i < 1000; i++) {
+			sb.append(i).append(',').append(i % 3 == 0 ? "open" : "closed").append('\n');
+		}
+		CsvStringPool pool = new CsvStringPool(100);
+		CsvData data = CsvHelpers.parseCsv(new StringReader(sb.toString()), pool);
+		Assert.assertEquals(1000, data.rowCount());
+		Assert.assertSame(data.getCellAt(0, "status"), data.getCellAt(3, "status"));
+		Assert.assertEquals("closed", data.getCellAt(1, "status"));
+		Assert.assertEquals(2, pool.dictionarySize(1));
+		Assert.assertTrue(pool.isDisabled(0));
+	}
+}
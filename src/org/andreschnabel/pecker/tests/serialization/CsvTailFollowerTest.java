@@ -0,0 +1,107 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.functional.IAction;
+import org.andreschnabel.pecker.helpers.FileHelpers;
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvTailFollower;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CsvTailFollowerTest {
+
+	private static void append(File f, String str) throws Exception {
+		FileWriter fw = new FileWriter(f, true);
+		fw.write(str);
+		fw.close();
+	}
+
+	@Test
+	public void testFollowAppendedRows() throws Exception {
+		File f = new File("tail.csv");
+		try {
+			FileHelpers.writeStrToFile("a,b\n1,x\n2,y\n3,", f);
+			CsvData target = new CsvData(new ArrayList<String[]>(Arrays.asList(new String[][]{{"a", "b"}})));
+			CsvTailFollower follower = new CsvTailFollower(f, target);
+			Assert.assertEquals(2, follower.poll());
+			Assert.assertEquals(0, follower.poll());
+			Assert.assertEquals("a,b\n1,x\n2,y\n", target.toString());
+
+			append(f, "z\n4,\"w, v\"\n");
+			Assert.assertEquals(2, follower.poll());
+			Assert.assertEquals("3", target.getCellAt(2, "a"));
+			Assert.assertEquals("z", target.getCellAt(2, "b"));
+			Assert.assertEquals("\"w v\"", target.getCellAt(3, "b"));
+			Assert.assertEquals(f.length(), follower.getOffset());
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testHeaderSplitAcrossPolls() throws Exception {
+		File f = new File("tail.csv");
+		try {
+			FileHelpers.writeStrToFile("na", f);
+			final List<String[]> rows = new ArrayList<String[]>();
+			CsvTailFollower follower = new CsvTailFollower(f, new IAction<String[]>() {
+				@Override
+				public void invoke(String[] row) throws Exception {
+					rows.add(row);
+				}
+			});
+			Assert.assertEquals(0, follower.poll());
+			Assert.assertNull(follower.getHeaders());
+			append(f, "me,age\nHans,4");
+			Assert.assertEquals(0, follower.poll());
+			Assert.assertArrayEquals(new String[]{"name", "age"}, follower.getHeaders());
+			append(f, "2\n");
+			Assert.assertEquals(1, follower.poll());
+			Assert.assertArrayEquals(new String[]{"Hans", "42"}, rows.get(0));
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testRestartOnTruncationAndRotation() throws Exception {
+		File f = new File("tail.csv");
+		try {
+			FileHelpers.writeStrToFile("a,b\n1,x\n2,y\n", f);
+			CsvData target = new CsvData(new ArrayList<String[]>(Arrays.asList(new String[][]{{"a", "b"}})));
+			CsvTailFollower follower = new CsvTailFollower(f, target);
+			Assert.assertEquals(2, follower.poll());
+
+			FileHelpers.writeStrToFile("a,b\n5,q\n", f);
+			Assert.assertEquals(1, follower.poll());
+			Assert.assertEquals("a,b\n5,q\n", target.toString());
+
+			FileHelpers.writeStrToFile("a,b\n6,r\n7,s\n8,t\n", f);
+			Assert.assertEquals(3, follower.poll());
+			Assert.assertEquals("a,b\n6,r\n7,s\n8,t\n", target.toString());
+
+			f.delete();
+			Assert.assertEquals(0, follower.poll());
+			Assert.assertEquals(0, target.rowCount());
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test(expected = Exception.class)
+	public void testHeaderMismatch() throws Exception {
+		File f = new File("tail.csv");
+		try {
+			FileHelpers.writeStrToFile("a,c\n1,x\n", f);
+			CsvData target = new CsvData(new ArrayList<String[]>(Arrays.asList(new String[][]{{"a", "b"}})));
+			new CsvTailFollower(f, target).poll();
+		} finally {
+			f.delete();
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.functional.ITransform;
+import org.andreschnabel.pecker.serialization.ColumnarCsvData;
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+
+public class CsvWriterTest {
+
+	@Test
+	public void testStripQuotes() throws Exception {
+		StringWriter sw = new StringWriter();
+		CsvWriter writer = new CsvWriter(sw, CsvWriter.Quoting.STRIP_QUOTES, 3);
+		writer.writeRow(new String[]{"\"Name\"", "a,b", null});
+		writer.close();
+		Assert.assertEquals("Name,\"a,b\",\n", sw.toString());
+	}
+
+	@Test
+	public void testRfc4180() throws Exception {
+		StringWriter sw = new StringWriter();
+		CsvWriter writer = new CsvWriter(sw, CsvWriter.Quoting.RFC4180);
+		writer.writeRow(new String[]{"say \"hi\"", "a,b", "x\ny", "plain"});
+		writer.close();
+		Assert.assertEquals("\"say \"\"hi\"\"\",\"a,b\",\"x\ny\",plain\n", sw.toString());
+	}
+
+	@Test
+	public void testNumbers() throws Exception {
+		StringWriter sw = new StringWriter();
+		CsvWriter writer = new CsvWriter(sw);
+		writer.writeCell(0L);
+		writer.writeCell(-1234567890123L);
+		writer.writeCell(Long.MIN_VALUE);
+		writer.writeCell(3.0);
+		writer.writeCell(-0.0);
+		writer.writeCell(0.25);
+		writer.writeCell(1e7);
+		writer.endRow();
+		writer.close();
+		Assert.assertEquals("0,-1234567890123," + Long.MIN_VALUE + ",3.0,-0.0,0.25,1.0E7\n", sw.toString());
+	}
+
+	@Test
+	public void testWriteDataMatchesToString() throws Exception {
+		CsvData data = new CsvData(Arrays.asList(new String[]{"a", "b"}, new String[]{"1", "x,y"}, new String[]{"2.5", "\"q\""}));
+		StringWriter sw = new StringWriter();
+		CsvWriter writer = new CsvWriter(sw);
+		writer.writeData(data);
+		writer.close();
+		Assert.assertEquals("a,b\n1,\"x,y\"\n2.5,q\n", sw.toString());
+
+		sw = new StringWriter();
+		writer = new CsvWriter(sw);
+		writer.writeData(new ColumnarCsvData(data));
+		writer.close();
+		Assert.assertEquals(sw.toString(), data.toString());
+	}
+
+	@Test
+	public void testWriteList() throws Exception {
+		StringWriter sw = new StringWriter();
+		CsvWriter writer = new CsvWriter(sw);
+		writer.writeList(new String[]{"n", "square"}, new ITransform<Integer, String[]>() {
+			@Override
+			public String[] invoke(Integer n) {
+				return new String[]{n.toString(), Integer.toString(n * n)};
+			}
+		}, Arrays.asList(1, 2, 3));
+		writer.close();
+		Assert.assertEquals("n,square\n1,1\n2,4\n3,9\n", sw.toString());
+	}
+}
@@ -0,0 +1,138 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.functional.IPredicate;
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvZoneMap;
+import org.andreschnabel.pecker.serialization.FilteredCsvData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CsvZoneMapTest {
+
+	private static CsvData testData(int numRows) {
+		List<String[]> rows = new ArrayList<String[]>();
+		rows.add(new String[]{"id", "value", "date"});
+		for(int i = 0; i < numRows; i++) {
+			String value = i % 97 == 0 ? "" : String.valueOf(i / 10 + i % 7 * 0.5);
+			String date = String.format("2026-%02d-%02d", 1 + i * 12 / numRows, 1 + i % 28);
+			rows.add(new String[]{String.valueOf(i), value, date});
+		}
+		return new CsvData(rows);
+	}
+
+	private static int[] bruteForce(CsvData data, double from, double to) {
+		List<Integer> rows = new ArrayList<Integer>();
+		for(int row = 0; row < data.rowCount(); row++) {
+			String cell = data.getCellAt(row, "value");
+			if(cell != null && cell.length() > 0) {
+				try {
+					double value = Double.parseDouble(cell);
+					if(value >= from && value < to) {
+						rows.add(row);
+					}
+				} catch(NumberFormatException e) {
+				}
+			}
+		}
+		int[] result = new int[rows.size()];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = rows.get(i);
+		}
+		return result;
+	}
+
+	private static void assertConsistent(CsvData data, CsvZoneMap zoneMap) {
+		double[][] ranges = {{0, 10}, {100, 105.5}, {-5, 0.5}, {399, 1000}, {Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY}};
+		for(double[] range : ranges) {
+			int[] expected = bruteForce(data, range[0], range[1]);
+			Assert.assertArrayEquals(expected, zoneMap.range(range[0], range[1]));
+			Assert.assertEquals(expected.length, zoneMap.count(range[0], range[1]));
+		}
+	}
+
+	@Test
+	public void testRangeSkipsBlocks() {
+		CsvData data = testData(4000);
+		CsvZoneMap zoneMap = new CsvZoneMap(data, 1, 100);
+		Assert.assertEquals(40, zoneMap.blockCount());
+		Assert.assertEquals(0, zoneMap.blockMin(0), 0);
+		Assert.assertEquals(399 + 3, zoneMap.max(), 0);
+		Assert.assertEquals(0, zoneMap.min(), 0);
+		Assert.assertEquals(42, zoneMap.nullCount());
+		Assert.assertFalse(zoneMap.mayContain(0, 100, 200));
+		Assert.assertTrue(zoneMap.mayContain(15, 150, 151));
+		assertConsistent(data, zoneMap);
+	}
+
+	@Test
+	public void testMaintainedOnChanges() {
+		CsvData data = testData(1000);
+		CsvZoneMap zoneMap = data.zoneMap("value");
+		Assert.assertSame(zoneMap, data.zoneMap("value"));
+
+		data.setCellAt(5, "value", "-3");
+		data.setCellAt(500, "value", "");
+		data.setCellAt(0, "value", "7");
+		data.setCellAt(999, "value", "n/a");
+		Assert.assertEquals(-3, zoneMap.min(), 0);
+		assertConsistent(data, zoneMap);
+
+		// Grenzwert überschreiben, Block wird neu berechnet.
+		data.setCellAt(5, "value", "1");
+		Assert.assertEquals(0, zoneMap.min(), 0);
+
+		int numBlocks = zoneMap.blockCount();
+		for(int i = 0; i < 30; i++) {
+			int row = data.rowCount();
+			data.addRow(row);
+			data.setCellAt(row, "value", String.valueOf(2000 + i));
+		}
+		data.addRow(3);
+		data.setCellAt(3, "value", "5000");
+		data.removeRow(10);
+		Assert.assertEquals(numBlocks + 1, zoneMap.blockCount());
+		Assert.assertEquals(5000, zoneMap.max(), 0);
+		assertConsistent(data, zoneMap);
+
+		data.dropIndexes();
+		Assert.assertNotSame(zoneMap, data.zoneMap("value"));
+	}
+
+	@Test
+	public void testDateRanges() {
+		CsvData data = testData(1200);
+		CsvZoneMap zoneMap = data.zoneMap("date");
+		int[] rows = zoneMap.range("2026-03-01", "2026-04-01");
+		Assert.assertEquals(100, rows.length);
+		Assert.assertEquals(200, rows[0]);
+		Assert.assertFalse(zoneMap.mayContain(1, "2026-03-01", "2026-04-01"));
+		Assert.assertEquals(1200, zoneMap.range(null, null).length);
+	}
+
+	@Test
+	public void testFilteredViews() {
+		CsvData data = testData(3000);
+		FilteredCsvData view = new FilteredCsvData(data).whereBetween("value", 50, 60.5);
+		Assert.assertEquals(bruteForce(data, 50, 60.5).length, view.rowCount());
+		for(int row = 0; row < view.rowCount(); row++) {
+			double value = view.getDoubleAt(row, "value");
+			Assert.assertTrue(value >= 50 && value < 60.5);
+		}
+
+		FilteredCsvData even = new FilteredCsvData(data).where(new IPredicate<String[]>() {
+			@Override
+			public boolean invoke(String[] row) {
+				return row[0] != null && Integer.parseInt(row[0]) % 2 == 0;
+			}
+		});
+		FilteredCsvData march = even.whereBetween("date", "2026-03-01", "2026-04-01");
+		Assert.assertEquals(125, march.rowCount());
+		Assert.assertEquals("500", march.getCellAt(0, "id"));
+
+		data.setCellAt(march.baseRow(0), "date", "2027-01-01");
+		Assert.assertEquals(124, march.rowCount());
+	}
+}
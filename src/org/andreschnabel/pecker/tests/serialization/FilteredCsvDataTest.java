@@ -0,0 +1,219 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.functional.IPredicate;
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvHashIndex;
+import org.andreschnabel.pecker.serialization.FilteredCsvData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class FilteredCsvDataTest {
+
+	private static CsvData testData() {
+		return new CsvData(new ArrayList<String[]>(Arrays.asList(
+				new String[]{"name", "age"},
+				new String[]{"Hans", "44"},
+				new String[]{"Peter", "23"},
+				new String[]{"Heinrich", "57"},
+				new String[]{"Paul", "31"})));
+	}
+
+	private static IPredicate<String[]> olderThan(final int age) {
+		return new IPredicate<String[]>() {
+			@Override
+			public boolean invoke(String[] row) {
+				return Integer.parseInt(row[1]) > age;
+			}
+		};
+	}
+
+	private static IPredicate<String[]> startsWith(final String prefix) {
+		return new IPredicate<String[]>() {
+			@Override
+			public boolean invoke(String[] row) {
+				return row[0].startsWith(prefix);
+			}
+		};
+	}
+
+	@Test
+	public void testFilter() {
+		CsvData data = testData();
+		FilteredCsvData view = new FilteredCsvData(data);
+		Assert.assertEquals(4, view.rowCount());
+
+		view.filter(olderThan(40));
+		Assert.assertArrayEquals(new String[]{"name", "age"}, view.getHeaders());
+		Assert.assertEquals(2, view.rowCount());
+		Assert.assertEquals("Hans", view.getCellAt(0, "name"));
+		Assert.assertEquals("Heinrich", view.getCellAt(1, 0));
+		Assert.assertEquals(Arrays.asList("name", "Hans", "Heinrich"), view.getColumn("name"));
+		Assert.assertEquals("name,age\nHans,44\nHeinrich,57\n", view.toString());
+
+		view.filter(olderThan(50));
+		Assert.assertEquals(1, view.rowCount());
+
+		view.clearFilter();
+		Assert.assertEquals(4, view.rowCount());
+	}
+
+	@Test
+	public void testCompose() {
+		CsvData data = testData();
+		FilteredCsvData old = new FilteredCsvData(data);
+		old.filter(olderThan(30));
+		FilteredCsvData p = new FilteredCsvData(data);
+		p.filter(startsWith("P"));
+
+		FilteredCsvData oldP = old.where(startsWith("P"));
+		Assert.assertEquals(1, oldP.rowCount());
+		Assert.assertEquals("Paul", oldP.getCellAt(0, 0));
+		Assert.assertEquals(3, oldP.baseRow(0));
+		Assert.assertSame(data, oldP.getBaseData());
+
+		FilteredCsvData both = old.and(p);
+		Assert.assertEquals(1, both.rowCount());
+		Assert.assertEquals("Paul", both.getCellAt(0, 0));
+
+		FilteredCsvData either = old.or(p);
+		Assert.assertEquals(4, either.rowCount());
+		Assert.assertEquals("Peter", either.getCellAt(1, 0));
+	}
+
+	@Test
+	public void testWriteThrough() {
+		CsvData data = testData();
+		FilteredCsvData view = new FilteredCsvData(data);
+		view.filter(startsWith("P"));
+
+		view.setCellAt(1, "age", "32");
+		Assert.assertEquals("32", data.getCellAt(3, "age"));
+
+		view.removeRow(0);
+		Assert.assertEquals(4, data.rowCount());
+		Assert.assertEquals(1, view.rowCount());
+		Assert.assertEquals("Paul", view.getCellAt(0, 0));
+	}
+
+	@Test
+	public void testStructuralChangesStayLocal() {
+		CsvData data = testData();
+		String original = data.toString();
+		FilteredCsvData all = new FilteredCsvData(data);
+		all.removeRow(1);
+		Assert.assertEquals(3, all.rowCount());
+		Assert.assertEquals("Heinrich", all.getCellAt(1, 0));
+
+		// Entfernte Zeile wird auch nach Änderung nicht wieder aufgenommen.
+		FilteredCsvData p = new FilteredCsvData(data);
+		p.filter(startsWith("P"));
+		p.removeRow(0);
+		data.addRow(0);
+		data.setCellAt(2, "age", "24");
+		Assert.assertEquals(1, p.rowCount());
+		Assert.assertEquals("Paul", p.getCellAt(0, 0));
+		data.removeRow(0);
+		Assert.assertEquals(original.replace("23", "24"), data.toString());
+
+		p.addRow(0);
+		p.setCellAt(0, "name", "Pia");
+		p.addColumn("city");
+		p.setCellAt(1, "city", "Bonn");
+		Assert.assertEquals("name,age,city\nPia,,\nPaul,31,Bonn\n", p.toString());
+		Assert.assertEquals(original.replace("23", "24"), data.toString());
+		Assert.assertEquals(2, p.where(startsWith("P")).rowCount());
+	}
+
+	@Test
+	public void testIncrementalUpdate() {
+		CsvData data = testData();
+		FilteredCsvData p = new FilteredCsvData(data);
+		p.filter(startsWith("P"));
+		FilteredCsvData oldP = p.where(olderThan(30));
+		Assert.assertEquals(1, oldP.rowCount());
+
+		data.setCellAt(1, "age", "35");
+		Assert.assertEquals(2, oldP.rowCount());
+		Assert.assertEquals("Peter", oldP.getCellAt(0, 0));
+
+		data.setCellAt(3, "name", "Hans");
+		Assert.assertEquals(1, p.rowCount());
+		Assert.assertEquals(1, oldP.rowCount());
+
+		data.removeRow(0);
+		Assert.assertEquals(0, p.baseRow(0));
+		Assert.assertEquals("Peter", p.getCellAt(0, 0));
+
+		data.addRow(0);
+		Assert.assertEquals(1, p.rowCount());
+		Assert.assertEquals(1, p.baseRow(0));
+
+		data.setCellAt(0, "age", "1");
+		data.setCellAt(0, "name", "Pia");
+		Assert.assertEquals(2, p.rowCount());
+		Assert.assertEquals("Pia", p.getCellAt(0, 0));
+		Assert.assertEquals(1, oldP.rowCount());
+	}
+
+	@Test
+	public void testRowsBeingFilledAreNotChecked() {
+		CsvData data = testData();
+		CsvHashIndex index = data.hashIndex("name");
+		FilteredCsvData old = new FilteredCsvData(data).where(olderThan(30));
+		Assert.assertEquals(3, old.rowCount());
+
+		int row = data.rowCount();
+		data.addRow(row);
+		data.setCellAt(row, "name", "Anna");
+		Assert.assertArrayEquals(new int[]{row}, index.rows("Anna"));
+		Assert.assertEquals(3, old.rowCount());
+
+		data.setCellAt(row, "age", "40");
+		Assert.assertEquals(4, old.rowCount());
+		Assert.assertEquals("Anna", old.getCellAt(3, "name"));
+	}
+
+	@Test
+	public void testRowsCheckedAfterAddColumn() {
+		CsvData data = new CsvData(new ArrayList<String[]>(Arrays.asList(
+				new String[]{"a", "b"},
+				new String[]{"1", "x"},
+				new String[]{"2", "y"},
+				new String[]{"1", "z"})));
+		FilteredCsvData ones = new FilteredCsvData(data).where(new IPredicate<String[]>() {
+			@Override
+			public boolean invoke(String[] row) {
+				return "1".equals(row[0]);
+			}
+		});
+		Assert.assertEquals(2, ones.rowCount());
+
+		data.addColumn("c");
+		data.setCellAt(0, "a", "2");
+		Assert.assertEquals(1, ones.rowCount());
+		Assert.assertEquals("z", ones.getCellAt(0, "b"));
+
+		data.setCellAt(1, "a", "1");
+		Assert.assertEquals(2, ones.rowCount());
+		Assert.assertEquals("y", ones.getCellAt(0, "b"));
+	}
+
+	@Test
+	public void testFailingPredicateDoesNotSkipListeners() {
+		CsvData data = testData();
+		FilteredCsvData old = new FilteredCsvData(data).where(olderThan(30));
+		CsvHashIndex index = data.hashIndex("age");
+		try {
+			data.setCellAt(0, "age", "unknown");
+			Assert.fail();
+		} catch(NumberFormatException e) {
+		}
+		Assert.assertEquals("unknown", data.getCellAt(0, "age"));
+		Assert.assertArrayEquals(new int[]{0}, index.rows("unknown"));
+		Assert.assertEquals(0, index.count("44"));
+		Assert.assertEquals(3, old.rowCount());
+	}
+}
@@ -0,0 +1,95 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.helpers.FileHelpers;
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvHelpers;
+import org.andreschnabel.pecker.serialization.MappedCsvData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+public class MappedCsvDataTest {
+
+	@Test
+	public void testMatchesParseCsv() throws Exception {
+		String csv = "Name,\"Age\",Comment\nPeter,23,\"Test, comment\"\nHans,44,\nUlf,\n1,Done";
+		File f = new File("mapped.csv");
+		FileHelpers.writeStrToFile(csv, f);
+		try {
+			CsvData expected = CsvHelpers.parseCsv(csv);
+			MappedCsvData data = new MappedCsvData(f, "UTF-8");
+			Assert.assertArrayEquals(expected.getHeaders(), data.getHeaders());
+			Assert.assertEquals(expected.rowCount(), data.rowCount());
+			for(int row = 0; row < expected.rowCount(); row++) {
+				Assert.assertArrayEquals(expected.getRow(row), data.getRow(row));
+			}
+			Assert.assertEquals("\"Test comment\"", data.getCellAt(0, "Comment"));
+			Assert.assertEquals(expected.toString(), data.toString());
+			Assert.assertEquals(expected.getColumn("Name"), data.getColumn("Name"));
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testToCsvData() throws Exception {
+		File f = new File("mapped.csv");
+		FileHelpers.writeStrToFile("a,b\n1,2\n", f);
+		try {
+			CsvData data = new MappedCsvData(f).toCsvData();
+			data.setCellAt(0, "b", "3");
+			Assert.assertEquals("a,b\n1,3\n", data.toString());
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testCopyConstructor() throws Exception {
+		File f = new File("mapped.csv");
+		FileHelpers.writeStrToFile("a,b\n1,2\n3,4\n", f);
+		try {
+			CsvData data = new CsvData(new MappedCsvData(f));
+			Assert.assertEquals(2, data.rowCount());
+			data.setCellAt(1, "a", "5");
+			Assert.assertEquals("a,b\n1,2\n5,4\n", data.toString());
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testBlockBoundaries() throws Exception {
+		char[] alphabet = {'a', 'b', ',', '"', '\n', ' '};
+		Random random = new Random(3);
+		File f = new File("mapped.csv");
+		try {
+			for(int n = 0; n < 300; n++) {
+				StringBuilder sb = new StringBuilder("x,y,z\n");
+				int len = random.nextInt(200);
+				for(int i = 0; i < len; i++) {
+					sb.append(alphabet[random.nextInt(alphabet.length)]);
+				}
+				String csv = sb.toString();
+				FileHelpers.writeStrToFile(csv, f);
+				CsvData expected;
+				try {
+					expected = CsvHelpers.parseCsv(csv);
+				} catch(Exception e) {
+					expected = null;
+				}
+				try {
+					MappedCsvData data = new MappedCsvData(f, "UTF-8");
+					Assert.assertNotNull(csv, expected);
+					Assert.assertEquals(csv, expected.toString(), data.toString());
+				} catch(Exception e) {
+					Assert.assertNull(csv, expected);
+				}
+			}
+		} finally {
+			f.delete();
+		}
+	}
+}
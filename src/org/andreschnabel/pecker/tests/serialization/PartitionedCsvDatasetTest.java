@@ -0,0 +1,82 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.functional.IPredicate;
+import org.andreschnabel.pecker.helpers.FileHelpers;
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvHelpers;
+import org.andreschnabel.pecker.serialization.PartitionedCsvDataset;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.Writer;
+import java.util.Arrays;
+
+public class PartitionedCsvDatasetTest {
+
+	private final File root = new File("partitioned");
+
+	private void write(String path, String content) throws Exception {
+		File f = new File(root, path);
+		f.getParentFile().mkdirs();
+		Writer writer = CsvHelpers.openWriter(f);
+		writer.write(content);
+		writer.close();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		write("year=2025/month=12/part1.csv", "project,hours\nPecker,3\nGui,4\n");
+		write("year=2026/month=10/part1.csv", "project,hours\nPecker,5\n");
+		write("year=2026/month=10/part2.csv.gz", "project,hours\nGui,6\nPecker,7\n");
+		write("year=2026/month=11/part1.csv", "project,hours\nGui,8\n");
+		write("year=2026/month=11/notes.txt", "no csv");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileHelpers.deleteDir(root);
+	}
+
+	@Test
+	public void testDiscovery() throws Exception {
+		PartitionedCsvDataset dataset = new PartitionedCsvDataset(root);
+		Assert.assertEquals(4, dataset.getFiles().size());
+		Assert.assertEquals(Arrays.asList("year", "month"), dataset.getPartitionKeys());
+		Assert.assertEquals("2025", dataset.getPartitionValue(0, "year"));
+		Assert.assertEquals("12", dataset.getPartitionValue(0, "month"));
+
+		CsvData data = dataset.load(2);
+		Assert.assertArrayEquals(new String[]{"project", "hours", "year", "month"}, data.getHeaders());
+		Assert.assertEquals(6, data.rowCount());
+		Assert.assertArrayEquals(new String[]{"Gui", "8", "2026", "11"}, data.getRow(5));
+	}
+
+	@Test
+	public void testPruning() throws Exception {
+		// Ausgeschlossene Partitionen dürfen nicht geöffnet werden.
+		write("year=2025/month=12/part1.csv", "broken,header,line\n1,2,3\n");
+		PartitionedCsvDataset month = new PartitionedCsvDataset(root)
+				.whereEquals("year", "2026")
+				.whereEquals("month", "10");
+		Assert.assertEquals(2, month.getFiles().size());
+		CsvData data = month.load();
+		Assert.assertEquals("project,hours,year,month\nPecker,5,2026,10\nGui,6,2026,10\nPecker,7,2026,10\n", data.toString());
+
+		PartitionedCsvDataset late = new PartitionedCsvDataset(root).where("month", new IPredicate<String>() {
+			@Override
+			public boolean invoke(String month) {
+				return Integer.parseInt(month) >= 11;
+			}
+		});
+		Assert.assertEquals(2, late.getFiles().size());
+	}
+
+	@Test(expected = Exception.class)
+	public void testHeaderMismatch() throws Exception {
+		write("year=2026/month=11/part1.csv", "project,minutes\nGui,8\n");
+		new PartitionedCsvDataset(root).load();
+	}
+}
@@ -0,0 +1,101 @@
+package org.andreschnabel.pecker.tests.serialization;
+
+import org.andreschnabel.pecker.helpers.FileHelpers;
+import org.andreschnabel.pecker.serialization.ColumnarCsvData;
+import org.andreschnabel.pecker.serialization.CsvColumn;
+import org.andreschnabel.pecker.serialization.CsvData;
+import org.andreschnabel.pecker.serialization.CsvHelpers;
+import org.andreschnabel.pecker.serialization.SnapshotCsvData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+
+public class SnapshotCsvDataTest {
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		String csv = "name,age,score,active,big\nPeter,23,1.5,true,10000000000\nHans,,2.0,false,\nUlf,44,,true,3\nPeter,1,0.25,,4\n";
+		File f = new File("snapshot.bin");
+		try {
+			CsvData expected = CsvHelpers.parseCsv(csv);
+			SnapshotCsvData.write(expected, null, f);
+			SnapshotCsvData data = new SnapshotCsvData(f);
+			Assert.assertArrayEquals(expected.getHeaders(), data.getHeaders());
+			Assert.assertEquals(expected.rowCount(), data.rowCount());
+			for(int row = 0; row < expected.rowCount(); row++) {
+				Assert.assertArrayEquals(expected.getRow(row), data.getRow(row));
+			}
+			Assert.assertEquals(expected.toString(), data.toString());
+			Assert.assertEquals(expected.getColumn("name"), data.getColumn("name"));
+			Assert.assertEquals(CsvColumn.Type.STRING, data.getColumnType(0));
+			Assert.assertEquals(CsvColumn.Type.INT, data.getColumnType(1));
+			Assert.assertEquals(CsvColumn.Type.DOUBLE, data.getColumnType(2));
+			Assert.assertEquals(CsvColumn.Type.BOOLEAN, data.getColumnType(3));
+			Assert.assertEquals(CsvColumn.Type.LONG, data.getColumnType(4));
+			Assert.assertEquals(23, data.getIntAt(0, "age"));
+			Assert.assertEquals(10000000000L, data.getLongAt(0, "big"));
+			Assert.assertEquals(0.25, data.getDoubleAt(3, "score"), 0);
+			Assert.assertTrue(data.getBooleanAt(2, "active"));
+			Assert.assertTrue(data.isMissing(1, 1));
+			Assert.assertFalse(data.isMissing(0, 1));
+			Assert.assertEquals(expected.toString(), data.toCsvData().toString());
+			Assert.assertEquals(expected.toString(), new CsvData(data).toString());
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testColumnarTypesKept() throws Exception {
+		ColumnarCsvData columnar = new ColumnarCsvData(new String[]{"id", "label"},
+				new CsvColumn.Type[]{CsvColumn.Type.LONG, CsvColumn.Type.STRING});
+		columnar.appendRow(new String[]{"1", "a"});
+		columnar.appendRow(new String[]{"2", null});
+		File f = new File("snapshot.bin");
+		try {
+			SnapshotCsvData.write(columnar, null, f);
+			SnapshotCsvData data = new SnapshotCsvData(f);
+			Assert.assertEquals(CsvColumn.Type.LONG, data.getColumnType(0));
+			Assert.assertEquals("2", data.getCellAt(1, "id"));
+			Assert.assertNull(data.getCellAt(1, "label"));
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testLoadFallsBackOnStaleSnapshot() throws Exception {
+		File source = new File("snapshotsrc.csv");
+		File snapshot = new File("snapshotsrc.bin");
+		try {
+			FileHelpers.writeStrToFile("a,b\n1,x\n", source);
+			Assert.assertFalse(SnapshotCsvData.isFresh(snapshot, source));
+			SnapshotCsvData data = SnapshotCsvData.load(source, snapshot);
+			Assert.assertEquals("x", data.getCellAt(0, "b"));
+			Assert.assertTrue(SnapshotCsvData.isFresh(snapshot, source));
+
+			FileHelpers.writeStrToFile("a,b\n1,x\n2,y\n", source);
+			source.setLastModified(source.lastModified() + 2000);
+			Assert.assertFalse(SnapshotCsvData.isFresh(snapshot, source));
+			data = SnapshotCsvData.load(source, snapshot);
+			Assert.assertEquals(2, data.rowCount());
+			Assert.assertEquals("y", data.getCellAt(1, "b"));
+			Assert.assertTrue(SnapshotCsvData.isFresh(snapshot, source));
+		} finally {
+			source.delete();
+			snapshot.delete();
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testReadOnly() throws Exception {
+		File f = new File("snapshot.bin");
+		try {
+			SnapshotCsvData.write(CsvHelpers.parseCsv("a\n1\n"), null, f);
+			new SnapshotCsvData(f).setCellAt(0, 0, "2");
+		} finally {
+			f.delete();
+		}
+	}
+}
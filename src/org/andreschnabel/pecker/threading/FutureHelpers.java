@@ -0,0 +1,49 @@
+package org.andreschnabel.pecker.threading;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Hilfsfunktionen für Ergebnisse von Aufgaben in Thread-Pools.
+ */
+public final class FutureHelpers {
+
+	/**
+	 * Warte auf Ergebnis und reiche eine Ausnahme der Aufgabe unverpackt weiter.
+	 * @param future Ergebnis der Aufgabe.
+	 * @param <T> Typ des Ergebnisses.
+	 * @return Ergebnis.
+	 * @throws Exception Ausnahme der Aufgabe oder Unterbrechung beim Warten.
+	 */
+	public static <T> T getUnwrapped(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof Exception) {
+				throw (Exception)e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Warte auf Ergebnis, z.B. in Strömen, welche nur IOException werfen dürfen.
+	 * @param future Ergebnis der Aufgabe.
+	 * @param <T> Typ des Ergebnisses.
+	 * @return Ergebnis.
+	 * @throws IOException IOException der Aufgabe unverpackt, sonstige Ausnahmen und Unterbrechung verpackt.
+	 */
+	public static <T> T getUnwrappedIO(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} catch(InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+}